@@ -3,7 +3,7 @@
 /**
  * This class is a represention of an arc in a constraint graph
  * 
- * @author Bjrnar Tessem
+ * @author Bjørnar Tessem
  *
  */
 public class CGArc {
@@ -20,9 +20,43 @@ public class CGArc {
 		variable = n;
 	}
 
+	/**
+	 * 
+	 * @param mc
+	 *            a single meeting constraint
+	 * @param n
+	 *            a single variable
+	 * @param id
+	 *            the number of the arc in its constraint graph
+	 */
+	public CGArc(MeetingConstraint mc, MeetingNode n, int id) {
+		this(mc, n);
+		this.id = id;
+	}
+
+	/**
+	 * 
+	 * @param index
+	 *            the index of the problem of the constraint graph
+	 * @param c
+	 *            the constraint index
+	 * @param k
+	 *            the position of the variable in the constraint's scope
+	 * @param id
+	 *            the number of the arc in its constraint graph
+	 */
+	public CGArc(MeetingIndex index, int c, int k, int id) {
+		this(index.constraints[c], index.nodes[index.scope[c][k]], id);
+		this.c = c;
+		this.v = index.scope[c][k];
+	}
+
 	// the fields of the GCArc
 	MeetingNode variable;
 	MeetingConstraint constraint;
+	int id = -1; // the number of the arc, -1 if not part of a graph
+	int v = -1; // the index of the variable in the graph's problem
+	int c = -1; // the index of the constraint in the graph's problem
 
 	/**
 	 * CGArcs are equal if they have the same variable and constraint
@@ -37,6 +71,14 @@ public class CGArc {
 		}
 	}
 
+	/**
+	 * consistent with equals
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * System.identityHashCode(variable) + System.identityHashCode(constraint);
+	}
+
 	public String toString() {
 		return constraint + " " + variable;
 	}
@@ -0,0 +1,216 @@
+
+/**
+ * The queue of arcs to do (tda) in the arc consistency algorithm. Arcs are
+ * known by their id, so testing if an arc is already in the queue is a lookup
+ * in a bitmap instead of a scan of the queue. In FIFO order the arcs are kept
+ * in a ring buffer, the other orders keep them in a binary heap where the
+ * priority of an arc is decided when it is added
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class CGArcQueue {
+
+	/**
+	 * the orders arcs can be taken out of the queue
+	 */
+	enum Order {
+		FIFO, // first in, first out
+		SMALLEST_DOMAIN, // the arc with the smallest variable domain first
+		CONSTRAINT_WEIGHT // the arc with the heaviest constraint first
+	};
+
+	/**
+	 * the order of the queue
+	 */
+	private Order order;
+
+	/**
+	 * all arcs that can be in the queue, arcs[id].id == id
+	 */
+	private CGArc[] arcs;
+
+	/**
+	 * the domains of the variables by node index, used by SMALLEST_DOMAIN
+	 */
+	private MeetingDomain[] domains;
+
+	/**
+	 * the weights of the constraints by constraint index, used by
+	 * CONSTRAINT_WEIGHT
+	 */
+	private int[] weights;
+
+	/**
+	 * bit id is set if arc id is in the queue
+	 */
+	private long[] inQueue;
+
+	/**
+	 * the ring buffer (FIFO) or heap (other orders) of arc ids
+	 */
+	private int[] ids;
+
+	/**
+	 * the priority of each arc in the heap, smaller is taken out first
+	 */
+	private int[] priority;
+
+	/**
+	 * the first position of the ring buffer
+	 */
+	private int head = 0;
+
+	/**
+	 * the number of arcs in the queue
+	 */
+	private int size = 0;
+
+	/**
+	 *
+	 * @param arcs
+	 *            all arcs of the constraint graph, indexed by id
+	 * @param order
+	 *            the order arcs are taken out of the queue
+	 * @param domains
+	 *            the current domains of the variables, by node index
+	 * @param weights
+	 *            the weights of the constraints, by constraint index
+	 */
+	public CGArcQueue(CGArc[] arcs, Order order, MeetingDomain[] domains, int[] weights) {
+		this.arcs = arcs;
+		this.order = order;
+		this.domains = domains;
+		this.weights = weights;
+		inQueue = new long[(arcs.length + 63) >>> 6];
+		ids = new int[Math.max(1, arcs.length)]; // an arc is at most once in
+													// the queue
+		if (order != Order.FIFO)
+			priority = new int[arcs.length];
+	}
+
+	/**
+	 *
+	 * @return true if there are no arcs in the queue
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 *
+	 * @return the number of arcs in the queue
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 *
+	 * @param arc
+	 * @return true if the arc is in the queue
+	 */
+	public boolean contains(CGArc arc) {
+		return (inQueue[arc.id >>> 6] & (1L << arc.id)) != 0;
+	}
+
+	/**
+	 * adds an arc if it is not already in the queue
+	 *
+	 * @param arc
+	 *            an arc of the graph
+	 * @return true if the arc was added
+	 */
+	public boolean add(CGArc arc) {
+		if (contains(arc))
+			return false;
+		inQueue[arc.id >>> 6] |= 1L << arc.id;
+		if (order == Order.FIFO) {
+			ids[(head + size) % ids.length] = arc.id;
+			size++;
+		} else {
+			priority[arc.id] = order == Order.SMALLEST_DOMAIN ? domains[arc.v].size() : -weights[arc.c];
+			ids[size] = arc.id;
+			up(size++);
+		}
+		return true;
+	}
+
+	/**
+	 * takes the next arc out of the queue
+	 *
+	 * @return the next arc
+	 */
+	public CGArc remove() {
+		int id;
+		if (order == Order.FIFO) {
+			id = ids[head];
+			head = (head + 1) % ids.length;
+			size--;
+		} else {
+			id = ids[0];
+			ids[0] = ids[--size];
+			down(0);
+		}
+		inQueue[id >>> 6] &= ~(1L << id);
+		return arcs[id];
+	}
+
+	/**
+	 * empties the queue
+	 */
+	public void clear() {
+		while (size > 0)
+			remove();
+		head = 0;
+	}
+
+	/**
+	 *
+	 * @param a
+	 * @param b
+	 * @return true if arc a is to be taken out before arc b
+	 */
+	private boolean before(int a, int b) {
+		return priority[a] < priority[b] || (priority[a] == priority[b] && a < b);
+	}
+
+	/**
+	 * moves the arc at heap position i up to its place
+	 *
+	 * @param i
+	 */
+	private void up(int i) {
+		int id = ids[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(id, ids[parent]))
+				break;
+			ids[i] = ids[parent];
+			i = parent;
+		}
+		ids[i] = id;
+	}
+
+	/**
+	 * moves the arc at heap position i down to its place
+	 *
+	 * @param i
+	 */
+	private void down(int i) {
+		int id = ids[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && before(ids[child + 1], ids[child]))
+				child++;
+			if (!before(ids[child], id))
+				break;
+			ids[i] = ids[child];
+			i = child;
+		}
+		ids[i] = id;
+	}
+
+}
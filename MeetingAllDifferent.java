@@ -0,0 +1,337 @@
+
+import java.util.Arrays;
+
+/**
+ * The no double booking constraint as one global all different constraint
+ * over all meetings, propagated with Régin's matching algorithm. A maximum
+ * matching of meetings to slots is kept, if it cannot cover all meetings the
+ * problem has no solution. A slot s is removed from the domain of a meeting x
+ * if x can never have s in a solution, i.e. if s is not matched to x, s can
+ * not be reached on an alternating path from a free slot, and s and x are not
+ * in the same strongly connected component of the matching graph. This finds
+ * every value that is impossible because of the constraint, which includes
+ * all Hall sets of meetings that together have as many slots as meetings.
+ * The matching is kept between calls, so after a small change only the
+ * meetings that lost their slot need to be matched again
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingAllDifferent {
+
+	/**
+	 * the number of meetings
+	 */
+	private final int n;
+
+	/**
+	 * the number of slot indexes
+	 */
+	private final int slots;
+
+	/**
+	 * slotOf[x] is the slot matched to meeting x, or -1
+	 */
+	private final int[] slotOf;
+
+	/**
+	 * meetingOf[s] is the meeting matched to slot s, or -1
+	 */
+	private final int[] meetingOf;
+
+	/**
+	 * scratch space for the algorithms, one entry per meeting or slot
+	 */
+	private final int[] stack;
+	private final int[] cursor;
+	private final int[] number;
+	private final int[] low;
+	private final int[] component;
+	private final boolean[] onStack;
+	private final boolean[] reached;
+	private final long[] visited;
+
+	/**
+	 * the meetings that have each slot, made by prune
+	 */
+	private int[] first;
+	private int[] having;
+
+	/**
+	 *
+	 * @param meetings
+	 *            the number of meetings
+	 * @param slots
+	 *            one more than the largest slot index in any domain
+	 */
+	public MeetingAllDifferent(int meetings, int slots) {
+		n = meetings;
+		this.slots = slots;
+		slotOf = new int[n];
+		meetingOf = new int[slots];
+		Arrays.fill(slotOf, -1);
+		Arrays.fill(meetingOf, -1);
+		stack = new int[n + 1];
+		cursor = new int[n];
+		number = new int[n];
+		low = new int[n];
+		component = new int[n];
+		onStack = new boolean[n];
+		reached = new boolean[n];
+		visited = new long[MeetingDomain.wordsFor(slots)];
+		first = new int[slots + 1];
+	}
+
+	/**
+	 * removes the slots that cannot be used because of the no double booking
+	 * constraint
+	 *
+	 * @param domains
+	 *            the domains of the meetings, by node index
+	 * @param graph
+	 *            the constraint graph that removes the slots
+	 * @param tda
+	 *            the queue the arcs of the changed meetings are added to
+	 * @return false if the meetings cannot all have different slots
+	 */
+	boolean propagate(MeetingDomain[] domains, MeetingConstraintGraph graph, CGArcQueue tda) {
+		if (!match(domains))
+			return false;
+		prune(domains, graph, tda);
+		return true;
+	}
+
+	/**
+	 * repairs the matching so that it covers all meetings
+	 *
+	 * @param domains
+	 * @return false if there is no such matching
+	 */
+	private boolean match(MeetingDomain[] domains) {
+		// forget the pairs that are no longer possible
+		for (int x = 0; x < n; x++) {
+			int s = slotOf[x];
+			if (s >= 0 && !domains[x].has(s)) {
+				slotOf[x] = -1;
+				meetingOf[s] = -1;
+			}
+		}
+		for (int x = 0; x < n; x++) {
+			if (slotOf[x] < 0) {
+				Arrays.fill(visited, 0L);
+				if (!augment(x, domains))
+					return false; // x cannot be matched
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * finds an alternating path from a free meeting to a free slot and
+	 * swaps the pairs along it, a depth first search with an explicit stack
+	 *
+	 * @param root
+	 *            a meeting without a slot
+	 * @param domains
+	 * @return false if there is no such path
+	 */
+	private boolean augment(int root, MeetingDomain[] domains) {
+		int top = 0;
+		stack[top] = root;
+		cursor[root] = 0;
+		while (top >= 0) {
+			int x = stack[top];
+			int s = nextUnvisited(domains[x], cursor[x]);
+			if (s < 0) { // a dead end
+				top--;
+				continue;
+			}
+			cursor[x] = s + 1;
+			visited[s >>> 6] |= 1L << s;
+			int y = meetingOf[s];
+			if (y < 0) { // a free slot, flip the path
+				for (int i = top; i >= 0; i--) {
+					int m = stack[i];
+					int old = slotOf[m];
+					slotOf[m] = s;
+					meetingOf[s] = m;
+					s = old;
+				}
+				return true;
+			}
+			stack[++top] = y;
+			cursor[y] = 0;
+		}
+		return false;
+	}
+
+	/**
+	 *
+	 * @param domain
+	 * @param from
+	 * @return the first slot of the domain from from that has not been
+	 *         visited in this search, or -1
+	 */
+	private int nextUnvisited(MeetingDomain domain, int from) {
+		long[] words = domain.words;
+		int w = from >>> 6;
+		int common = Math.min(words.length, visited.length);
+		if (w >= common)
+			return -1;
+		long word = words[w] & ~visited[w] & (-1L << from);
+		while (true) {
+			if (word != 0)
+				return (w << 6) + Long.numberOfTrailingZeros(word);
+			if (++w == common)
+				return -1;
+			word = words[w] & ~visited[w];
+		}
+	}
+
+	/**
+	 * removes the slots that are not on an alternating path from a free slot
+	 * or an alternating cycle. With a complete matching, meeting y is
+	 * connected to meeting x if the slot of y is in the domain of x
+	 *
+	 * @param domains
+	 * @param graph
+	 * @param tda
+	 */
+	private void prune(MeetingDomain[] domains, MeetingConstraintGraph graph, CGArcQueue tda) {
+		index(domains);
+		reach(domains);
+		components(domains);
+		for (int x = 0; x < n; x++) {
+			MeetingDomain domain = domains[x];
+			for (int s = domain.nextSlot(0); s >= 0; s = domain.nextSlot(s + 1)) {
+				int y = meetingOf[s];
+				if (s == slotOf[x] || y < 0 || reached[y] || component[y] == component[x])
+					continue; // s is possible for x
+				graph.removeAndRequeue(x, s, tda);
+			}
+		}
+	}
+
+	/**
+	 * makes the list of meetings having each slot, the meetings having slot s
+	 * are having[first[s]] up to, but not including, having[first[s + 1]]
+	 *
+	 * @param domains
+	 */
+	private void index(MeetingDomain[] domains) {
+		Arrays.fill(first, 0);
+		int total = 0;
+		for (int x = 0; x < n; x++) {
+			MeetingDomain domain = domains[x];
+			for (int s = domain.nextSlot(0); s >= 0 && s < slots; s = domain.nextSlot(s + 1)) {
+				first[s + 1]++;
+				total++;
+			}
+		}
+		for (int s = 0; s < slots; s++)
+			first[s + 1] += first[s];
+		if (having == null || having.length < total)
+			having = new int[Math.max(total, 16)];
+		for (int x = 0; x < n; x++) {
+			MeetingDomain domain = domains[x];
+			for (int s = domain.nextSlot(0); s >= 0 && s < slots; s = domain.nextSlot(s + 1))
+				having[first[s]++] = x;
+		}
+		for (int s = slots; s > 0; s--) // restore the starts
+			first[s] = first[s - 1];
+		first[0] = 0;
+	}
+
+	/**
+	 * marks the meetings whose slot can be reached on an alternating path
+	 * from a free slot. Such a slot can be given to any meeting having it
+	 *
+	 * @param domains
+	 */
+	private void reach(MeetingDomain[] domains) {
+		Arrays.fill(reached, false);
+		int top = 0;
+		for (int s = 0; s < slots; s++) {
+			if (meetingOf[s] >= 0)
+				continue;
+			for (int i = first[s]; i < first[s + 1]; i++) { // a free slot
+				int x = having[i];
+				if (!reached[x]) {
+					reached[x] = true;
+					stack[top++] = x;
+				}
+			}
+		}
+		while (top > 0) {
+			int y = stack[--top];
+			int s = slotOf[y];
+			for (int i = first[s]; i < first[s + 1]; i++) {
+				int x = having[i];
+				if (!reached[x]) {
+					reached[x] = true;
+					stack[top++] = x;
+				}
+			}
+		}
+	}
+
+	/**
+	 * finds the strongly connected components of the meetings with Tarjan's
+	 * algorithm, using an explicit stack. The edges are followed backwards,
+	 * from x to the meeting matched to each slot in the domain of x, which
+	 * gives the same components
+	 *
+	 * @param domains
+	 */
+	private void components(MeetingDomain[] domains) {
+		Arrays.fill(number, -1);
+		Arrays.fill(onStack, false);
+		int[] call = new int[n]; // the depth first search path
+		int counter = 0;
+		int components = 0;
+		int top = 0; // the top of the Tarjan stack
+		for (int root = 0; root < n; root++) {
+			if (number[root] >= 0)
+				continue;
+			int depth = 0;
+			call[0] = root;
+			number[root] = low[root] = counter++;
+			cursor[root] = 0;
+			stack[top++] = root;
+			onStack[root] = true;
+			while (depth >= 0) {
+				int x = call[depth];
+				int s = domains[x].nextSlot(cursor[x]);
+				if (s >= 0) {
+					cursor[x] = s + 1;
+					int y = meetingOf[s];
+					if (y < 0 || y == x)
+						continue;
+					if (number[y] < 0) { // go deeper
+						number[y] = low[y] = counter++;
+						cursor[y] = 0;
+						stack[top++] = y;
+						onStack[y] = true;
+						call[++depth] = y;
+					} else if (onStack[y]) {
+						low[x] = Math.min(low[x], number[y]);
+					}
+					continue;
+				}
+				if (low[x] == number[x]) { // x is the root of a component
+					int y;
+					do {
+						y = stack[--top];
+						onStack[y] = false;
+						component[y] = components;
+					} while (y != x);
+					components++;
+				}
+				depth--;
+				if (depth >= 0)
+					low[call[depth]] = Math.min(low[call[depth]], low[x]);
+			}
+		}
+	}
+
+}
@@ -1,6 +1,7 @@
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -11,7 +12,7 @@ import java.util.Set;
  * mainly is used as a node in a backtracking search for solution to the meeting
  * problem
  * 
- * @author Bjrnar Tessem
+ * @author Bjørnar Tessem
  *
  */
 public class MeetingAssignment {
@@ -39,19 +40,85 @@ public class MeetingAssignment {
 	 */
 	private int assignedCount = 0;
 
+	/**
+	 * which constraints involve which variables
+	 */
+	private MeetingIndex index;
+
+	/**
+	 * position[v] is the position in variables of the node with index v. It
+	 * is the same for an assignment and all its copies, so it is shared
+	 */
+	private int[] position;
+
+	/**
+	 * the assignment of the nodes of the constraint being tested, in scope
+	 * order. Shared like position, it is only used inside consistent()
+	 */
+	private MeetingSlot[] current;
+
+	/**
+	 * the slots used by the assignments
+	 */
+	private MeetingDomain occupied = new MeetingDomain();
+
+	/**
+	 * true if the last assignment used a slot that was already occupied
+	 */
+	private boolean doubleBooked = false;
+
 	/**
 	 * Initial constructor
 	 * 
+	 * @param problem
+	 *            the problem with the variables to be assigned meeting slots
+	 *            and the constraints
+	 */
+	public MeetingAssignment(MeetingProblem problem) {
+		this.variables.addAll(problem.variables);
+		this.constraints = problem.constraints;
+		index = problem.index;
+		assignments = new ArrayList<MeetingSlot>(); // no assignments are made,
+													// hence empty list
+		position = findPositions();
+		current = new MeetingSlot[index.maxArity];
+	}
+
+	/**
+	 * Constructor for an assignment of the first variables, as found by a
+	 * search engine
+	 * 
+	 * @param problem
+	 *            the problem with the constraints
 	 * @param variables
 	 *            the variables to be assigned meeting slots
-	 * @param constraints
-	 *            the constraints
+	 * @param assignments
+	 *            assignments.get(i) is the slot of variables.get(i)
 	 */
-	public MeetingAssignment(Set<MeetingNode> variables, Set<MeetingConstraint> constraints) {
+	public MeetingAssignment(MeetingProblem problem, List<MeetingNode> variables, List<MeetingSlot> assignments) {
 		this.variables.addAll(variables);
-		this.constraints = constraints;
-		assignments = new ArrayList<MeetingSlot>(); // no assignments are made,
-													// hence empty list
+		this.constraints = problem.constraints;
+		index = problem.index;
+		this.assignments = new ArrayList<MeetingSlot>(assignments);
+		assignedCount = assignments.size();
+		position = findPositions();
+		current = new MeetingSlot[index.maxArity];
+		for (MeetingSlot slot : assignments) {
+			if (!occupied.set(slot.index))
+				doubleBooked = true;
+		}
+	}
+
+	/**
+	 * 
+	 * @return the position in variables of each node, by node index
+	 */
+	private int[] findPositions() {
+		int[] result = new int[index.nodes.length];
+		Arrays.fill(result, Integer.MAX_VALUE); // not a variable here
+		for (int i = 0; i < variables.size(); i++)
+			result[index.indexOf(variables.get(i))] = i;
+		return result;
 	}
 
 	/**
@@ -67,6 +134,13 @@ public class MeetingAssignment {
 		// make assignment as copy of original assignments
 		assignments = new ArrayList<MeetingSlot>();
 		assignments.addAll(meetingAssignment.assignments);
+
+		// the index and positions are shared, the used slots are copied
+		index = meetingAssignment.index;
+		position = meetingAssignment.position;
+		current = meetingAssignment.current;
+		occupied = new MeetingDomain(meetingAssignment.occupied);
+		doubleBooked = meetingAssignment.doubleBooked;
 	}
 
 	/**
@@ -113,6 +187,8 @@ public class MeetingAssignment {
 		n.assignments.add(slot); // add an assignment
 		n.assignedCount = this.assignedCount + 1; // set number of assigned
 													// variables
+		if (!n.occupied.set(slot.index)) // mark the slot as used
+			n.doubleBooked = true;
 		return n;
 	}
 
@@ -125,23 +201,25 @@ public class MeetingAssignment {
 	}
 
 	/**
-	 * Checks if a partial assignment is consistent
+	 * Checks if a partial assignment is consistent. Only the constraints that
+	 * the last assignment made testable are checked, so the assignment without
+	 * its last variable is taken to be consistent. That is always the case for
+	 * assignments made by neighbours(). The cost is proportional to the number
+	 * of constraints the last variable is in
 	 * 
 	 * @return true if assignment is consistent so far
 	 */
 	public boolean consistent() {
-		applyAssignment(); // sets the assignment to the meeting nodes
-		if (!MeetingProblem.getMeetingProblem().otherConstraints(variables.subList(0, assignedCount))) // check
-																										// otherConstraint
+		if (doubleBooked) // the no double booking constraint
 			return false;
-		for (MeetingConstraint mc : constraints) {
-			boolean applies = checkApplication(mc); // tests if constraint
-													// applies,
-													// i.e. only if all nodes in
-													// constraint mc has
-													// been assigned
-			if (applies) {
-				if (!mc.constraint())
+		if (assignedCount == 0)
+			return true;
+		MeetingNode last = variables.get(assignedCount - 1);
+		for (int c : index.incident[index.indexOf(last)]) { // only constraints with the
+													// last variable
+			if (applies(c)) {
+				applyAssignment(c); // set the assignment of its nodes
+				if (!index.constraints[c].constraint(current))
 					return false; // if the constraint applies test it
 			}
 		}
@@ -149,28 +227,29 @@ public class MeetingAssignment {
 	}
 
 	/**
-	 * Sets the meeting nodes' assignment
+	 * Sets the assignment of the meeting nodes in a constraint in the current
+	 * array
+	 * 
+	 * @param c
+	 *            the constraint index
 	 */
-	private void applyAssignment() {
-		for (int i = 0; i < assignments.size(); i++) {
-			variables.get(i).assignment = assignments.get(i);
+	private void applyAssignment(int c) {
+		int[] scope = index.scope[c];
+		for (int k = 0; k < scope.length; k++) {
+			current[k] = assignments.get(position[scope[k]]);
 		}
 	}
 
 	/**
-	 * Checks if the variables so far assigned is involved in a constraint
+	 * Checks if all variables in a constraint have been assigned
 	 * 
-	 * @param mc
-	 * @return
+	 * @param c
+	 *            the constraint index
+	 * @return true if the constraint can be tested
 	 */
-	private boolean checkApplication(MeetingConstraint mc) {
-
-		// find the assigned variables
-		List<MeetingNode> assigned = variables.subList(0, assignedCount);
-
-		// check all variables in constraint if it has been assigned
-		for (MeetingNode n : mc.nodes) {
-			if (!assigned.contains(n))
+	private boolean applies(int c) {
+		for (int v : index.scope[c]) {
+			if (position[v] >= assignedCount)
 				return false;
 		}
 		return true;
@@ -180,9 +259,10 @@ public class MeetingAssignment {
 	 * a string representation of a complete assignment
 	 */
 	public String toString() {
-		StringBuffer result = new StringBuffer();
-		for (MeetingNode n : variables) {
-			result.append(n.name + " : " + n.assignment + "  ");
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < variables.size(); i++) {
+			MeetingSlot slot = i < assignments.size() ? assignments.get(i) : null;
+			result.append(variables.get(i).name).append(" : ").append(slot).append("  ");
 		}
 		return result.toString();
 	}
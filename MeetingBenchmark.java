@@ -0,0 +1,206 @@
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collection;
+
+/**
+ * Measures the time and memory use of the hot parts of the solver: arc
+ * consistency, revising single arcs, expanding MeetingAssignments with
+ * neighbours() and consistent(), and searching for the first and for all
+ * solutions with MAC. Each case is run a number of times to warm up the JIT compiler
+ * and then a number of measured times, and for the measured runs the time,
+ * the bytes allocated by the thread and the garbage collections are
+ * reported per run.
+ *
+ * Usage: java MeetingBenchmark [meetings rooms times density [warmup
+ * iterations]]. Without arguments the example problem and two generated
+ * problems are measured
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingBenchmark {
+
+	/**
+	 * a piece of work to measure
+	 */
+	private interface Case {
+
+		/**
+		 *
+		 * @param problem
+		 * @return a result of the work, so it is not optimized away
+		 */
+		long run(MeetingProblem problem);
+	}
+
+	/**
+	 * the results of the cases are added here, so the JIT compiler cannot
+	 * remove the work
+	 */
+	static volatile long sink;
+
+	/**
+	 * the largest number of solutions counted by the all solutions case
+	 */
+	private static final int MAX_SOLUTIONS = 100000;
+
+	/**
+	 * the number of levels of the search tree expanded with neighbours()
+	 */
+	private static final int MAX_DEPTH = 100;
+
+	/**
+	 * the cases, by name
+	 */
+	private static final String[] names = { "arcConsistency", "revise", "neighbours", "firstSolution",
+			"allSolutions" };
+	private static final Case[] cases = { new Case() {
+		public long run(MeetingProblem problem) {
+			MeetingState state = new MeetingState(problem);
+			state.arcConsistency();
+			return state.consistent ? 1 : 0;
+		}
+	}, new Case() {
+		public long run(MeetingProblem problem) { // every arc once
+			MeetingConstraintGraph graph = new MeetingConstraintGraph(new MeetingState(problem));
+			long result = 0;
+			for (int c = 0; c < problem.index.constraints.length; c++) {
+				for (int k = 0; k < problem.index.scope[c].length; k++) {
+					if (graph.revise(c, k))
+						result++;
+				}
+			}
+			return result;
+		}
+	}, new Case() {
+		public long run(MeetingProblem problem) { // down the leftmost branch
+			MeetingAssignment assignment = new MeetingAssignment(problem);
+			long result = 0;
+			for (int depth = 0; depth < MAX_DEPTH && !assignment.allAssigned(); depth++) {
+				Collection<MeetingAssignment> next = assignment.neighbours();
+				result += next.size();
+				if (next.isEmpty())
+					break;
+				assignment = next.iterator().next();
+			}
+			return result;
+		}
+	}, new Case() {
+		public long run(MeetingProblem problem) {
+			MeetingSolver solver = new MeetingSolver(problem);
+			solver.setPropagation(MeetingSearch.Propagation.MAC);
+			return solver.search() == null ? 0 : 1;
+		}
+	}, new Case() {
+		public long run(MeetingProblem problem) {
+			MeetingSolver solver = new MeetingSolver(problem);
+			solver.setPropagation(MeetingSearch.Propagation.MAC);
+			long result = 0;
+			for (MeetingAssignment a = solver.search(); a != null && result < MAX_SOLUTIONS; a = solver
+					.continueSearch())
+				result++;
+			return result;
+		}
+	} };
+
+	/**
+	 * the main method
+	 *
+	 * @param args
+	 *            meetings, rooms, times and density of a generated problem,
+	 *            and optionally the number of warmup and measured runs
+	 */
+	public static void main(String[] args) {
+		int warmup = 5;
+		int iterations = 10;
+		if (args.length >= 6) {
+			warmup = Integer.parseInt(args[4]);
+			iterations = Integer.parseInt(args[5]);
+		}
+		if (args.length >= 4) {
+			MeetingProblem problem = MeetingGenerator.generate(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+					Integer.parseInt(args[2]), Double.parseDouble(args[3]), 1);
+			measure(args[0] + "/" + args[1] + "/" + args[2] + "/" + args[3], problem, warmup, iterations);
+			return;
+		}
+		measure("example", MeetingProblem.getMeetingProblem(), warmup, iterations);
+		measure("100/10/20/0.05", MeetingGenerator.generate(100, 10, 20, 0.05, 1), warmup, iterations);
+		measure("300/10/50/0.01", MeetingGenerator.generate(300, 10, 50, 0.01, 1), warmup, iterations);
+	}
+
+	/**
+	 * measures all cases on a problem and prints the results
+	 *
+	 * @param label
+	 *            the name of the problem
+	 * @param problem
+	 * @param warmup
+	 *            the number of runs before the measured runs
+	 * @param iterations
+	 *            the number of measured runs
+	 */
+	private static void measure(String label, MeetingProblem problem, int warmup, int iterations) {
+		System.out.println(label + ": " + problem.variables.size() + " meetings, " + problem.constraints.size()
+				+ " constraints");
+		System.out.println(String.format("  %-16s %12s %12s %14s %6s %8s", "case", "ms/op", "min ms", "bytes/op",
+				"gcs", "gc ms"));
+		for (int i = 0; i < cases.length; i++) {
+			for (int w = 0; w < warmup; w++)
+				sink += cases[i].run(problem);
+			long total = 0;
+			long min = Long.MAX_VALUE;
+			long allocated = allocatedBytes();
+			long gcs = gcCount();
+			long gcTime = gcMillis();
+			for (int r = 0; r < iterations; r++) {
+				long start = System.nanoTime();
+				sink += cases[i].run(problem);
+				long time = System.nanoTime() - start;
+				total += time;
+				min = Math.min(min, time);
+			}
+			boolean counted = allocated >= 0;
+			allocated = allocatedBytes() - allocated;
+			System.out.println(String.format("  %-16s %12.3f %12.3f %14s %6d %8d", names[i], total / 1e6 / iterations,
+					min / 1e6, !counted ? "n/a" : Long.toString(allocated / iterations), gcCount() - gcs,
+					gcMillis() - gcTime));
+		}
+	}
+
+	/**
+	 *
+	 * @return the bytes allocated by this thread so far, or -1 if the JVM
+	 *         cannot tell
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 *
+	 * @return the number of garbage collections so far
+	 */
+	private static long gcCount() {
+		long result = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			result += Math.max(0, gc.getCollectionCount());
+		return result;
+	}
+
+	/**
+	 *
+	 * @return the time spent in garbage collections so far, in milliseconds
+	 */
+	private static long gcMillis() {
+		long result = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			result += Math.max(0, gc.getCollectionTime());
+		return result;
+	}
+
+}
@@ -0,0 +1,88 @@
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The meeting slots of a problem. Slots are interned in a calendar, there is
+ * only one slot for a given time and room, so slots can be compared with ==,
+ * and the slots of a calendar are numbered densely from 0 in the order they
+ * were made. The slot numbers are the bit positions of a MeetingDomain, so
+ * all meetings of a problem take their slots from the same calendar, and the
+ * arrays of a search have one entry for each slot of its problem's calendar
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingCalendar {
+
+	// the slots made so far, slots[i].index == i. New slots are added under
+	// the lock, and the array is republished through the volatile field, so
+	// reading a slot by index needs no lock
+	private final Object lock = new Object();
+	private volatile MeetingSlot[] slots = new MeetingSlot[16];
+	private volatile int count = 0;
+
+	// the interned slots by period and room number, guarded by lock
+	private final Map<Long, MeetingSlot> interned = new HashMap<Long, MeetingSlot>();
+
+	/**
+	 * finds the slot for a time and room, making it if it is not in the
+	 * calendar. The same period and room number always give the same slot
+	 *
+	 * @param period
+	 *            the number of the time period, earlier times have smaller
+	 *            numbers
+	 * @param periodName
+	 *            the name of the time period
+	 * @param roomNumber
+	 *            the number of the room
+	 * @param roomName
+	 *            the name of the room
+	 * @return the slot
+	 * @throws IllegalArgumentException
+	 *             if the slot for the period and room number has other names
+	 */
+	public MeetingSlot intern(int period, String periodName, int roomNumber, String roomName) {
+		Long key = (long) period << 32 | (roomNumber & 0xFFFFFFFFL);
+		synchronized (lock) {
+			MeetingSlot slot = interned.get(key);
+			if (slot != null) {
+				if (!Objects.equals(slot.getPeriodName(), periodName) || !Objects.equals(slot.getRoomName(), roomName))
+					throw new IllegalArgumentException(
+							"The slot " + slot + " can not also be named " + periodName + " - " + roomName);
+			} else {
+				slot = new MeetingSlot(this, count, period, periodName, roomNumber, roomName);
+				MeetingSlot[] table = slots;
+				if (count == table.length)
+					table = Arrays.copyOf(table, 2 * count);
+				table[count] = slot;
+				slots = table;
+				count++;
+				interned.put(key, slot);
+			}
+			return slot;
+		}
+	}
+
+	/**
+	 *
+	 * @param index
+	 *            a slot index
+	 * @return the slot with the given index
+	 */
+	public MeetingSlot getSlot(int index) {
+		return slots[index];
+	}
+
+	/**
+	 *
+	 * @return the number of slots made so far, i.e. one more than the largest
+	 *         slot index
+	 */
+	public int size() {
+		return count;
+	}
+
+}
@@ -1,31 +1,37 @@
 
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The format of a meeting constraint. It has nodes/variables and a single test
  * 
- * @author Bjrnar Tessem
+ * @author Bjørnar Tessem
  *
  */
 public abstract class MeetingConstraint {
 
-	Set<MeetingNode> nodes; // the set of nodes involved in a constraint
+	List<MeetingNode> nodes; // the nodes involved in a constraint, in the order given
 	String name;
 
 	public MeetingConstraint(String name, MeetingNode... nodes) {
 		this.name = name;
-		this.nodes = new HashSet<MeetingNode>();
-		for (int i = 0; i < nodes.length; i++)
-			this.nodes.add(nodes[i]);
+		this.nodes = new ArrayList<MeetingNode>();
+		for (int i = 0; i < nodes.length; i++) {
+			if (!this.nodes.contains(nodes[i]))
+				this.nodes.add(nodes[i]);
+		}
 	}
 
 	/**
 	 * 
+	 * @param values
+	 *            the assignment to test, values[k] is the slot of the k'th
+	 *            node of the constraint, in the order the nodes were given.
+	 *            Only the first nodes.size() entries are read
 	 * @return true if the constraint is satisfied
 	 */
-	public abstract boolean constraint();
+	public abstract boolean constraint(MeetingSlot[] values);
 
 	public String toString() {
 		return name;
@@ -1,16 +1,13 @@
 
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * The constraint graph representation and methods for doing arc consistency for
  * the meeting problem
  * 
- * @author Bjrnar Tessem
+ * @author Bjørnar Tessem
  *
  */
 public class MeetingConstraintGraph {
@@ -21,10 +18,139 @@ public class MeetingConstraintGraph {
 	private MeetingProblem theProblem;
 
 	/**
-	 * sets the meeting problem
+	 * the domain computed by the last call to getNewDomain, reused between
+	 * revisions
 	 */
-	public MeetingConstraintGraph() {
-		theProblem = MeetingProblem.getMeetingProblem();
+	private MeetingDomain revised = new MeetingDomain();
+
+	/**
+	 * which constraints involve which variables
+	 */
+	private MeetingIndex index;
+
+	/**
+	 * all arcs of the constraint graph, arcs[i].id == i
+	 */
+	private CGArc[] arcs;
+
+	/**
+	 * the order arcs are taken from the tda queue
+	 */
+	private CGArcQueue.Order order = CGArcQueue.Order.FIFO;
+
+	/**
+	 * the domains the algorithms work on, domains[v] is the domain of the node
+	 * with index v
+	 */
+	private MeetingDomain[] domains;
+
+	/**
+	 * the trail changed domains are saved on before they are changed, null if
+	 * changes are not to be undone
+	 */
+	private MeetingTrail trail;
+
+	/**
+	 * the assignment tested by getNewDomain, in scope order. Each graph has
+	 * its own, so graphs in different threads do not disturb each other
+	 */
+	private MeetingSlot[] values;
+
+	/**
+	 * the constraint weights increased on a wipeout, by constraint index
+	 */
+	private int[] weights;
+
+	/**
+	 * the last support found for each slot in each arc of a binary
+	 * constraint, residues[id][a] is the slot of the other node that last
+	 * supported slot a in arc id, or -1. An arc gets its residues when it is
+	 * first revised. They are only hints, so they need not be restored when
+	 * the search backtracks
+	 */
+	private int[][] residues;
+
+	/**
+	 * true if the no double booking constraint is propagated as a global all
+	 * different constraint when the arcs are consistent
+	 */
+	private boolean useAllDifferent = true;
+
+	/**
+	 * the all different propagator, made when first needed
+	 */
+	private MeetingAllDifferent allDifferent;
+
+	/**
+	 * the tda queue used by propagate, made when first needed
+	 */
+	private CGArcQueue queue;
+
+	/**
+	 * counts the revisions and pruned values for a search, or null
+	 */
+	private MeetingMetrics.Recorder recorder;
+
+	/**
+	 * makes the arcs of the graph for the problem of a state. The algorithms
+	 * work on the domains and weights of the state
+	 * 
+	 * @param state
+	 *            the state of a solve
+	 */
+	public MeetingConstraintGraph(MeetingState state) {
+		this(state.problem, state.domains, null);
+		weights = state.weights;
+	}
+
+	/**
+	 * makes the arcs of the graph for a meeting problem. The algorithms work
+	 * on the given domains, e.g. the domains of a search, and save each domain
+	 * on the trail before it is changed
+	 * 
+	 * @param problem
+	 *            the meeting problem
+	 * @param domains
+	 *            the domains by node index
+	 * @param trail
+	 *            the trail of the search, may be null
+	 */
+	public MeetingConstraintGraph(MeetingProblem problem, MeetingDomain[] domains, MeetingTrail trail) {
+		this.domains = domains;
+		this.trail = trail;
+		theProblem = problem;
+		index = theProblem.index;
+		weights = new int[index.constraints.length];
+		Arrays.fill(weights, 1);
+		values = new MeetingSlot[index.maxArity];
+		residues = new int[index.arcCount][];
+		arcs = new CGArc[index.arcCount];
+		for (int c = 0; c < index.constraints.length; c++) {
+			for (int k = 0; k < index.scope[c].length; k++) {
+				int id = index.firstArc[c] + k;
+				arcs[id] = new CGArc(index, c, k, id);
+			}
+		}
+	}
+
+	/**
+	 * decides if the no double booking constraint is propagated as a global
+	 * all different constraint, in addition to removing the slots of
+	 * singleton domains
+	 * 
+	 * @param useAllDifferent
+	 */
+	public void setAllDifferent(boolean useAllDifferent) {
+		this.useAllDifferent = useAllDifferent;
+	}
+
+	/**
+	 * sets the order the arc consistency algorithm handles arcs in
+	 * 
+	 * @param order
+	 */
+	public void setOrder(CGArcQueue.Order order) {
+		this.order = order;
 	}
 
 	/**
@@ -33,7 +159,7 @@ public class MeetingConstraintGraph {
 	 * @param args
 	 */
 	public static void main(String[] args) {
-		MeetingConstraintGraph cg = new MeetingConstraintGraph();
+		MeetingConstraintGraph cg = new MeetingConstraintGraph(new MeetingState(MeetingProblem.getMeetingProblem()));
 		cg.arcConsistency();
 		cg.printDomains();
 	}
@@ -42,9 +168,9 @@ public class MeetingConstraintGraph {
 	 * prints the domains of the problem
 	 */
 	private void printDomains() {
-		for (MeetingNode n : theProblem.variables) {
-			System.out.println(n.name);
-			for (MeetingSlot slot : n.domain) {
+		for (int v = 0; v < index.nodes.length; v++) {
+			System.out.println(index.nodes[v].name);
+			for (MeetingSlot slot : domains[v]) {
 				System.out.println(slot);
 			}
 		}
@@ -53,96 +179,298 @@ public class MeetingConstraintGraph {
 
 	/**
 	 * the arc consistency algorithm
+	 * 
+	 * @return false if some domain was wiped out or the meetings cannot all
+	 *         have different slots
 	 */
-	public void arcConsistency() {
-		// make a linked list that works as queue of GCArcs
-		LinkedList<CGArc> tda = new LinkedList<CGArc>();
+	public boolean arcConsistency() {
+		// make an indexed queue of GCArcs
+		CGArcQueue tda = new CGArcQueue(arcs, order, domains, weights);
+
+		// add all arcs, i.e. one arc for each node involved in each
+		// constraint
+		for (CGArc arc : arcs) {
+			tda.add(arc);
+		}
+
+		return run(tda, false);
+	}
+
+	/**
+	 * arc consistency for a search that has just reduced the domain of a node,
+	 * e.g. by assigning it. Only the arcs that may be affected by the change
+	 * are revised
+	 * 
+	 * @param v
+	 *            the index of the node with the changed domain
+	 * @return false if some domain was wiped out
+	 */
+	public boolean propagate(int v) {
+		if (queue == null)
+			queue = new CGArcQueue(arcs, order, domains, weights);
+		addArcsOf(queue, v, -1);
+		if (!checkSingletons(v, queue)) {
+			queue.clear();
+			return false;
+		}
+		return run(queue, true);
+	}
+
+	/**
+	 * makes the graph count its revisions and pruned values
+	 * 
+	 * @param recorder
+	 *            the recorder of a search, or null
+	 */
+	void setRecorder(MeetingMetrics.Recorder recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * revises the domain of the node in a single arc, as used by forward
+	 * checking. Nothing else is propagated
+	 * 
+	 * @param c
+	 *            the constraint index
+	 * @param k
+	 *            the position of the node in the constraint's scope
+	 * @return false if the domain was wiped out
+	 */
+	public boolean revise(int c, int k) {
+		CGArc arc = arcs[index.firstArc[c] + k];
+		MeetingDomain newDomain = getNewDomain(arc);
+		MeetingDomain domain = domains[arc.v];
+		if (recorder != null)
+			recorder.revisions[c]++;
+		if (!domain.sameAs(newDomain)) {
+			if (recorder != null)
+				recorder.pruned += domain.size() - newDomain.size();
+			if (newDomain.isEmpty())
+				weights[c]++; // the constraint caused a wipeout
+			save(arc.v);
+			domain.copyFrom(newDomain);
+		}
+		return !domain.isEmpty();
+	}
 
-		// for all constraints add one arc for each node involved in
-		// the constraint
-		for (MeetingConstraint mc : theProblem.constraints) {
-			for (MeetingNode n : mc.nodes) {
-				tda.add(new CGArc(mc, n));
+	/**
+	 * removes a slot from the domain of a node, saving the domain first
+	 * 
+	 * @param v
+	 *            the node index
+	 * @param slot
+	 *            the slot index
+	 * @return true if the slot was in the domain
+	 */
+	public boolean removeSlot(int v, int slot) {
+		MeetingDomain domain = domains[v];
+		if (!domain.has(slot))
+			return false;
+		if (recorder != null)
+			recorder.pruned++;
+		save(v);
+		return domain.unset(slot);
+	}
+
+	/**
+	 * reduces the domain of a node to a single slot, saving the domain first
+	 * 
+	 * @param v
+	 *            the node index
+	 * @param slot
+	 *            the slot index
+	 */
+	public void reduceTo(int v, int slot) {
+		save(v);
+		domains[v].clear();
+		domains[v].set(slot);
+	}
+
+	/**
+	 * makes wipeouts increase the given weights, e.g. so that a search can
+	 * have its own weights
+	 * 
+	 * @param weights
+	 *            the weights by constraint index
+	 */
+	public void setWeights(int[] weights) {
+		this.weights = weights;
+	}
+
+	/**
+	 * removes a slot from the domain of a node and adds the arcs of the
+	 * node's constraints to the tda, as done by the all different propagator
+	 * 
+	 * @param v
+	 *            the node index
+	 * @param slot
+	 *            the slot index
+	 * @param tda
+	 */
+	void removeAndRequeue(int v, int slot, CGArcQueue tda) {
+		if (removeSlot(v, slot))
+			addArcsOf(tda, v, -1);
+	}
+
+	/**
+	 * saves the domain of a node on the trail if there is one
+	 * 
+	 * @param v
+	 *            the node index
+	 */
+	private void save(int v) {
+		if (trail != null)
+			trail.saveDomain(v, domains[v]);
+	}
+
+	/**
+	 * the main loop of the arc consistency algorithm
+	 * 
+	 * @param tda
+	 *            the queue of arcs to do
+	 * @param stopAtWipeout
+	 *            true if the algorithm stops as soon as a domain is empty
+	 * @return false if some domain was wiped out
+	 */
+	private boolean run(CGArcQueue tda, boolean stopAtWipeout) {
+		boolean result = true;
+		while (true) {
+			result = revise(tda, stopAtWipeout) && result;
+			if (!result || !useAllDifferent)
+				return result;
+			// the arcs are consistent, now the global no double booking
+			if (allDifferent == null)
+				allDifferent = new MeetingAllDifferent(domains.length, slotBound());
+			if (!allDifferent.propagate(domains, this, tda)) {
+				tda.clear();
+				return false;
 			}
+			if (tda.isEmpty()) // nothing was removed
+				return true;
 		}
+	}
 
+	/**
+	 * 
+	 * @return one more than the largest slot index any domain can hold
+	 */
+	private int slotBound() {
+		int words = 0;
+		for (MeetingDomain domain : domains)
+			words = Math.max(words, domain.words.length);
+		return words << 6;
+	}
+
+	/**
+	 * revises the arcs of the tda until it is empty
+	 * 
+	 * @param tda
+	 *            the queue of arcs to do
+	 * @param stopAtWipeout
+	 *            true if the algorithm stops as soon as a domain is empty
+	 * @return false if some domain was wiped out
+	 */
+	private boolean revise(CGArcQueue tda, boolean stopAtWipeout) {
+		boolean result = true;
 		while (!tda.isEmpty()) { // there are still CGArcs to test
 
 			CGArc arc = tda.remove(); // get the first CGArc
-			Set<MeetingSlot> newDomain = getNewDomain(arc); // compute the new
+			MeetingDomain newDomain = getNewDomain(arc); // compute the new
 															// domain for the
 															// arc
-			if (!arc.variable.domain.equals(newDomain)) { // if domain changed
-
-				arc.variable.domain = newDomain; // change domain to new domain
-				for (MeetingConstraint mc : theProblem.constraints) {
-					if (mc != arc.constraint && mc.nodes.contains(arc.variable)) { 
-															// if some constraint
-															// contains the
-															// changed variable
-						for (MeetingNode n : mc.nodes) { // add new arcs to the
-															// tda queue
-							if (n != arc.variable)
-								addCGArc(tda, n, mc);
-						}
-					}
+			MeetingDomain domain = domains[arc.v];
+			if (recorder != null)
+				recorder.revisions[arc.c]++;
+			if (!domain.sameAs(newDomain)) { // if domain changed
+				if (recorder != null)
+					recorder.pruned += domain.size() - newDomain.size();
+				if (newDomain.isEmpty()) {
+					weights[arc.c]++; // the constraint caused a wipeout
+					result = false;
+				}
+
+				save(arc.v);
+				domain.copyFrom(newDomain); // change domain to new domain
+				addArcsOf(tda, arc.v, arc.c); // arcs of the other
+															// constraints
+															// with the changed
+															// variable
+				if (!checkSingletons(arc.v, tda)) // problem specific check
+														// for domains with
+														// only one possible
+														// meeting slot
+					result = false;
+				if (!result && stopAtWipeout) {
+					tda.clear();
+					return false;
 				}
-				checkSingletons(arc, tda); // problem specific check for domains
-											// with only one possible meeting
-											// slot
 			}
 
 		}
-
+		return result;
 	}
 
 	/**
-	 * finds singleton domains and updates the tda based on this This is a
-	 * method special for this problem due to the no double booking constraint.
-	 * It is added for efficiency
+	 * finds singleton domains and updates the tda based on this. If the domain
+	 * of a node is a singleton, its slot is removed from all other domains.
+	 * This is a method special for this problem due to the no double booking
+	 * constraint. It is added for efficiency
 	 * 
-	 * @param e
-	 *            an arc
+	 * @param variable
+	 *            the index of a node whose domain has changed
 	 * @param tda
 	 *            the tda queue
+	 * @return false if the domain of some other node was wiped out
 	 */
-	private void checkSingletons(CGArc e, LinkedList<CGArc> tda) {
-		if (e.variable.domain.size() == 1) { // only do something if arcs domain
-												// is a singleton
-
-			MeetingSlot fixed = getSingleSlot(e); // gets this single slot which
-													// now is fixed
-													// to a particular meeting
-			for (MeetingNode n : theProblem.variables) { // for all other
-															// variables
-				if (n != e.variable && n.domain.remove(fixed)) { // remove this
-																	// used slot
-																	// if
-																	// removed
-					for (MeetingConstraint mc : theProblem.constraints) { // check
-																			// all
-																			// constraints
-						if (mc.nodes.contains(n)) { // if the constraint
-													// involves n go through the
-													// other
-													// nodes in the constraint
-													// and add
-													// to tda
-							Iterator<MeetingNode> it2 = mc.nodes.iterator();
-							while (it2.hasNext()) {
-								MeetingNode n2 = it2.next();
-								if (n2 != n)
-									addCGArc(tda, n2, mc); //
-							}
-						}
-					}
+	private boolean checkSingletons(int variable, CGArcQueue tda) {
+		boolean result = true;
+		if (domains[variable].isSingleton()) { // only do something if
+														// the domain is a
+														// singleton
+
+			int fixed = domains[variable].nextSlot(0); // this single
+																// slot is now
+																// fixed to a
+																// particular
+																// meeting
+			for (int n = 0; n < domains.length; n++) { // for all other variables
+				if (n != variable && removeSlot(n, fixed)) { // remove this
+																// used slot if
+																// removed
+					addArcsOf(tda, n, -1); // the constraints involving n
+												// need to be checked again
+					if (domains[n].isEmpty())
+						result = false;
 				}
 			}
 		}
+		return result;
 	}
 
 	/**
-	 * creates a CGArc and adds to the tda
+	 * adds to the tda the arcs to the other nodes of the constraints that
+	 * involve a node whose domain has changed
+	 * 
+	 * @param tda
+	 * @param n
+	 *            the index of the changed node
+	 * @param except
+	 *            the index of a constraint whose arcs are not added, or -1
+	 */
+	private void addArcsOf(CGArcQueue tda, int n, int except) {
+		for (int c : index.incident[n]) { // only the constraints of n
+			if (c == except)
+				continue;
+			int[] scope = index.scope[c];
+			for (int k = 0; k < scope.length; k++) {
+				if (scope[k] != n)
+					tda.add(arcs[index.firstArc[c] + k]);
+			}
+		}
+	}
+
+	/**
+	 * finds the CGArc of the graph and adds it to the tda
 	 * 
 	 * @param tda
 	 * @param n
@@ -150,10 +478,12 @@ public class MeetingConstraintGraph {
 	 * @param m
 	 *            the constraint in the arc
 	 */
-	public void addCGArc(LinkedList<CGArc> tda, MeetingNode n, MeetingConstraint m) {
-		CGArc newArc = new CGArc(m, n);
-		if (!tda.contains(newArc)) { // check if already there
-			tda.add(newArc);
+	public void addCGArc(CGArcQueue tda, MeetingNode n, MeetingConstraint m) {
+		int c = index.indexOf(m);
+		int k = c < 0 ? -1 : index.positionOf(c, index.indexOf(n));
+		if (k >= 0) {
+			tda.add(arcs[index.firstArc[c] + k]); // does nothing if
+														// already there
 		}
 	}
 
@@ -165,39 +495,53 @@ public class MeetingConstraintGraph {
 	 * @return the singleton slot
 	 */
 	public MeetingSlot getSingleSlot(CGArc e) {
-		Iterator<MeetingSlot> it = e.variable.domain.iterator();
-		MeetingSlot fixed = it.next();
-		return fixed;
+		return domains[e.v].first();
 	}
 
 	/**
 	 * the method that finds the new domain for a node in an CGArc
 	 * 
 	 * @param arc
-	 * @return a new domain
+	 * @return a new domain, only valid until the next call
 	 */
-	private Set<MeetingSlot> getNewDomain(CGArc arc) {
-		Set<MeetingSlot> result = new HashSet<MeetingSlot>();
+	private MeetingDomain getNewDomain(CGArc arc) {
+		MeetingDomain result = revised;
+		result.clear();
+
+		// a rule is revised with the bitset tables of its kernel
+		int[] scope = index.scope[arc.c];
+		MeetingKernel kernel = theProblem.kernels[arc.c];
+		if (kernel != null) {
+			if (scope.length == 1)
+				kernel.revise(domains[scope[0]], result);
+			else if (arc.v == scope[0])
+				kernel.revise(0, domains[scope[0]], domains[scope[1]], result);
+			else
+				kernel.revise(1, domains[scope[1]], domains[scope[0]], result);
+			return result;
+		}
 
-		// represent all nodes in an arraylist (easier to compute with than a
-		// set)
-		ArrayList<MeetingNode> nodesInConstraint = new ArrayList<MeetingNode>();
-		nodesInConstraint.addAll(arc.constraint.nodes);
+		// other binary constraints are revised with support tables
+		if (scope.length == 2) {
+			reviseBinary(arc, result);
+			return result;
+		}
+
+		// the nodes in the constraint in the order of the index
+		List<MeetingNode> nodesInConstraint = index.nodesOf(arc.c);
 
 		// if domain is empty for some of the nodes, then all are empty
-		if (someEmptyDomain(nodesInConstraint))
+		if (someEmptyDomain(scope))
 			return result;
 
 		// the position of the arc's variable among the nodes in the constraint
-		int positionOfVariable = nodesInConstraint.indexOf(arc.variable);
+		int positionOfVariable = arc.id - index.firstArc[arc.c];
 
-		// the domain values for all nodes in the constraint represented in
-		// an arrayList where each element is an array list of meeting slots
-		ArrayList<ArrayList<MeetingSlot>> domainValues = new ArrayList<ArrayList<MeetingSlot>>();
+		// the domain values for all nodes in the constraint represented as
+		// arrays of meeting slots read off the domain bits
+		MeetingSlot[][] domainValues = new MeetingSlot[nodesInConstraint.size()][];
 		for (int i = 0; i < nodesInConstraint.size(); i++) {
-			ArrayList<MeetingSlot> slots = new ArrayList<MeetingSlot>();
-			slots.addAll(nodesInConstraint.get(i).domain);
-			domainValues.add(slots);
+			domainValues[i] = toSlots(domains[scope[i]]);
 		}
 
 		// To test all possible combinations of values we need to loop
@@ -215,7 +559,7 @@ public class MeetingConstraintGraph {
 		// each domain has different sizes
 		int[] maxAssignmentIndexes = new int[nodesInConstraint.size()];
 		for (int i = 0; i < maxAssignmentIndexes.length; i++)
-			maxAssignmentIndexes[i] = domainValues.get(i).size();
+			maxAssignmentIndexes[i] = domainValues[i].length;
 
 		// we do the first increment of indexes
 		boolean successfulIncrement = increment(assignmentIndexes, maxAssignmentIndexes);
@@ -224,13 +568,13 @@ public class MeetingConstraintGraph {
 
 			// we set the next assignment for all variables in constraint
 			for (int i = 0; i < assignmentIndexes.length; i++) {
-				nodesInConstraint.get(i).assignment = domainValues.get(i).get(assignmentIndexes[i]);
+				values[i] = domainValues[i][assignmentIndexes[i]];
 			}
 
 			// is the assignment consistent we have a new possible value for the
 			// arc's variable
-			if (theProblem.otherConstraints(nodesInConstraint) && arc.constraint.constraint()) {
-				result.add(domainValues.get(positionOfVariable).get(assignmentIndexes[positionOfVariable]));
+			if (theProblem.otherConstraints(nodesInConstraint, values) && arc.constraint.constraint(values)) {
+				result.set(domainValues[positionOfVariable][assignmentIndexes[positionOfVariable]].index);
 			}
 
 			// increment again
@@ -240,15 +584,70 @@ public class MeetingConstraintGraph {
 		return result;
 	}
 
+	/**
+	 * the new domain for the node of an arc of a binary constraint. For each
+	 * slot the last support found is tested first, if it is gone the support
+	 * table is searched from there on, as in AC-2001, and then from the start
+	 * 
+	 * @param arc
+	 *            an arc of a binary constraint
+	 * @param result
+	 *            is set to the supported slots of the node
+	 */
+	private void reviseBinary(CGArc arc, MeetingDomain result) {
+		int c = arc.c;
+		int k = arc.id - index.firstArc[c];
+		long[][] rows = theProblem.supports.rows(c, k);
+		MeetingDomain domain = domains[arc.v];
+		MeetingDomain other = domains[index.scope[c][1 - k]];
+		int[] last = residues[arc.id];
+		if (last == null) {
+			last = residues[arc.id] = new int[rows.length];
+			Arrays.fill(last, -1);
+		}
+		for (int a = domain.nextSlot(0); a >= 0; a = domain.nextSlot(a + 1)) {
+			if (a >= rows.length || rows[a] == null)
+				continue; // not in the initial domain, so no support
+			int b = last[a];
+			if (b >= 0 && other.has(b)) { // the last support is still there
+				result.set(a);
+				continue;
+			}
+			int from = b + 1; // go on after the last support
+			b = MeetingSupports.nextSupport(rows[a], other, from);
+			if (b < 0 && from > 0)
+				b = MeetingSupports.nextSupport(rows[a], other, 0);
+			if (b >= 0) {
+				last[a] = b;
+				result.set(a);
+			}
+		}
+	}
+
+	/**
+	 * the slots of a domain in index order
+	 * 
+	 * @param domain
+	 * @return an array of the slots in the domain
+	 */
+	private MeetingSlot[] toSlots(MeetingDomain domain) {
+		MeetingSlot[] result = new MeetingSlot[domain.size()];
+		int j = 0;
+		for (int i = domain.nextSlot(0); i >= 0; i = domain.nextSlot(i + 1))
+			result[j++] = theProblem.calendar.getSlot(i);
+		return result;
+	}
+
 	/**
 	 * checks if some domain is empty for some nodes in a constraint
 	 * 
-	 * @param nodesInConstraint
+	 * @param scope
+	 *            the indexes of the nodes in the constraint
 	 * @return true if one domain is empty
 	 */
-	private boolean someEmptyDomain(ArrayList<MeetingNode> nodesInConstraint) {
-		for (MeetingNode m : nodesInConstraint) {
-			if (m.domain.size() == 0)
+	private boolean someEmptyDomain(int[] scope) {
+		for (int m : scope) {
+			if (domains[m].isEmpty())
 				return true;
 		}
 		return false;
@@ -0,0 +1,236 @@
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The cost of the preferences for the assignment of a search. The cost of the
+ * preferences whose meetings are all assigned is kept up to date as the
+ * search assigns and unassigns variables, so it costs the number of
+ * preferences of a variable to update it. A lower bound of the cost of any
+ * complete assignment below the current one adds, for each unassigned
+ * variable, the cheapest slot left in its domain for its unary preferences
+ * and its preferences with assigned meetings. The cost is also a value
+ * ordering, that tries the cheapest slots first
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingCost implements ValueOrdering {
+
+	/**
+	 * the preferences of each variable, by variable index
+	 */
+	private final MeetingPreference[][] preferences;
+
+	/**
+	 * the indexes of the first and second meeting of preferences[v][i], the
+	 * second is -1 for a unary preference
+	 */
+	private final int[][] firsts;
+	private final int[][] seconds;
+
+	/**
+	 * unary[v][a] is the sum of the unary preferences of variable v for slot
+	 * a, null if v has no unary preferences
+	 */
+	private final int[][] unary;
+
+	/**
+	 * the variables that have preferences
+	 */
+	private final int[] withPreferences;
+
+	/**
+	 * the calendar of the problem
+	 */
+	private final MeetingCalendar calendar;
+
+	/**
+	 * the cost of the preferences whose meetings are all assigned
+	 */
+	private long cost = 0;
+
+	/**
+	 *
+	 * @param problem
+	 *            the problem
+	 * @param preferences
+	 *            preferences about the meetings of the problem
+	 */
+	public MeetingCost(MeetingProblem problem, Collection<MeetingPreference> preferences) {
+		MeetingIndex index = problem.index;
+		calendar = problem.calendar;
+		int n = index.nodes.length;
+		List<List<MeetingPreference>> byVariable = new ArrayList<List<MeetingPreference>>();
+		for (int v = 0; v < n; v++)
+			byVariable.add(new ArrayList<MeetingPreference>());
+		for (MeetingPreference p : preferences) {
+			int first = index.indexOf(p.first);
+			int second = p.second == null ? -1 : index.indexOf(p.second);
+			if (first < 0 || (p.second != null && second < 0))
+				throw new IllegalArgumentException("The preference " + p + " has a meeting that is not in the problem");
+			byVariable.get(first).add(p);
+			if (p.second != null && p.second != p.first)
+				byVariable.get(second).add(p);
+		}
+		this.preferences = new MeetingPreference[n][];
+		firsts = new int[n][];
+		seconds = new int[n][];
+		unary = new int[n][];
+		int count = 0;
+		for (int v = 0; v < n; v++) {
+			List<MeetingPreference> list = byVariable.get(v);
+			this.preferences[v] = list.toArray(new MeetingPreference[list.size()]);
+			firsts[v] = new int[list.size()];
+			seconds[v] = new int[list.size()];
+			for (int i = 0; i < list.size(); i++) {
+				MeetingPreference p = list.get(i);
+				firsts[v][i] = index.indexOf(p.first);
+				seconds[v][i] = p.second == null ? -1 : index.indexOf(p.second);
+			}
+			if (!list.isEmpty())
+				count++;
+			for (MeetingPreference p : list) {
+				if (!p.isUnary())
+					continue;
+				MeetingDomain domain = index.nodes[v].domain;
+				if (unary[v] == null)
+					unary[v] = new int[domain.words.length << 6];
+				for (int a = domain.nextSlot(0); a >= 0; a = domain.nextSlot(a + 1))
+					unary[v][a] += p.cost(calendar.getSlot(a), null);
+			}
+		}
+		withPreferences = new int[count];
+		count = 0;
+		for (int v = 0; v < n; v++) {
+			if (this.preferences[v].length > 0)
+				withPreferences[count++] = v;
+		}
+	}
+
+	/**
+	 *
+	 * @return the cost of the preferences whose meetings are all assigned
+	 */
+	public long getCost() {
+		return cost;
+	}
+
+	/**
+	 * adds the cost of the preferences a new assignment completes
+	 *
+	 * @param v
+	 *            the variable that was assigned
+	 * @param values
+	 *            the assignment, values[v] is set
+	 */
+	void assign(int v, MeetingSlot[] values) {
+		cost += completed(v, values);
+	}
+
+	/**
+	 * removes the cost of the preferences an assignment completed
+	 *
+	 * @param v
+	 *            the variable that is to be unassigned
+	 * @param values
+	 *            the assignment, values[v] is still set
+	 */
+	void unassign(int v, MeetingSlot[] values) {
+		cost -= completed(v, values);
+	}
+
+	/**
+	 *
+	 * @param v
+	 * @param values
+	 * @return the cost of the preferences of v whose meetings are all
+	 *         assigned
+	 */
+	private long completed(int v, MeetingSlot[] values) {
+		long result = 0;
+		for (int i = 0; i < preferences[v].length; i++) {
+			MeetingPreference p = preferences[v][i];
+			if (p.isUnary())
+				result += p.cost(values[v], null);
+			else if (values[firsts[v][i]] != null && values[seconds[v][i]] != null)
+				result += p.cost(values[firsts[v][i]], values[seconds[v][i]]);
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @param search
+	 *            a search with this cost
+	 * @return a lower bound of the cost of every complete assignment that
+	 *         extends the current assignment of the search
+	 */
+	long lowerBound(MeetingSearch search) {
+		long result = cost;
+		for (int v : withPreferences) {
+			if (search.isAssigned(v))
+				continue;
+			int best = Integer.MAX_VALUE;
+			MeetingDomain domain = search.getDomain(v);
+			for (int a = domain.nextSlot(0); a >= 0 && best > 0; a = domain.nextSlot(a + 1))
+				best = Math.min(best, slotCost(search, v, a));
+			if (best == Integer.MAX_VALUE) // an empty domain
+				return Long.MAX_VALUE;
+			result += best;
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @param search
+	 * @param v
+	 *            an unassigned variable
+	 * @param a
+	 *            a slot index
+	 * @return the cost of giving v slot a, counting its unary preferences and
+	 *         the preferences with assigned meetings
+	 */
+	private int slotCost(MeetingSearch search, int v, int a) {
+		int result = unary[v] == null ? 0 : unary[v][a];
+		MeetingSlot slot = null;
+		for (int i = 0; i < preferences[v].length; i++) {
+			MeetingPreference p = preferences[v][i];
+			if (p.isUnary())
+				continue;
+			int w = firsts[v][i] == v ? seconds[v][i] : firsts[v][i];
+			MeetingSlot other = search.getValue(w);
+			if (other == null)
+				continue;
+			if (slot == null)
+				slot = calendar.getSlot(a);
+			result += firsts[v][i] == v ? p.cost(slot, other) : p.cost(other, slot);
+		}
+		return result;
+	}
+
+	/**
+	 * tries the cheapest slots first, keeping slot order for equal costs
+	 */
+	public int order(MeetingSearch search, int v, int[] values, int start) {
+		int count = ValueOrderings.SLOT_ORDER.order(search, v, values, start);
+		if (preferences[v].length == 0)
+			return count;
+		int[] scores = search.getScores();
+		for (int i = start; i < start + count; i++)
+			scores[values[i]] = slotCost(search, v, values[i]);
+		for (int i = start + 1; i < start + count; i++) {
+			int a = values[i];
+			int j = i - 1;
+			while (j >= start && scores[values[j]] > scores[a]) {
+				values[j + 1] = values[j];
+				j--;
+			}
+			values[j + 1] = a;
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,399 @@
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts the solutions of a meeting problem without making them. The count
+ * is found by a depth first search with forward checking, where each node of
+ * the search tree counts the solutions of the meetings that are not yet
+ * assigned:
+ * <ul>
+ * <li>the meetings are split into components, two meetings are in the same
+ * component if a constraint on unassigned meetings has them both or if their
+ * domains share a slot (no double booking). The components have nothing to
+ * do with each other, so the count is the product of their counts</li>
+ * <li>the count of a component depends only on its meetings and their
+ * domains, as forward checking has removed the slots that break a
+ * constraint with an assigned meeting. So the count is cached by the
+ * meetings and domains, and a component met again in another branch is not
+ * searched again</li>
+ * </ul>
+ * The caching needs all constraints to have at most two meetings, for other
+ * problems the components are still used but nothing is cached. The counts
+ * are BigIntegers, as the number of schedules grows very fast with the
+ * number of meetings
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingCounter {
+
+	/**
+	 * which constraints involve which variables
+	 */
+	private final MeetingIndex index;
+
+	/**
+	 * the current domains, restored from the trail on backtracking
+	 */
+	private final MeetingDomain[] domains;
+
+	/**
+	 * the graph doing the forward checking, and its trail
+	 */
+	private final MeetingConstraintGraph graph;
+	private final MeetingTrail trail = new MeetingTrail();
+
+	/**
+	 * assigned[v] is true if variable v has been assigned
+	 */
+	private final boolean[] assigned;
+
+	/**
+	 * remaining[c] is the number of unassigned variables in constraint c
+	 */
+	private final int[] remaining;
+
+	/**
+	 * the union find forest used to find components, and owner[s] the first
+	 * variable seen with slot s
+	 */
+	private final int[] parent;
+	private final int[] owner;
+
+	/**
+	 * the counts of the components met so far, null if they are not cached
+	 */
+	private Map<Key, BigInteger> cache;
+
+	/**
+	 * the largest number of counts cached, the cache is cleared when full
+	 */
+	private int cacheSize = 1 << 20;
+
+	/**
+	 * true if the problem has no solutions because the arc consistency of the
+	 * state failed
+	 */
+	private final boolean inconsistent;
+
+	/**
+	 * the number of components counted by search and found in the cache
+	 */
+	private long searched = 0;
+	private long cached = 0;
+
+	/**
+	 *
+	 * @param problem
+	 *            the meeting problem
+	 */
+	public MeetingCounter(MeetingProblem problem) {
+		this(new MeetingState(problem));
+	}
+
+	/**
+	 *
+	 * @param state
+	 *            the state to count the solutions from, it is not changed
+	 */
+	public MeetingCounter(MeetingState state) {
+		MeetingProblem problem = state.problem;
+		index = problem.index;
+		int n = index.nodes.length;
+		domains = new MeetingDomain[n];
+		for (int v = 0; v < n; v++)
+			domains[v] = new MeetingDomain(state.domains[v]);
+		graph = new MeetingConstraintGraph(problem, domains, trail);
+		assigned = new boolean[n];
+		remaining = new int[index.constraints.length];
+		boolean binary = true;
+		for (int c = 0; c < remaining.length; c++) {
+			remaining[c] = index.scope[c].length;
+			binary &= remaining[c] <= 2;
+		}
+		if (binary)
+			cache = new HashMap<Key, BigInteger>();
+		parent = new int[n];
+		owner = new int[problem.slotCount];
+		inconsistent = !state.consistent;
+	}
+
+	/**
+	 *
+	 * @param cacheSize
+	 *            the largest number of component counts to remember
+	 */
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	/**
+	 *
+	 * @return the number of solutions of the problem
+	 */
+	public BigInteger count() {
+		if (inconsistent || !graph.arcConsistency()) // also the unary
+														// constraints
+			return BigInteger.ZERO;
+		int[] all = new int[domains.length];
+		for (int v = 0; v < all.length; v++)
+			all[v] = v;
+		return countAll(all);
+	}
+
+	/**
+	 * counts the solutions of a set of unassigned variables, by splitting it
+	 * into components
+	 *
+	 * @param vars
+	 *            the variables, in increasing order
+	 * @return the number of ways to assign them
+	 */
+	private BigInteger countAll(int[] vars) {
+		if (vars.length == 0)
+			return BigInteger.ONE;
+		int[][] components = components(vars);
+		BigInteger result = BigInteger.ONE;
+		for (int[] component : components) {
+			result = result.multiply(countComponent(component));
+			if (result.signum() == 0)
+				break;
+		}
+		return result;
+	}
+
+	/**
+	 * counts the solutions of a component, from the cache if it has been
+	 * counted before
+	 *
+	 * @param vars
+	 *            the variables of the component, in increasing order
+	 * @return the number of ways to assign them
+	 */
+	private BigInteger countComponent(int[] vars) {
+		Key key = null;
+		if (cache != null) {
+			key = new Key(vars, domains);
+			BigInteger known = cache.get(key);
+			if (known != null) {
+				cached++;
+				return known;
+			}
+		}
+		searched++;
+
+		// branch on the variable with the smallest domain
+		int v = vars[0];
+		for (int w : vars) {
+			if (domains[w].size() < domains[v].size())
+				v = w;
+		}
+		int[] rest = new int[vars.length - 1];
+		int k = 0;
+		for (int w : vars) {
+			if (w != v)
+				rest[k++] = w;
+		}
+		BigInteger result = BigInteger.ZERO;
+		MeetingDomain choices = new MeetingDomain(domains[v]);
+		for (int slot = choices.nextSlot(0); slot >= 0; slot = choices.nextSlot(slot + 1)) {
+			if (assign(v, slot, rest))
+				result = result.add(countAll(rest));
+			unassign(v);
+		}
+
+		if (cache != null) {
+			if (cache.size() >= cacheSize)
+				cache.clear();
+			cache.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * assigns a variable and does forward checking
+	 *
+	 * @param v
+	 *            the variable
+	 * @param slot
+	 *            its slot
+	 * @param rest
+	 *            the unassigned variables of its component
+	 * @return false if a domain was wiped out or a constraint is broken
+	 */
+	private boolean assign(int v, int slot, int[] rest) {
+		trail.push(v);
+		assigned[v] = true;
+		for (int c : index.incident[v])
+			remaining[c]--;
+		graph.reduceTo(v, slot);
+		for (int w : rest) { // no double booking
+			if (graph.removeSlot(w, slot) && domains[w].isEmpty())
+				return false;
+		}
+		for (int c : index.incident[v]) {
+			if (remaining[c] > 1)
+				continue;
+			int[] scope = index.scope[c];
+			for (int p = 0; p < scope.length; p++) {
+				if ((!assigned[scope[p]] || remaining[c] == 0 && scope[p] == v) && !graph.revise(c, p))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * undoes the last assignment
+	 *
+	 * @param v
+	 *            the variable of the last assignment
+	 */
+	private void unassign(int v) {
+		trail.pop(domains);
+		assigned[v] = false;
+		for (int c : index.incident[v])
+			remaining[c]++;
+	}
+
+	/**
+	 * splits a set of unassigned variables into components
+	 *
+	 * @param vars
+	 *            the variables, in increasing order
+	 * @return the components, each in increasing order
+	 */
+	private int[][] components(int[] vars) {
+		for (int v : vars) {
+			parent[v] = v;
+			MeetingDomain domain = domains[v];
+			for (int s = domain.nextSlot(0); s >= 0; s = domain.nextSlot(s + 1))
+				owner[s] = -1;
+		}
+		for (int v : vars) {
+			MeetingDomain domain = domains[v];
+			for (int s = domain.nextSlot(0); s >= 0; s = domain.nextSlot(s + 1)) {
+				if (owner[s] < 0)
+					owner[s] = v;
+				else
+					union(owner[s], v);
+			}
+			for (int c : index.incident[v]) {
+				if (remaining[c] < 2)
+					continue; // already propagated into the domain
+				for (int w : index.scope[c]) {
+					if (!assigned[w])
+						union(v, w);
+				}
+			}
+		}
+		int[] size = new int[0];
+		Map<Integer, Integer> number = new HashMap<Integer, Integer>();
+		int[] componentOf = new int[vars.length];
+		for (int i = 0; i < vars.length; i++) {
+			int root = find(vars[i]);
+			Integer c = number.get(root);
+			if (c == null) {
+				c = number.size();
+				number.put(root, c);
+				size = Arrays.copyOf(size, c + 1);
+			}
+			componentOf[i] = c;
+			size[c]++;
+		}
+		int[][] result = new int[size.length][];
+		for (int c = 0; c < size.length; c++)
+			result[c] = new int[size[c]];
+		int[] filled = new int[size.length];
+		for (int i = 0; i < vars.length; i++)
+			result[componentOf[i]][filled[componentOf[i]]++] = vars[i];
+		return result;
+	}
+
+	/**
+	 *
+	 * @param v
+	 * @return the root of the tree of v, halving the path on the way
+	 */
+	private int find(int v) {
+		while (parent[v] != v) {
+			parent[v] = parent[parent[v]];
+			v = parent[v];
+		}
+		return v;
+	}
+
+	/**
+	 * joins the trees of two variables
+	 *
+	 * @param v
+	 * @param w
+	 */
+	private void union(int v, int w) {
+		int a = find(v);
+		int b = find(w);
+		if (a != b)
+			parent[Math.max(a, b)] = Math.min(a, b);
+	}
+
+	/**
+	 *
+	 * @return the number of components counted by searching
+	 */
+	public long getSearched() {
+		return searched;
+	}
+
+	/**
+	 *
+	 * @return the number of components counted from the cache
+	 */
+	public long getCached() {
+		return cached;
+	}
+
+	/**
+	 * a component and the domains of its variables, as a key of the cache
+	 */
+	private static final class Key {
+
+		/**
+		 * the variables, each followed by the words of its domain
+		 */
+		private final long[] data;
+		private final int hash;
+
+		/**
+		 *
+		 * @param vars
+		 * @param domains
+		 */
+		Key(int[] vars, MeetingDomain[] domains) {
+			int length = 0;
+			for (int v : vars)
+				length += 2 + domains[v].words.length;
+			data = new long[length];
+			int i = 0;
+			for (int v : vars) {
+				long[] words = domains[v].words;
+				data[i++] = v;
+				data[i++] = words.length;
+				System.arraycopy(words, 0, data, i, words.length);
+				i += words.length;
+			}
+			hash = Arrays.hashCode(data);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof Key && ((Key) o).hash == hash && Arrays.equals(((Key) o).data, data);
+		}
+	}
+
+}
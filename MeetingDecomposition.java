@@ -0,0 +1,543 @@
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Solves the independent parts of a meeting problem on their own. The
+ * meetings are split into components, two meetings being in the same
+ * component if a constraint links them. Each component is searched by its
+ * own MeetingSearch, and the searches run as tasks in a pool, so a search
+ * only grows with the largest component and not with the whole calendar.
+ *
+ * Components are still coupled by the no double booking constraint when
+ * their domains share slots. The components that can share slots, directly
+ * or through others, form a group, and the solutions of the components of a
+ * group are combined by a backtracking join that skips combinations using a
+ * slot twice. Groups share no slots, so any combination of their solutions
+ * is a solution of the problem. The solutions of a component are found
+ * lazily, the next one is searched in the background while the ones found
+ * so far are combined, and they are kept for later combinations
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingDecomposition {
+
+	/**
+	 * the state the searches start from
+	 */
+	private MeetingState state;
+
+	/**
+	 * the pool running the searches
+	 */
+	private ForkJoinPool pool;
+
+	/**
+	 * the variable indexes of each component, the components of a group come
+	 * after each other. group[k] is the group of component k
+	 */
+	private int[][] components;
+	private int[] group;
+
+	/**
+	 * previous[k] is the last component before k in the same group, or -1
+	 */
+	private int[] previous;
+
+	/**
+	 * the settings of each component's search
+	 */
+	private MeetingSearch.Propagation propagation = MeetingSearch.Propagation.FORWARD_CHECKING;
+	private VariableOrdering variableOrdering = VariableOrderings.DOM_WDEG;
+	private ValueOrdering valueOrdering = ValueOrderings.SLOT_ORDER;
+
+	/**
+	 * the limits of each component's search, Long.MAX_VALUE for no limit,
+	 * and the metrics they count in, or null
+	 */
+	private long nodeLimit = Long.MAX_VALUE;
+	private long memoryLimit = Long.MAX_VALUE;
+	private long deadline;
+	private boolean hasDeadline = false;
+	private MeetingMetrics metrics;
+
+	/**
+	 * the search of each component, the slot indexes of the solutions found
+	 * so far, by position in the component, the search for the next
+	 * solution, null if none is running, and true if all are found
+	 */
+	private MeetingSearch[] searches;
+	private List<List<int[]>> found;
+	private List<ForkJoinTask<int[]>> pending;
+	private boolean[] done;
+
+	/**
+	 * the combination: choice[k] is the position in found of the solution
+	 * chosen for component k, for the components up to level. matched[k] is
+	 * true if a solution of k has fitted with the choices before it since k
+	 * was reached
+	 */
+	private int[] choice;
+	private boolean[] matched;
+	private int level = 0;
+
+	/**
+	 * the slots used by the chosen solutions
+	 */
+	private MeetingDomain occupied = new MeetingDomain();
+
+	private boolean started = false;
+	private boolean exhausted = false;
+
+	/**
+	 * true if a limit or cancel() stopped the searches before all solutions
+	 * were found
+	 */
+	private boolean stopped = false;
+
+	/**
+	 * set to stop the searches when no more solutions are needed
+	 */
+	private AtomicBoolean stop = new AtomicBoolean(false);
+
+	/**
+	 *
+	 * @param state
+	 *            the state the searches start from, e.g. after arc
+	 *            consistency. It is only read, so it must not be changed while
+	 *            the search runs
+	 * @param pool
+	 *            the pool running the searches, it can be shared with other
+	 *            searches
+	 */
+	public MeetingDecomposition(MeetingState state, ForkJoinPool pool) {
+		this.state = state;
+		this.pool = pool;
+		exhausted = !state.consistent;
+		findComponents();
+	}
+
+	/**
+	 * splits the meetings into components and the components into groups
+	 */
+	private void findComponents() {
+		MeetingIndex index = state.problem.index;
+		int n = index.nodes.length;
+
+		// meetings in the same constraint are in the same component
+		int[] parent = new int[n];
+		for (int v = 0; v < n; v++)
+			parent[v] = v;
+		for (int[] scope : index.scope) {
+			for (int k = 1; k < scope.length; k++)
+				union(parent, scope[0], scope[k]);
+		}
+		List<List<Integer>> members = new ArrayList<List<Integer>>();
+		int[] component = new int[n];
+		int[] number = new int[n];
+		Arrays.fill(number, -1);
+		for (int v = 0; v < n; v++) {
+			int root = find(parent, v);
+			if (number[root] < 0) {
+				number[root] = members.size();
+				members.add(new ArrayList<Integer>());
+			}
+			component[v] = number[root];
+			members.get(number[root]).add(v);
+		}
+
+		// components that may use the same slot are in the same group
+		int m = members.size();
+		int[] groupParent = new int[m];
+		for (int k = 0; k < m; k++)
+			groupParent[k] = k;
+		int[] owner = new int[state.problem.slotCount];
+		Arrays.fill(owner, -1);
+		for (int v = 0; v < n; v++) {
+			MeetingDomain domain = state.domains[v];
+			for (int s = domain.nextSlot(0); s >= 0; s = domain.nextSlot(s + 1)) {
+				if (owner[s] < 0)
+					owner[s] = component[v];
+				else
+					union(groupParent, owner[s], component[v]);
+			}
+		}
+
+		// the components of a group after each other, the largest first
+		Integer[] sorted = new Integer[m];
+		final int[] groupOf = new int[m];
+		final int[] sizes = new int[m];
+		for (int k = 0; k < m; k++) {
+			sorted[k] = k;
+			groupOf[k] = find(groupParent, k);
+			sizes[k] = members.get(k).size();
+		}
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				if (groupOf[a] != groupOf[b])
+					return groupOf[a] < groupOf[b] ? -1 : 1;
+				return sizes[b] - sizes[a];
+			}
+		});
+		components = new int[m][];
+		group = new int[m];
+		previous = new int[m];
+		for (int k = 0; k < m; k++) {
+			List<Integer> vars = members.get(sorted[k]);
+			components[k] = new int[vars.size()];
+			for (int i = 0; i < components[k].length; i++)
+				components[k][i] = vars.get(i);
+			group[k] = groupOf[sorted[k]];
+			previous[k] = k > 0 && group[k - 1] == group[k] ? k - 1 : -1;
+		}
+	}
+
+	/**
+	 * joins the sets of two elements in a union find forest
+	 */
+	private static void union(int[] parent, int a, int b) {
+		a = find(parent, a);
+		b = find(parent, b);
+		if (a != b)
+			parent[Math.max(a, b)] = Math.min(a, b);
+	}
+
+	/**
+	 *
+	 * @return the root of the set of an element, halving the path to it
+	 */
+	private static int find(int[] parent, int a) {
+		while (parent[a] != a) {
+			parent[a] = parent[parent[a]];
+			a = parent[a];
+		}
+		return a;
+	}
+
+	/**
+	 * decides how much propagation the searches do after each assignment.
+	 * MAC is done as forward checking, as a search of one component can not
+	 * maintain arc consistency without reducing the domains of the others
+	 *
+	 * @param propagation
+	 */
+	public void setPropagation(MeetingSearch.Propagation propagation) {
+		this.propagation = propagation;
+	}
+
+	/**
+	 * decides how the searches pick the variable to assign next
+	 *
+	 * @param variableOrdering
+	 */
+	public void setVariableOrdering(VariableOrdering variableOrdering) {
+		this.variableOrdering = variableOrdering;
+	}
+
+	/**
+	 * decides the order the searches try the values of a variable in
+	 *
+	 * @param valueOrdering
+	 */
+	public void setValueOrdering(ValueOrdering valueOrdering) {
+		this.valueOrdering = valueOrdering;
+	}
+
+	/**
+	 * makes each component's search stop when it has made a number of
+	 * consistent assignments
+	 *
+	 * @param nodeLimit
+	 */
+	public void setNodeLimit(long nodeLimit) {
+		this.nodeLimit = nodeLimit;
+	}
+
+	/**
+	 * makes the searches stop when the heap in use gets larger than a limit
+	 *
+	 * @param bytes
+	 */
+	public void setMemoryLimit(long bytes) {
+		this.memoryLimit = bytes;
+	}
+
+	/**
+	 * makes the searches stop when a time has passed
+	 *
+	 * @param deadline
+	 *            the System.nanoTime() to stop at
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+		hasDeadline = true;
+	}
+
+	/**
+	 * makes the searches count their statistics in the metrics
+	 *
+	 * @param metrics
+	 */
+	public void setMetrics(MeetingMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 *
+	 * @return EXHAUSTED if all solutions are found, UNKNOWN if a limit of a
+	 *         component's search or cancel() stopped the search before that,
+	 *         else SEARCHING
+	 */
+	public MeetingSearch.Status getStatus() {
+		return stopped ? MeetingSearch.Status.UNKNOWN
+				: exhausted ? MeetingSearch.Status.EXHAUSTED : MeetingSearch.Status.SEARCHING;
+	}
+
+	/**
+	 *
+	 * @return the number of components
+	 */
+	public int getComponentCount() {
+		return components.length;
+	}
+
+	/**
+	 *
+	 * @return the number of groups of components that may share slots
+	 */
+	public int getGroupCount() {
+		int count = 0;
+		for (int k = 0; k < components.length; k++) {
+			if (previous[k] < 0)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 *
+	 * @return the number of meetings in the largest component
+	 */
+	public int getLargestComponent() {
+		int largest = 0;
+		for (int[] component : components)
+			largest = Math.max(largest, component.length);
+		return largest;
+	}
+
+	/**
+	 * starts the search of each component, they look for their first
+	 * solutions at the same time
+	 */
+	private void start() {
+		int m = components.length;
+		searches = new MeetingSearch[m];
+		found = new ArrayList<List<int[]>>();
+		pending = new ArrayList<ForkJoinTask<int[]>>(m);
+		done = new boolean[m];
+		choice = new int[m];
+		matched = new boolean[m];
+		for (int k = 0; k < m; k++) {
+			MeetingSearch search = new MeetingSearch(state);
+			search.setVariables(components[k]);
+			search.setPropagation(propagation == MeetingSearch.Propagation.MAC
+					? MeetingSearch.Propagation.FORWARD_CHECKING : propagation);
+			search.setVariableOrdering(variableOrdering);
+			search.setValueOrdering(valueOrdering);
+			search.setMetrics(metrics);
+			search.setNodeLimit(nodeLimit);
+			search.setMemoryLimit(memoryLimit);
+			if (hasDeadline)
+				search.setDeadline(deadline);
+			search.setCancel(stop);
+			searches[k] = search;
+			found.add(new ArrayList<int[]>());
+			pending.add(null);
+			fetch(k);
+		}
+		choice[0] = -1;
+	}
+
+	/**
+	 * starts the search for the next solution of a component
+	 *
+	 * @param k
+	 *            the component
+	 */
+	private void fetch(final int k) {
+		final MeetingSearch search = searches[k];
+		final int[] vars = components[k];
+		pending.set(k, pool.submit(new Callable<int[]>() {
+			public int[] call() {
+				if (!search.nextLeaf())
+					return null;
+				int[] slots = new int[vars.length];
+				for (int i = 0; i < vars.length; i++)
+					slots[i] = search.getValue(vars[i]).index;
+				return slots;
+			}
+		}));
+	}
+
+	/**
+	 *
+	 * @param k
+	 *            a component
+	 * @param i
+	 *            a position in its solutions
+	 * @return the slots of solution i of the component, or null if it has
+	 *         fewer solutions or a limit stopped its search. Waits for the
+	 *         search when needed
+	 */
+	private int[] solution(int k, int i) {
+		List<int[]> solutions = found.get(k);
+		while (i >= solutions.size()) {
+			if (done[k])
+				return null;
+			int[] slots = pending.get(k).join();
+			if (slots == null) {
+				done[k] = true;
+				pending.set(k, null);
+				if (searches[k].isStopped()) { // the combinations are not complete
+					stopped = true;
+					return null;
+				}
+			} else {
+				solutions.add(slots);
+				fetch(k); // the next one while this one is used
+			}
+		}
+		return solutions.get(i);
+	}
+
+	/**
+	 * finds the next solution of the problem
+	 *
+	 * @return the next solution, or null if there are no more solutions
+	 */
+	public MeetingAssignment next() {
+		if (exhausted)
+			return null;
+		int m = components.length;
+		if (!started) {
+			started = true;
+			if (m == 0) { // nothing to assign
+				exhausted = true;
+				return assignment();
+			}
+			start();
+		} else {
+			release(m - 1); // go on from the last solution
+		}
+		while (true) {
+			int[] slots = solution(level, ++choice[level]);
+			if (stopped) { // by a limit
+				cancel();
+				return null;
+			}
+			if (slots == null) { // no more solutions of this component
+				int back = matched[level] ? level - 1 : previous[level];
+				if (back < 0) { // the earlier choices are not to blame
+					exhausted = true;
+					cancel();
+					return null;
+				}
+				for (level--; level > back; level--)
+					release(level); // jumped over, not to blame
+				release(level);
+				continue;
+			}
+			if (!fits(level, slots))
+				continue; // a slot used by another component
+			matched[level] = true;
+			for (int s : slots)
+				occupied.set(s);
+			if (level == m - 1)
+				return assignment();
+			level++;
+			choice[level] = -1;
+			matched[level] = false;
+		}
+	}
+
+	/**
+	 * frees the slots of the solution chosen for a component
+	 *
+	 * @param k
+	 *            the component
+	 */
+	private void release(int k) {
+		for (int s : found.get(k).get(choice[k]))
+			occupied.unset(s);
+	}
+
+	/**
+	 *
+	 * @param k
+	 *            a component
+	 * @param slots
+	 *            the slots of one of its solutions
+	 * @return true if none of the slots are used by the solutions chosen for
+	 *         the components before k in its group. Other groups can not use
+	 *         them
+	 */
+	private boolean fits(int k, int[] slots) {
+		if (previous[k] < 0)
+			return true;
+		for (int s : slots) {
+			if (occupied.has(s))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * stops the searches that are still running, e.g. when no more solutions
+	 * are needed. next() then finds no more solutions, and the status is
+	 * UNKNOWN unless all solutions were found
+	 */
+	public void cancel() {
+		if (!exhausted)
+			stopped = true;
+		exhausted = true;
+		if (pending == null)
+			return;
+		stop.set(true);
+		for (int k = 0; k < components.length; k++) {
+			if (pending.get(k) != null) {
+				pending.get(k).join(); // a search must not run after it is left
+				pending.set(k, null);
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return the combination of the chosen solutions
+	 */
+	private MeetingAssignment assignment() {
+		MeetingProblem problem = state.problem;
+		MeetingNode[] nodes = problem.index.nodes;
+		List<MeetingNode> variables = new ArrayList<MeetingNode>(nodes.length);
+		List<MeetingSlot> assignments = new ArrayList<MeetingSlot>(nodes.length);
+		MeetingSlot[] values = new MeetingSlot[nodes.length];
+		for (int k = 0; k < components.length; k++) {
+			int[] slots = found.get(k).get(choice[k]);
+			for (int i = 0; i < slots.length; i++)
+				values[components[k][i]] = problem.calendar.getSlot(slots[i]);
+		}
+		for (int v = 0; v < nodes.length; v++) {
+			variables.add(nodes[v]);
+			assignments.add(values[v]);
+		}
+		return new MeetingAssignment(problem, variables, assignments);
+	}
+
+}
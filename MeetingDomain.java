@@ -0,0 +1,294 @@
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The domain of a meeting node represented as a bitset over the slot indexes.
+ * Bit i is set if the slot with index i is in the domain. The domain is also a
+ * Set of meeting slots, so code that iterates or tests a domain as a set works
+ * as before, but the arc consistency algorithm uses the word-wise operations
+ * directly
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingDomain extends AbstractSet<MeetingSlot> {
+
+	/**
+	 * the bits of the domain, bit i of words[i / 64] is slot i
+	 */
+	long[] words;
+
+	/**
+	 * the calendar of the slots, set when the first slot is added, so it is
+	 * null for a domain that has only been given slot indexes
+	 */
+	MeetingCalendar calendar;
+
+	/**
+	 * makes an empty domain, the words grow as slots are added
+	 */
+	public MeetingDomain() {
+		words = new long[0];
+	}
+
+	/**
+	 * Copy constructor
+	 *
+	 * @param domain
+	 */
+	public MeetingDomain(MeetingDomain domain) {
+		words = domain.words.clone();
+		calendar = domain.calendar;
+	}
+
+	/**
+	 * a copy with room for the slots of a problem, so the domains of a
+	 * search all have the same number of words
+	 *
+	 * @param domain
+	 * @param slots
+	 *            the number of slots of the problem
+	 */
+	public MeetingDomain(MeetingDomain domain, int slots) {
+		words = Arrays.copyOf(domain.words, Math.max(domain.words.length, wordsFor(slots)));
+		calendar = domain.calendar;
+	}
+
+	/**
+	 *
+	 * @param bits
+	 *            a number of bits
+	 * @return the number of words needed to hold that many bits
+	 */
+	static int wordsFor(int bits) {
+		return (bits + 63) >>> 6;
+	}
+
+	/**
+	 * makes sure the word array can hold the slot with a given index
+	 *
+	 * @param index
+	 */
+	private void ensureCapacity(int index) {
+		int needed = (index >>> 6) + 1;
+		if (needed > words.length)
+			words = Arrays.copyOf(words, needed);
+	}
+
+	/**
+	 *
+	 * @param index
+	 *            a slot index
+	 * @return true if the slot with the index is in the domain
+	 */
+	public boolean has(int index) {
+		int w = index >>> 6;
+		return w < words.length && (words[w] & (1L << index)) != 0;
+	}
+
+	/**
+	 * puts the slot with the given index into the domain
+	 *
+	 * @param index
+	 * @return true if the domain changed
+	 */
+	public boolean set(int index) {
+		ensureCapacity(index);
+		long before = words[index >>> 6];
+		words[index >>> 6] = before | (1L << index);
+		return before != words[index >>> 6];
+	}
+
+	/**
+	 * removes the slot with the given index from the domain
+	 *
+	 * @param index
+	 * @return true if the domain changed
+	 */
+	public boolean unset(int index) {
+		int w = index >>> 6;
+		if (w >= words.length)
+			return false;
+		long before = words[w];
+		words[w] = before & ~(1L << index);
+		return before != words[w];
+	}
+
+	/**
+	 *
+	 * @param from
+	 *            a slot index
+	 * @return the smallest slot index in the domain that is at least from, or
+	 *         -1 if there is none
+	 */
+	public int nextSlot(int from) {
+		int w = from >>> 6;
+		if (w >= words.length)
+			return -1;
+		long word = words[w] & (-1L << from);
+		while (true) {
+			if (word != 0)
+				return (w << 6) + Long.numberOfTrailingZeros(word);
+			if (++w == words.length)
+				return -1;
+			word = words[w];
+		}
+	}
+
+	/**
+	 *
+	 * @return true if exactly one slot is left in the domain
+	 */
+	public boolean isSingleton() {
+		boolean found = false;
+		for (long word : words) {
+			if (word != 0) {
+				if (found || (word & (word - 1)) != 0) // a second bit
+					return false;
+				found = true;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 *
+	 * @return the slot with the smallest index in the domain, null if the domain
+	 *         is empty
+	 */
+	public MeetingSlot first() {
+		int i = nextSlot(0);
+		return i < 0 ? null : calendar.getSlot(i);
+	}
+
+	/**
+	 * sets this domain to be equal to another domain of the same problem. The
+	 * words never shrink, so a trail can restore them in place
+	 *
+	 * @param domain
+	 */
+	public void copyFrom(MeetingDomain domain) {
+		if (words.length < domain.words.length)
+			words = new long[domain.words.length];
+		System.arraycopy(domain.words, 0, words, 0, domain.words.length);
+		Arrays.fill(words, domain.words.length, words.length, 0L);
+		if (domain.calendar != null)
+			calendar = domain.calendar;
+	}
+
+	/**
+	 *
+	 * @param domain
+	 * @return true if this and the other domain has the same slots
+	 */
+	public boolean sameAs(MeetingDomain domain) {
+		long[] a = words;
+		long[] b = domain.words;
+		int common = Math.min(a.length, b.length);
+		for (int i = 0; i < common; i++) {
+			if (a[i] != b[i])
+				return false;
+		}
+		for (int i = common; i < a.length; i++) { // the rest must be empty
+			if (a[i] != 0)
+				return false;
+		}
+		for (int i = common; i < b.length; i++) {
+			if (b[i] != 0)
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o instanceof MeetingDomain)
+			return sameAs((MeetingDomain) o);
+		return super.equals(o);
+	}
+
+	@Override
+	public int hashCode() {
+		return super.hashCode(); // must agree with equals on other sets
+	}
+
+	@Override
+	public boolean isEmpty() {
+		for (long word : words) {
+			if (word != 0)
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int size() {
+		int result = 0;
+		for (long word : words)
+			result += Long.bitCount(word);
+		return result;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof MeetingSlot && ((MeetingSlot) o).calendar == calendar && has(((MeetingSlot) o).index);
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the slot is from another calendar than the slots
+	 *             already in the domain
+	 */
+	@Override
+	public boolean add(MeetingSlot slot) {
+		if (calendar == null)
+			calendar = slot.calendar;
+		else if (slot.calendar != calendar)
+			throw new IllegalArgumentException("The slot " + slot + " is from another calendar");
+		return set(slot.index);
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		return o instanceof MeetingSlot && ((MeetingSlot) o).calendar == calendar && unset(((MeetingSlot) o).index);
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(words, 0L);
+	}
+
+	/**
+	 * an iterator over the slots in the domain in index order
+	 */
+	@Override
+	public Iterator<MeetingSlot> iterator() {
+		return new Iterator<MeetingSlot>() {
+			int next = nextSlot(0);
+			int last = -1;
+
+			public boolean hasNext() {
+				return next >= 0;
+			}
+
+			public MeetingSlot next() {
+				if (next < 0)
+					throw new NoSuchElementException();
+				last = next;
+				next = nextSlot(next + 1);
+				return calendar.getSlot(last);
+			}
+
+			public void remove() {
+				if (last < 0)
+					throw new IllegalStateException();
+				unset(last);
+				last = -1;
+			}
+		};
+	}
+
+}
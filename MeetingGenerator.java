@@ -0,0 +1,129 @@
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Makes random meeting problems of a given size, e.g. for benchmarks. Each
+ * problem is made around a hidden schedule where every meeting has its own
+ * slot, and only constraints that the hidden schedule meets are added, so
+ * every problem has at least one solution. Most constraints are rules, but
+ * every fourth binary constraint is written as an anonymous class so the
+ * support tables of other constraints are also used. The same parameters
+ * and seed give the same problem
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingGenerator {
+
+	/**
+	 * makes a random problem
+	 *
+	 * @param meetings
+	 *            the number of meetings
+	 * @param rooms
+	 *            the number of rooms
+	 * @param times
+	 *            the number of time periods
+	 * @param density
+	 *            the share of the pairs of meetings that have a binary
+	 *            constraint, from 0 to 1
+	 * @param seed
+	 *            the seed of the random choices
+	 * @return the problem
+	 * @throws IllegalArgumentException
+	 *             if there are more meetings than slots
+	 */
+	public static MeetingProblem generate(int meetings, int rooms, int times, double density, long seed) {
+		if (meetings > rooms * times)
+			throw new IllegalArgumentException(meetings + " meetings do not fit in " + rooms * times + " slots");
+		Random random = new Random(seed);
+		MeetingCalendar calendar = new MeetingCalendar();
+		List<MeetingSlot> slots = new ArrayList<MeetingSlot>();
+		for (int t = 0; t < times; t++) {
+			for (int r = 0; r < rooms; r++)
+				slots.add(calendar.intern(t, "t" + t, r, "r" + r));
+		}
+
+		// the hidden schedule, the first slots of a random permutation
+		MeetingSlot[] hidden = new MeetingSlot[meetings];
+		for (int i = 0; i < slots.size(); i++) {
+			int k = random.nextInt(i + 1);
+			MeetingSlot swap = slots.get(k);
+			slots.set(k, slots.get(i));
+			slots.set(i, swap);
+		}
+		List<MeetingNode> nodes = new ArrayList<MeetingNode>();
+		MeetingDomain all = new MeetingDomain();
+		for (MeetingSlot slot : slots)
+			all.add(slot);
+		for (int i = 0; i < meetings; i++) {
+			hidden[i] = slots.get(i);
+			nodes.add(new MeetingNode("m" + i, all));
+		}
+
+		List<MeetingConstraint> constraints = new ArrayList<MeetingConstraint>();
+		long pairs = (long) meetings * (meetings - 1) / 2;
+		long wanted = Math.round(density * pairs);
+		Set<Long> used = new HashSet<Long>();
+		int tries = 0;
+		while (constraints.size() < wanted && tries++ < 20 * wanted) {
+			int a = random.nextInt(meetings);
+			int b = random.nextInt(meetings);
+			if (a == b || !used.add((long) Math.min(a, b) * meetings + Math.max(a, b)))
+				continue;
+			constraints.add(binary("c" + constraints.size(), nodes.get(a), nodes.get(b), hidden[a], hidden[b],
+					constraints.size() % 4 == 3));
+		}
+
+		// a few unary rules
+		for (int i = 0; i < meetings / 10; i++) {
+			int m = random.nextInt(meetings);
+			int period = hidden[m].getPeriod();
+			if (random.nextBoolean())
+				constraints.add(MeetingRule.fixedRoom("u" + i, nodes.get(m), hidden[m].getRoomNumber()));
+			else
+				constraints.add(MeetingRule.timeWindow("u" + i, nodes.get(m), Math.max(0, period - times / 4),
+						period + times / 4));
+		}
+		return new MeetingProblem(nodes, constraints);
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param first
+	 * @param second
+	 * @param a
+	 *            the hidden slot of first
+	 * @param b
+	 *            the hidden slot of second
+	 * @param anonymous
+	 *            true for a constraint that is not a rule
+	 * @return a constraint between the meetings that the hidden slots meet
+	 */
+	private static MeetingConstraint binary(String name, final MeetingNode first, final MeetingNode second,
+			MeetingSlot a, MeetingSlot b, boolean anonymous) {
+		int p = a.getPeriod();
+		int q = b.getPeriod();
+		if (anonymous) {
+			final int distance = Math.abs(p - q);
+			// the meetings are at least as far apart in time as in the
+			// hidden schedule
+			return new MeetingConstraint(name, first, second) {
+				public boolean constraint(MeetingSlot[] values) {
+					return Math.abs(values[0].getPeriod() - values[1].getPeriod()) >= distance;
+				}
+			};
+		}
+		if (p < q)
+			return MeetingRule.before(name, first, second);
+		if (p > q)
+			return MeetingRule.after(name, first, second);
+		return MeetingRule.sameTime(name, first, second);
+	}
+
+}
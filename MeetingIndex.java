@@ -0,0 +1,210 @@
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of which constraints involve which variables in a meeting problem.
+ * It is made once when the problem is set up and is not changed afterwards.
+ * Variables and constraints are numbered from 0 by the index of each problem,
+ * the nodes and constraints themselves are not changed, so propagation can
+ * find the constraints of a variable without looking at all constraints, and
+ * a node or constraint can be part of several problems with different numbers
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingIndex {
+
+	/**
+	 * the variables, indexOf(nodes[i]) == i
+	 */
+	final MeetingNode[] nodes;
+
+	/**
+	 * the constraints, indexOf(constraints[c]) == c
+	 */
+	final MeetingConstraint[] constraints;
+
+	/**
+	 * the numbers of the nodes and constraints in this index
+	 */
+	private final Map<MeetingNode, Integer> nodeNumbers;
+	private final Map<MeetingConstraint, Integer> constraintNumbers;
+
+	/**
+	 * the largest number of nodes in a constraint
+	 */
+	final int maxArity;
+
+	/**
+	 * scope[c] are the indexes of the nodes in constraint c
+	 */
+	final int[][] scope;
+
+	/**
+	 * incident[v] are the indexes of the constraints involving node v
+	 */
+	final int[][] incident;
+
+	/**
+	 * the arc for node scope[c][k] in constraint c has id firstArc[c] + k
+	 */
+	final int[] firstArc;
+
+	/**
+	 * the total number of arcs, i.e. the sum of the constraint arities
+	 */
+	final int arcCount;
+
+	/**
+	 * scopeNodes.get(c) are the nodes of constraint c in scope order
+	 */
+	private final List<List<MeetingNode>> scopeNodes;
+
+	/**
+	 * numbers the variables and constraints and builds the index
+	 *
+	 * @param variables
+	 *            the variables of the problem
+	 * @param constraints
+	 *            the constraints of the problem
+	 * @throws IllegalArgumentException
+	 *             if a constraint has a node that is not a variable
+	 */
+	public MeetingIndex(Collection<MeetingNode> variables, Collection<MeetingConstraint> constraints) {
+		nodes = variables.toArray(new MeetingNode[variables.size()]);
+		this.constraints = constraints.toArray(new MeetingConstraint[constraints.size()]);
+		nodeNumbers = new IdentityHashMap<MeetingNode, Integer>();
+		for (int i = 0; i < nodes.length; i++)
+			nodeNumbers.put(nodes[i], i);
+		constraintNumbers = new IdentityHashMap<MeetingConstraint, Integer>();
+		for (int c = 0; c < this.constraints.length; c++) {
+			MeetingConstraint mc = this.constraints[c];
+			for (MeetingNode n : mc.nodes) {
+				if (!nodeNumbers.containsKey(n))
+					throw new IllegalArgumentException("The constraint " + mc + " has a meeting that is not in the problem");
+			}
+			constraintNumbers.put(mc, c);
+		}
+
+		// the scopes, and how many constraints each node is in
+		scope = new int[this.constraints.length][];
+		firstArc = new int[this.constraints.length];
+		int[] degree = new int[nodes.length];
+		List<List<MeetingNode>> scopes = new ArrayList<List<MeetingNode>>();
+		int arcs = 0;
+		int arity = 0;
+		for (int c = 0; c < this.constraints.length; c++) {
+			MeetingNode[] inScope = this.constraints[c].nodes.toArray(new MeetingNode[0]);
+			scope[c] = new int[inScope.length];
+			for (int k = 0; k < inScope.length; k++) {
+				scope[c][k] = indexOf(inScope[k]);
+				degree[scope[c][k]]++;
+			}
+			scopes.add(Collections.unmodifiableList(Arrays.asList(inScope)));
+			firstArc[c] = arcs;
+			arcs += inScope.length;
+			arity = Math.max(arity, inScope.length);
+		}
+		arcCount = arcs;
+		maxArity = arity;
+		scopeNodes = Collections.unmodifiableList(scopes);
+
+		// the constraints of each node
+		incident = new int[nodes.length][];
+		for (int v = 0; v < nodes.length; v++)
+			incident[v] = new int[degree[v]];
+		int[] filled = new int[nodes.length];
+		for (int c = 0; c < scope.length; c++) {
+			for (int v : scope[c])
+				incident[v][filled[v]++] = c;
+		}
+	}
+
+	/**
+	 *
+	 * @param n
+	 *            a node
+	 * @return the index of the node, -1 if it is not a variable of the
+	 *         problem
+	 */
+	public int indexOf(MeetingNode n) {
+		Integer i = nodeNumbers.get(n);
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 *
+	 * @param mc
+	 *            a constraint
+	 * @return the index of the constraint, -1 if it is not a constraint of
+	 *         the problem
+	 */
+	public int indexOf(MeetingConstraint mc) {
+		Integer c = constraintNumbers.get(mc);
+		return c == null ? -1 : c;
+	}
+
+	/**
+	 * tests a constraint on an assignment by node index
+	 *
+	 * @param c
+	 *            a constraint index
+	 * @param values
+	 *            values[v] is the slot of the node with index v
+	 * @param scratch
+	 *            an array of at least maxArity slots, the values of the
+	 *            constraint's nodes are gathered here in scope order
+	 * @return true if the constraint is satisfied
+	 */
+	public boolean test(int c, MeetingSlot[] values, MeetingSlot[] scratch) {
+		int[] s = scope[c];
+		for (int k = 0; k < s.length; k++)
+			scratch[k] = values[s[k]];
+		return constraints[c].constraint(scratch);
+	}
+
+	/**
+	 *
+	 * @param c
+	 *            a constraint index
+	 * @return the nodes of the constraint in scope order
+	 */
+	public List<MeetingNode> nodesOf(int c) {
+		return scopeNodes.get(c);
+	}
+
+	/**
+	 *
+	 * @param c
+	 *            a constraint index
+	 * @param v
+	 *            a node index
+	 * @return the position of the node in the scope of the constraint, -1 if
+	 *         it is not there
+	 */
+	public int positionOf(int c, int v) {
+		int[] s = scope[c];
+		for (int k = 0; k < s.length; k++) {
+			if (s[k] == v)
+				return k;
+		}
+		return -1;
+	}
+
+	/**
+	 *
+	 * @param v
+	 *            a node index
+	 * @return the number of constraints the node is in
+	 */
+	public int degree(int v) {
+		return incident[v].length;
+	}
+
+}
@@ -0,0 +1,277 @@
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A compiled meeting rule. The rule is turned into tables over the slot
+ * indexes when a problem is made, so testing it is a bit lookup and
+ * revising a domain is a few word operations. The tables only depend on the
+ * kind and parameters of a rule, so all rules of a problem with the same kind
+ * and parameters share one kernel. As all binary rules are about times, the
+ * support rows are shared by all slots with the same time period
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingKernel {
+
+	/**
+	 * the kind and parameters of the compiled rule
+	 */
+	private final MeetingRule.Kind kind;
+	private final int lo;
+	private final int hi;
+
+	/**
+	 * the calendar of the problem, and the number of its slots when the
+	 * kernel was compiled. Slots interned in the calendar later are not in
+	 * the problem, but are tested without the tables
+	 */
+	private final MeetingCalendar calendar;
+	private final int slots;
+
+	/**
+	 * the slots allowed by a unary rule
+	 */
+	private final long[] allowed;
+
+	/**
+	 * supports[0][a] are the slots of the second meeting allowed when the
+	 * first has slot a, supports[1][b] are the slots of the first meeting
+	 * allowed when the second has slot b
+	 */
+	private final long[][][] supports;
+
+	/**
+	 * compiles a rule
+	 *
+	 * @param kind
+	 *            the kind of the rule
+	 * @param lo
+	 *            the first parameter of the rule
+	 * @param hi
+	 *            the second parameter of the rule
+	 * @param calendar
+	 *            the calendar of the problem
+	 * @param slots
+	 *            the number of slots of the problem
+	 */
+	MeetingKernel(MeetingRule.Kind kind, int lo, int hi, MeetingCalendar calendar, int slots) {
+		this.kind = kind;
+		this.lo = lo;
+		this.hi = hi;
+		this.calendar = calendar;
+		this.slots = slots;
+		int words = MeetingDomain.wordsFor(slots);
+		if (kind.arity == 1) {
+			allowed = new long[words];
+			for (int a = 0; a < slots; a++) {
+				if (holds(a))
+					allowed[a >>> 6] |= 1L << a;
+			}
+			supports = null;
+		} else {
+			allowed = null;
+			supports = new long[2][slots][];
+			// the rows by time period
+			Map<Integer, long[]> forward = new HashMap<Integer, long[]>();
+			Map<Integer, long[]> backward = new HashMap<Integer, long[]>();
+			for (int a = 0; a < slots; a++) {
+				int period = calendar.getSlot(a).getPeriod();
+				long[] row = forward.get(period);
+				if (row == null) { // the first slot at this time
+					row = new long[words];
+					long[] reverse = new long[words];
+					for (int b = 0; b < slots; b++) {
+						if (holds(a, b))
+							row[b >>> 6] |= 1L << b;
+						if (holds(b, a))
+							reverse[b >>> 6] |= 1L << b;
+					}
+					forward.put(period, row);
+					backward.put(period, reverse);
+				}
+				supports[0][a] = row;
+				supports[1][a] = backward.get(period);
+			}
+		}
+	}
+
+	/**
+	 * compiles the rules of a problem, rules with the same kind and parameters
+	 * get the same kernel. The rules are not changed
+	 *
+	 * @param index
+	 *            the index of the problem
+	 * @param calendar
+	 *            the calendar of the problem
+	 * @param slots
+	 *            the number of slots of the problem
+	 * @return the kernel of each rule by constraint index, null for the
+	 *         other constraints
+	 */
+	static MeetingKernel[] compile(MeetingIndex index, MeetingCalendar calendar, int slots) {
+		MeetingKernel[] result = new MeetingKernel[index.constraints.length];
+		Map<String, MeetingKernel> kernels = new HashMap<String, MeetingKernel>();
+		for (int c = 0; c < result.length; c++) {
+			if (!(index.constraints[c] instanceof MeetingRule))
+				continue;
+			MeetingRule rule = (MeetingRule) index.constraints[c];
+			String key = rule.kind + " " + rule.lo + " " + rule.hi;
+			MeetingKernel kernel = kernels.get(key);
+			if (kernel == null) {
+				kernel = new MeetingKernel(rule.kind, rule.lo, rule.hi, calendar, slots);
+				kernels.put(key, kernel);
+			}
+			result[c] = kernel;
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @param a
+	 *            a slot index
+	 * @return true if a unary rule allows the slot
+	 */
+	boolean test(int a) {
+		if (a >= slots)
+			return holds(a);
+		return (allowed[a >>> 6] & (1L << a)) != 0;
+	}
+
+	/**
+	 *
+	 * @param a
+	 *            the slot index of the first meeting
+	 * @param b
+	 *            the slot index of the second meeting
+	 * @return true if a binary rule allows the slots
+	 */
+	boolean test(int a, int b) {
+		if (a >= slots || b >= slots)
+			return holds(a, b);
+		return (supports[0][a][b >>> 6] & (1L << b)) != 0;
+	}
+
+	/**
+	 * the new domain of a meeting in a unary rule
+	 *
+	 * @param domain
+	 *            the domain of the meeting
+	 * @param result
+	 *            is set to the slots of the domain allowed by the rule
+	 */
+	void revise(MeetingDomain domain, MeetingDomain result) {
+		result.copyFrom(domain);
+		long[] r = result.words;
+		int common = Math.min(r.length, allowed.length);
+		for (int w = 0; w < common; w++) {
+			// slots made after the kernel are kept here and tested below
+			long later = w == slots >>> 6 ? -1L << slots : 0;
+			r[w] &= allowed[w] | later;
+		}
+		for (int a = result.nextSlot(slots); a >= 0; a = result.nextSlot(a + 1)) {
+			if (!holds(a))
+				result.unset(a);
+		}
+	}
+
+	/**
+	 * the new domain of one meeting in a binary rule, the slots with some
+	 * support in the domain of the other meeting that is not the same slot
+	 * (no double booking)
+	 *
+	 * @param position
+	 *            0 if the domain is of the first meeting, 1 if it is of the
+	 *            second
+	 * @param domain
+	 *            the domain of the meeting
+	 * @param other
+	 *            the domain of the other meeting
+	 * @param result
+	 *            is set to the slots of domain that have support
+	 */
+	void revise(int position, MeetingDomain domain, MeetingDomain other, MeetingDomain result) {
+		result.clear();
+		long[] o = other.words;
+		for (int a = domain.nextSlot(0); a >= 0; a = domain.nextSlot(a + 1)) {
+			boolean support;
+			if (a < slots)
+				support = supported(supports[position][a], o, a) || supportedLater(position, a, other, slots);
+			else
+				support = supportedLater(position, a, other, 0); // made after
+																	// the kernel
+			if (support)
+				result.set(a);
+		}
+	}
+
+	/**
+	 * looks for support without the tables
+	 *
+	 * @param position
+	 *            0 if a is a slot of the first meeting, 1 if of the second
+	 * @param a
+	 *            a slot index
+	 * @param other
+	 *            the domain of the other meeting
+	 * @param from
+	 *            the first slot index of other to test
+	 * @return true if some slot of other from from is not a and supports a
+	 */
+	private boolean supportedLater(int position, int a, MeetingDomain other, int from) {
+		for (int b = other.nextSlot(from); b >= 0; b = other.nextSlot(b + 1)) {
+			if (b != a && (position == 0 ? holds(a, b) : holds(b, a)))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 *
+	 * @param row
+	 *            the slots supporting a
+	 * @param other
+	 *            the words of the other domain
+	 * @param a
+	 *            a slot that does not support itself
+	 * @return true if some slot other than a is both in row and other
+	 */
+	private static boolean supported(long[] row, long[] other, int a) {
+		int common = Math.min(row.length, other.length);
+		for (int w = 0; w < common; w++) {
+			long both = row[w] & other[w];
+			if (w == a >>> 6)
+				both &= ~(1L << a);
+			if (both != 0)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * the meaning of a unary rule
+	 *
+	 * @param a
+	 *            a slot index
+	 * @return true if the rule allows the slot
+	 */
+	private boolean holds(int a) {
+		return MeetingRule.holds(kind, lo, hi, calendar.getSlot(a));
+	}
+
+	/**
+	 * the meaning of a binary rule
+	 *
+	 * @param a
+	 *            the slot index of the first meeting
+	 * @param b
+	 *            the slot index of the second meeting
+	 * @return true if the rule allows the slots
+	 */
+	private boolean holds(int a, int b) {
+		return MeetingRule.holds(kind, calendar.getSlot(a), calendar.getSlot(b));
+	}
+
+}
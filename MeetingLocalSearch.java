@@ -0,0 +1,619 @@
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A local search for a solution of the meeting problem, for problems too
+ * large for the backtracking search. The search starts from a greedy
+ * assignment of all meetings and then repairs it with min-conflicts moves:
+ * a meeting in a broken constraint or a double booked slot is moved to the
+ * slot of its domain that breaks the fewest constraints. A meeting may not
+ * move back to the slot it just left for a number of steps (tabu tenure),
+ * unless that gives a better assignment than any found so far, and if the
+ * search makes no progress for a while it restarts from a new greedy
+ * assignment.
+ *
+ * Which constraints are broken and how many meetings each slot has are kept
+ * up to date as meetings move, so a move costs the number of constraints of
+ * the meeting, and finding the best slot for it costs that times the size of
+ * its domain, or of a random sample of it for a large domain. The search is
+ * not complete: if it finds no solution the problem may still have one
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingLocalSearch {
+
+	/**
+	 * the problem being solved
+	 */
+	private final MeetingProblem problem;
+
+	/**
+	 * which constraints involve which variables
+	 */
+	private final MeetingIndex index;
+
+	/**
+	 * the domains the meetings may have slots from, by node index
+	 */
+	private final MeetingDomain[] domains;
+
+	/**
+	 * the number of slots in the domain of each meeting
+	 */
+	private final int[] sizes;
+
+	/**
+	 * the slots tried for the meeting being assigned or moved
+	 */
+	private final int[] candidates;
+
+	/**
+	 * the current complete assignment, by node index
+	 */
+	private final MeetingSlot[] values;
+
+	/**
+	 * the values of the nodes of a constraint being tested
+	 */
+	private final MeetingSlot[] scratch;
+
+	/**
+	 * the meetings in each slot, a linked list from head[s] through next
+	 */
+	private final int[] head;
+	private final int[] next;
+	private final int[] previous;
+
+	/**
+	 * owners[s] is the number of meetings in slot s
+	 */
+	private final int[] owners;
+
+	/**
+	 * the broken constraints, and the position of each in the list or -1
+	 */
+	private final int[] broken;
+	private final int[] brokenPosition;
+	private int brokenCount = 0;
+
+	/**
+	 * the double booked slots, and the position of each in the list or -1
+	 */
+	private final int[] clashes;
+	private final int[] clashPosition;
+	private int clashCount = 0;
+
+	/**
+	 * the number of broken constraints plus, for each slot, the number of
+	 * meetings in it after the first
+	 */
+	private int violations = 0;
+
+	/**
+	 * tabuSlot[v] is the slot v last left, it may not move back before step
+	 * tabuUntil[v]
+	 */
+	private final int[] tabuSlot;
+	private final long[] tabuUntil;
+
+	/**
+	 * the best assignment found, and its violations
+	 */
+	private MeetingSlot[] best;
+	private int bestViolations = Integer.MAX_VALUE;
+
+	/**
+	 * the settings of the search
+	 */
+	private Random random = new Random(0);
+	private int tabuTenure = 10;
+	private int sampleSize = 128;
+	private long maxSteps = 1000000;
+	private long restartAfter = -1; // -1 for a default from the problem size
+	private long deadline;
+	private boolean hasDeadline = false;
+
+	/**
+	 * the number of moves and restarts made so far
+	 */
+	private long steps = 0;
+	private int restarts = 0;
+
+	/**
+	 * true if the problem is known to have no solutions
+	 */
+	private final boolean inconsistent;
+
+	/**
+	 *
+	 * @param problem
+	 *            the meeting problem to solve
+	 */
+	public MeetingLocalSearch(MeetingProblem problem) {
+		this(new MeetingState(problem));
+	}
+
+	/**
+	 * makes a search that takes the slots of the meetings from the domains of
+	 * a state, the state is not changed
+	 *
+	 * @param state
+	 *            the state of a solve, e.g. after arc consistency
+	 */
+	public MeetingLocalSearch(MeetingState state) {
+		problem = state.problem;
+		index = problem.index;
+		domains = state.domains;
+		int n = index.nodes.length;
+		int slots = problem.slotCount;
+		values = new MeetingSlot[n];
+		scratch = new MeetingSlot[index.maxArity];
+		head = new int[slots];
+		next = new int[n];
+		previous = new int[n];
+		owners = new int[slots];
+		broken = new int[index.constraints.length];
+		brokenPosition = new int[index.constraints.length];
+		clashes = new int[slots];
+		clashPosition = new int[slots];
+		tabuSlot = new int[n];
+		tabuUntil = new long[n];
+		sizes = new int[n];
+		boolean empty = !state.consistent;
+		int largest = 0;
+		for (int v = 0; v < n; v++) {
+			sizes[v] = domains[v].size();
+			empty |= sizes[v] == 0;
+			largest = Math.max(largest, sizes[v]);
+		}
+		candidates = new int[largest];
+		inconsistent = empty;
+	}
+
+	/**
+	 *
+	 * @param seed
+	 *            the seed of the random choices, the same seed gives the
+	 *            same search
+	 */
+	public void setSeed(long seed) {
+		random = new Random(seed);
+	}
+
+	/**
+	 *
+	 * @param tabuTenure
+	 *            the number of steps a meeting may not move back to the slot
+	 *            it left
+	 */
+	public void setTabuTenure(int tabuTenure) {
+		this.tabuTenure = tabuTenure;
+	}
+
+	/**
+	 *
+	 * @param sampleSize
+	 *            the number of random slots tried for a meeting with a larger
+	 *            domain, a smaller domain is tried in full
+	 */
+	public void setSampleSize(int sampleSize) {
+		this.sampleSize = sampleSize;
+	}
+
+	/**
+	 *
+	 * @param maxSteps
+	 *            the number of moves before the search gives up
+	 */
+	public void setMaxSteps(long maxSteps) {
+		this.maxSteps = maxSteps;
+	}
+
+	/**
+	 *
+	 * @param restartAfter
+	 *            the number of moves without a better assignment before the
+	 *            search restarts
+	 */
+	public void setRestartAfter(long restartAfter) {
+		this.restartAfter = restartAfter;
+	}
+
+	/**
+	 * makes the search give up when a time has passed from now
+	 *
+	 * @param millis
+	 *            the time budget in milliseconds
+	 */
+	public void setTimeBudget(long millis) {
+		deadline = System.nanoTime() + millis * 1000000L;
+		hasDeadline = true;
+	}
+
+	/**
+	 * searches until a solution is found or the search gives up
+	 *
+	 * @return a solution, or null if none was found
+	 */
+	public MeetingAssignment solve() {
+		if (inconsistent)
+			return null;
+		greedy();
+		return search(restartAfter > 0 ? restartAfter : Math.max(1000, 10L * values.length));
+	}
+
+	/**
+	 * repairs an assignment that was a solution before the problem was
+	 * changed. The meetings keep their slots, those without a slot are
+	 * assigned greedily, and only the given constraints and those of the
+	 * meetings without a slot are tested, so the work done depends on the
+	 * size of the change and not on the size of the problem. The search does
+	 * not restart, as that would throw away the assignment, but gives up if
+	 * it has not found a better assignment within the restart patience
+	 *
+	 * @param start
+	 *            the slot of each meeting by node index, or null if it has no
+	 *            slot
+	 * @param suspects
+	 *            the indexes of the constraints that may be broken by the
+	 *            start assignment
+	 * @return a solution, or null if none was found
+	 */
+	public MeetingAssignment repair(MeetingSlot[] start, int[] suspects) {
+		if (inconsistent)
+			return null;
+		reset();
+		bestViolations = Integer.MAX_VALUE;
+		for (int v = 0; v < values.length; v++) {
+			if (start[v] != null && domains[v].has(start[v].index))
+				place(v, start[v].index);
+		}
+		for (int v = 0; v < values.length; v++) {
+			if (values[v] == null)
+				assignGreedily(v);
+		}
+		for (int c : suspects) {
+			if (!problem.test(c, values, scratch))
+				setBroken(c, true);
+		}
+		remember();
+		return search(-1);
+	}
+
+	/**
+	 * moves meetings until the assignment is a solution or the search gives
+	 * up
+	 *
+	 * @param patience
+	 *            the number of moves without a better assignment before the
+	 *            search restarts, -1 to give up instead
+	 * @return a solution, or null if none was found
+	 */
+	private MeetingAssignment search(long patience) {
+		long limit = patience > 0 ? patience : restartAfter > 0 ? restartAfter : 1000;
+		long lastImprovement = steps;
+		while (violations > 0 && steps < maxSteps) {
+			if ((steps & 1023) == 0 && hasDeadline && System.nanoTime() - deadline > 0)
+				break;
+			if (steps - lastImprovement > limit) {
+				if (patience < 0)
+					break;
+				restarts++;
+				greedy();
+				lastImprovement = steps;
+				continue;
+			}
+			move(pickVariable());
+			steps++;
+			if (violations < bestViolations) {
+				remember();
+				lastImprovement = steps;
+			}
+		}
+		if (bestViolations > 0)
+			return null;
+		return new MeetingAssignment(problem, Arrays.asList(index.nodes), Arrays.asList(best.clone()));
+	}
+
+	/**
+	 * assigns all meetings, those with the smallest domains first, each to
+	 * the slot that breaks the fewest constraints with the meetings already
+	 * assigned, ties broken at random
+	 */
+	private void greedy() {
+		reset();
+		for (int v : greedyOrder())
+			assignGreedily(v);
+		if (violations < bestViolations)
+			remember();
+	}
+
+	/**
+	 * makes all meetings unassigned
+	 */
+	private void reset() {
+		Arrays.fill(values, null);
+		Arrays.fill(head, -1);
+		Arrays.fill(owners, 0);
+		Arrays.fill(brokenPosition, -1);
+		Arrays.fill(clashPosition, -1);
+		Arrays.fill(tabuUntil, 0);
+		brokenCount = 0;
+		clashCount = 0;
+		violations = 0;
+	}
+
+	/**
+	 * assigns a meeting the slot that breaks the fewest constraints with the
+	 * meetings already assigned, ties broken at random
+	 *
+	 * @param v
+	 *            an unassigned variable index
+	 */
+	private void assignGreedily(int v) {
+		int chosen = -1;
+		int fewest = Integer.MAX_VALUE;
+		int ties = 0;
+		int count = candidates(v);
+		for (int i = 0; i < count; i++) {
+			int s = candidates[i];
+			values[v] = problem.calendar.getSlot(s);
+			int cost = owners[s];
+			for (int c : index.incident[v]) {
+				if (assigned(c) && !problem.test(c, values, scratch))
+					cost++;
+			}
+			if (cost < fewest) {
+				fewest = cost;
+				chosen = s;
+				ties = 1;
+			} else if (cost == fewest && random.nextInt(++ties) == 0) {
+				chosen = s;
+			}
+		}
+		values[v] = null;
+		place(v, chosen);
+		for (int c : index.incident[v]) {
+			if (assigned(c) && !problem.test(c, values, scratch))
+				setBroken(c, true);
+		}
+	}
+
+	/**
+	 *
+	 * @return the variable indexes in a random order, sorted by domain size
+	 *         with a counting sort, which keeps the random order of equal
+	 *         sizes
+	 */
+	private int[] greedyOrder() {
+		int n = values.length;
+		int[] shuffled = new int[n];
+		for (int v = 0; v < n; v++) {
+			int k = random.nextInt(v + 1);
+			shuffled[v] = shuffled[k];
+			shuffled[k] = v;
+		}
+		int[] first = new int[problem.slotCount + 2];
+		for (int v = 0; v < n; v++)
+			first[sizes[v] + 1]++;
+		for (int k = 1; k < first.length; k++)
+			first[k] += first[k - 1];
+		int[] result = new int[n];
+		for (int v : shuffled)
+			result[first[sizes[v]]++] = v;
+		return result;
+	}
+
+	/**
+	 *
+	 * @param c
+	 *            a constraint index
+	 * @return true if all the meetings of the constraint are assigned
+	 */
+	private boolean assigned(int c) {
+		for (int v : index.scope[c]) {
+			if (values[v] == null)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @return a random meeting of a random broken constraint or double booked
+	 *         slot
+	 */
+	private int pickVariable() {
+		int r = random.nextInt(brokenCount + clashCount);
+		if (r < brokenCount) {
+			int[] scope = index.scope[broken[r]];
+			return scope[random.nextInt(scope.length)];
+		}
+		int s = clashes[r - brokenCount];
+		int v = head[s];
+		for (int k = random.nextInt(owners[s]); k > 0; k--)
+			v = next[v];
+		return v;
+	}
+
+	/**
+	 * moves a meeting to the slot in its domain that gives the fewest
+	 * violations and is not tabu, ties broken at random
+	 *
+	 * @param v
+	 *            a variable index
+	 */
+	private void move(int v) {
+		int from = values[v].index;
+		int before = 0;
+		for (int c : index.incident[v]) {
+			if (brokenPosition[c] >= 0)
+				before++;
+		}
+		if (owners[from] > 1)
+			before++;
+		int chosen = -1;
+		int bestDelta = Integer.MAX_VALUE;
+		int ties = 0;
+		int count = candidates(v);
+		for (int i = 0; i < count; i++) {
+			int s = candidates[i];
+			if (s == from)
+				continue;
+			values[v] = problem.calendar.getSlot(s);
+			int delta = owners[s] > 0 ? 1 - before : -before;
+			for (int c : index.incident[v]) {
+				if (!problem.test(c, values, scratch))
+					delta++;
+			}
+			boolean tabu = tabuSlot[v] == s && tabuUntil[v] > steps;
+			if (tabu && violations + delta >= bestViolations)
+				continue; // tabu, and not better than the best
+			if (delta < bestDelta) {
+				bestDelta = delta;
+				chosen = s;
+				ties = 1;
+			} else if (delta == bestDelta && random.nextInt(++ties) == 0) {
+				chosen = s;
+			}
+		}
+		values[v] = problem.calendar.getSlot(from);
+		if (chosen < 0)
+			return; // no other slot is allowed
+		unplace(v);
+		place(v, chosen);
+		tabuSlot[v] = from;
+		tabuUntil[v] = steps + tabuTenure;
+		for (int c : index.incident[v])
+			setBroken(c, !problem.test(c, values, scratch));
+	}
+
+	/**
+	 * fills candidates with the slots to try for a meeting, all the slots of
+	 * its domain if it is small and a random sample of them otherwise
+	 *
+	 * @param v
+	 * @return the number of candidates
+	 */
+	private int candidates(int v) {
+		MeetingDomain domain = domains[v];
+		int count = 0;
+		if (sizes[v] <= sampleSize) {
+			for (int s = domain.nextSlot(0); s >= 0; s = domain.nextSlot(s + 1))
+				candidates[count++] = s;
+			return count;
+		}
+		int limit = domain.words.length << 6;
+		while (count < sampleSize) {
+			int s = domain.nextSlot(random.nextInt(limit));
+			candidates[count++] = s >= 0 ? s : domain.nextSlot(0);
+		}
+		return count;
+	}
+
+	/**
+	 * puts a meeting in a slot
+	 *
+	 * @param v
+	 * @param s
+	 */
+	private void place(int v, int s) {
+		values[v] = problem.calendar.getSlot(s);
+		previous[v] = -1;
+		next[v] = head[s];
+		if (head[s] >= 0)
+			previous[head[s]] = v;
+		head[s] = v;
+		if (++owners[s] > 1) {
+			violations++;
+			if (owners[s] == 2) {
+				clashPosition[s] = clashCount;
+				clashes[clashCount++] = s;
+			}
+		}
+	}
+
+	/**
+	 * takes a meeting out of its slot, the value is kept
+	 *
+	 * @param v
+	 */
+	private void unplace(int v) {
+		int s = values[v].index;
+		if (previous[v] >= 0)
+			next[previous[v]] = next[v];
+		else
+			head[s] = next[v];
+		if (next[v] >= 0)
+			previous[next[v]] = previous[v];
+		if (--owners[s] > 0) {
+			violations--;
+			if (owners[s] == 1) { // swap the last clash into its place
+				int p = clashPosition[s];
+				int last = clashes[--clashCount];
+				clashes[p] = last;
+				clashPosition[last] = p;
+				clashPosition[s] = -1;
+			}
+		}
+	}
+
+	/**
+	 * updates the list of broken constraints
+	 *
+	 * @param c
+	 * @param isBroken
+	 */
+	private void setBroken(int c, boolean isBroken) {
+		if (isBroken == (brokenPosition[c] >= 0))
+			return;
+		if (isBroken) {
+			brokenPosition[c] = brokenCount;
+			broken[brokenCount++] = c;
+			violations++;
+		} else {
+			int p = brokenPosition[c];
+			int last = broken[--brokenCount];
+			broken[p] = last;
+			brokenPosition[last] = p;
+			brokenPosition[c] = -1;
+			violations--;
+		}
+	}
+
+	/**
+	 * saves the current assignment as the best
+	 */
+	private void remember() {
+		bestViolations = violations;
+		best = values.clone();
+	}
+
+	/**
+	 *
+	 * @return the number of violations of the best assignment found, 0 for a
+	 *         solution
+	 */
+	public int getViolations() {
+		return bestViolations;
+	}
+
+	/**
+	 *
+	 * @return the number of moves made so far
+	 */
+	public long getSteps() {
+		return steps;
+	}
+
+	/**
+	 *
+	 * @return the number of restarts made so far
+	 */
+	public int getRestarts() {
+		return restarts;
+	}
+
+}
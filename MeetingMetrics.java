@@ -0,0 +1,336 @@
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Statistics of the searches of a problem: nodes, backtracks, the deepest
+ * and widest point of the search, the constraint checks and arc revisions
+ * made for each constraint, the domain values pruned, and the time spent in
+ * propagation and in the rest of the search. One object can collect the
+ * statistics of several searches, also in other threads, e.g. the tasks of a
+ * parallel search.
+ *
+ * A search does not count on the shared counters directly but on its own
+ * Recorder, which adds its counts to the shared LongAdders every 1024 steps
+ * and when the search returns, so counting costs about as much as a field
+ * increment. A progress callback can be called at most once per period from
+ * one of the searches, with the counts added so far
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingMetrics {
+
+	/**
+	 * called with the metrics while a search is running
+	 */
+	public interface Progress {
+
+		/**
+		 *
+		 * @param metrics
+		 *            the metrics so far
+		 */
+		void report(MeetingMetrics metrics);
+	}
+
+	/**
+	 * the largest of two numbers, for the maxima
+	 */
+	private static final LongBinaryOperator MAX = new LongBinaryOperator() {
+		public long applyAsLong(long left, long right) {
+			return Math.max(left, right);
+		}
+	};
+
+	/**
+	 * the index of the problem, and its constraints by index
+	 */
+	private final MeetingIndex index;
+	private final MeetingConstraint[] constraints;
+
+	/**
+	 * the shared counters
+	 */
+	private final LongAdder nodes = new LongAdder();
+	private final LongAdder backtracks = new LongAdder();
+	private final LongAdder pruned = new LongAdder();
+	private final LongAdder elapsedNanos = new LongAdder();
+	private final LongAdder propagationNanos = new LongAdder();
+	private final LongAccumulator maxDepth = new LongAccumulator(MAX, 0);
+	private final LongAccumulator peakFrontier = new LongAccumulator(MAX, 0);
+	private final LongAdder[] checks;
+	private final LongAdder[] revisions;
+
+	/**
+	 * the progress callback, its period, and the System.nanoTime() of the
+	 * next report
+	 */
+	private volatile Progress progress;
+	private long periodNanos;
+	private final AtomicLong nextReport = new AtomicLong();
+
+	/**
+	 *
+	 * @param problem
+	 *            the problem whose searches are measured
+	 */
+	public MeetingMetrics(MeetingProblem problem) {
+		index = problem.index;
+		constraints = index.constraints;
+		checks = new LongAdder[constraints.length];
+		revisions = new LongAdder[constraints.length];
+		for (int c = 0; c < constraints.length; c++) {
+			checks[c] = new LongAdder();
+			revisions[c] = new LongAdder();
+		}
+	}
+
+	/**
+	 * makes the searches call a callback now and then while they run
+	 *
+	 * @param progress
+	 *            the callback, null for none
+	 * @param periodMillis
+	 *            the least time between two calls
+	 */
+	public void setProgress(Progress progress, long periodMillis) {
+		periodNanos = periodMillis * 1000000L;
+		nextReport.set(System.nanoTime() + periodNanos);
+		this.progress = progress;
+	}
+
+	/**
+	 *
+	 * @return a new recorder for one search
+	 */
+	Recorder recorder() {
+		return new Recorder();
+	}
+
+	/**
+	 * the counts of one search, not shared with other threads
+	 */
+	class Recorder {
+
+		/**
+		 * the counts since they were last added to the shared counters
+		 */
+		long nodes;
+		long backtracks;
+		long pruned;
+		long propagationNanos;
+		long maxDepth;
+		long peakFrontier;
+		final long[] checks = new long[constraints.length];
+		final long[] revisions = new long[constraints.length];
+
+		/**
+		 * the System.nanoTime() the running time was last counted to
+		 */
+		private long mark;
+
+		/**
+		 * called when the search starts running
+		 */
+		void start() {
+			mark = System.nanoTime();
+		}
+
+		/**
+		 * called every 1024 steps, adds the counts so far and reports the
+		 * progress if it is time for it
+		 */
+		void tick() {
+			flush();
+			Progress callback = progress;
+			if (callback == null)
+				return;
+			long now = System.nanoTime();
+			long due = nextReport.get();
+			if (now - due >= 0 && nextReport.compareAndSet(due, now + periodNanos))
+				callback.report(MeetingMetrics.this);
+		}
+
+		/**
+		 * called when the search returns, adds the counts
+		 */
+		void stop() {
+			flush();
+		}
+
+		/**
+		 * adds the counts to the shared counters and starts again from 0
+		 */
+		private void flush() {
+			long now = System.nanoTime();
+			elapsedNanos.add(now - mark);
+			mark = now;
+			MeetingMetrics.this.nodes.add(nodes);
+			MeetingMetrics.this.backtracks.add(backtracks);
+			MeetingMetrics.this.pruned.add(pruned);
+			MeetingMetrics.this.propagationNanos.add(propagationNanos);
+			MeetingMetrics.this.maxDepth.accumulate(maxDepth);
+			MeetingMetrics.this.peakFrontier.accumulate(peakFrontier);
+			nodes = backtracks = pruned = propagationNanos = 0;
+			for (int c = 0; c < checks.length; c++) {
+				if (checks[c] != 0) {
+					MeetingMetrics.this.checks[c].add(checks[c]);
+					checks[c] = 0;
+				}
+				if (revisions[c] != 0) {
+					MeetingMetrics.this.revisions[c].add(revisions[c]);
+					revisions[c] = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return the number of consistent assignments made
+	 */
+	public long getNodes() {
+		return nodes.sum();
+	}
+
+	/**
+	 *
+	 * @return the number of times a variable ran out of values
+	 */
+	public long getBacktracks() {
+		return backtracks.sum();
+	}
+
+	/**
+	 *
+	 * @return the largest number of variables assigned at once
+	 */
+	public long getMaxDepth() {
+		return maxDepth.get();
+	}
+
+	/**
+	 *
+	 * @return the largest number of values waiting to be tried on the search
+	 *         stack at once
+	 */
+	public long getPeakFrontier() {
+		return peakFrontier.get();
+	}
+
+	/**
+	 *
+	 * @return the number of domain values removed by propagation
+	 */
+	public long getPruned() {
+		return pruned.sum();
+	}
+
+	/**
+	 *
+	 * @return the number of constraint checks made by the searches
+	 */
+	public long getChecks() {
+		long result = 0;
+		for (LongAdder a : checks)
+			result += a.sum();
+		return result;
+	}
+
+	/**
+	 *
+	 * @param mc
+	 *            a constraint of the problem
+	 * @return the number of checks of the constraint, 0 if it is not in the
+	 *         problem
+	 */
+	public long getChecks(MeetingConstraint mc) {
+		int c = index.indexOf(mc);
+		return c < 0 ? 0 : checks[c].sum();
+	}
+
+	/**
+	 *
+	 * @return the number of arc revisions made by the searches
+	 */
+	public long getRevisions() {
+		long result = 0;
+		for (LongAdder a : revisions)
+			result += a.sum();
+		return result;
+	}
+
+	/**
+	 *
+	 * @param mc
+	 *            a constraint of the problem
+	 * @return the number of revisions of the arcs of the constraint, 0 if it
+	 *         is not in the problem
+	 */
+	public long getRevisions(MeetingConstraint mc) {
+		int c = index.indexOf(mc);
+		return c < 0 ? 0 : revisions[c].sum();
+	}
+
+	/**
+	 *
+	 * @return the time spent in propagation, in nanoseconds
+	 */
+	public long getPropagationNanos() {
+		return propagationNanos.sum();
+	}
+
+	/**
+	 *
+	 * @return the time spent in the searches outside propagation, in
+	 *         nanoseconds
+	 */
+	public long getSearchNanos() {
+		return elapsedNanos.sum() - propagationNanos.sum();
+	}
+
+	/**
+	 *
+	 * @param count
+	 *            the number of constraints
+	 * @return the constraints with the most checks and revisions, most first
+	 */
+	public List<MeetingConstraint> hottest(int count) {
+		final long[] cost = new long[constraints.length];
+		List<MeetingConstraint> result = new ArrayList<MeetingConstraint>();
+		for (int c = 0; c < constraints.length; c++) {
+			cost[c] = checks[c].sum() + revisions[c].sum();
+			if (cost[c] > 0)
+				result.add(constraints[c]);
+		}
+		Collections.sort(result, new Comparator<MeetingConstraint>() {
+			public int compare(MeetingConstraint a, MeetingConstraint b) {
+				return Long.compare(cost[index.indexOf(b)], cost[index.indexOf(a)]);
+			}
+		});
+		return result.subList(0, Math.min(count, result.size()));
+	}
+
+	/**
+	 * a summary of the metrics, with the five most costly constraints
+	 */
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		result.append("nodes " + getNodes() + ", backtracks " + getBacktracks() + ", max depth " + getMaxDepth()
+				+ ", peak frontier " + getPeakFrontier() + "\n");
+		result.append("checks " + getChecks() + ", revisions " + getRevisions() + ", pruned " + getPruned() + "\n");
+		result.append("propagation " + getPropagationNanos() / 1000000 + " ms, search " + getSearchNanos() / 1000000
+				+ " ms");
+		for (MeetingConstraint mc : hottest(5))
+			result.append("\n  " + mc + ": checks " + getChecks(mc) + ", revisions " + getRevisions(mc));
+		return result.toString();
+	}
+
+}
@@ -1,26 +1,21 @@
 
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Collection;
 
 /**
  * Represent the meeting nodes, i.e. variables that are involved in a meeting
  * problem
  * 
- * @author Bjrnar Tessem
+ * @author Bjørnar Tessem
  *
  */
 public class MeetingNode {
 
 	/**
-	 * the meeting slots this node can have
+	 * the meeting slots this node can have. It is not changed when the
+	 * problem is solved, the searches work on copies
 	 */
-	Set<MeetingSlot> domain = new HashSet<MeetingSlot>();
-
-	/**
-	 * an assignment of this meeting node
-	 */
-	MeetingSlot assignment = null;
+	MeetingDomain domain = new MeetingDomain();
 
 	/**
 	 * the name of the meeting node
@@ -44,6 +39,20 @@ public class MeetingNode {
 		this.name = name;
 	}
 
+	/**
+	 * 
+	 * @param name
+	 * @param slots
+	 *            the meeting slots this node can have
+	 */
+	public MeetingNode(String name, Collection<MeetingSlot> slots) {
+		if (slots instanceof MeetingDomain) // copy the bits directly
+			domain = new MeetingDomain((MeetingDomain) slots);
+		else
+			domain.addAll(slots);
+		this.name = name;
+	}
+
 	public String toString() {
 		StringBuffer result = new StringBuffer(name);
 		// for (MeetingSlot ms : domain) result.append(ms + " ");
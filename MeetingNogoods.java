@@ -0,0 +1,278 @@
+
+import java.util.Arrays;
+
+/**
+ * The nogoods learned by a search: sets of assignments that cannot all be
+ * part of a solution. A nogood is found when a variable runs out of values,
+ * from the assignments its failures were blamed on, and is then tested each
+ * time a variable is assigned, so the same combination of slots is not
+ * searched again in another subtree.
+ *
+ * Each nogood watches two of its assignments, and is only looked at when a
+ * watched variable gets the slot of the nogood. It then watches another
+ * assignment that does not hold, or if there is none, the search fails when
+ * all assignments hold, or the slot of the last unassigned variable is
+ * removed from its domain. Backtracking does not change the watches.
+ *
+ * The store holds at most a given number of assignments in all. When it is
+ * full the half of the nogoods that have caused the fewest failures and
+ * removals lately are forgotten
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingNogoods {
+
+	/**
+	 * the variables and slots of each nogood, the watched ones first, null if
+	 * the nogood is forgotten
+	 */
+	private int[][] vars = new int[16][];
+	private int[][] slots = new int[16][];
+
+	/**
+	 * the number of failures and removals caused by each nogood, halved each
+	 * time the store is reduced
+	 */
+	private int[] activity = new int[16];
+
+	/**
+	 * the number of nogood numbers in use, and the free numbers below it
+	 */
+	private int count = 0;
+	private int[] free = new int[16];
+	private int freeCount = 0;
+
+	/**
+	 * watches[v] are the numbers of the nogoods watching variable v, the
+	 * first watchCount[v] are used
+	 */
+	private int[][] watches;
+	private int[] watchCount;
+
+	/**
+	 * the number of assignments in the stored nogoods, and the largest
+	 * number allowed
+	 */
+	private long size = 0;
+	private final long capacity;
+
+	/**
+	 * the largest number of assignments in a nogood that is stored
+	 */
+	private final int maxLength;
+
+	/**
+	 * the number of nogoods learned and forgotten
+	 */
+	private long learned = 0;
+	private long forgotten = 0;
+
+	/**
+	 *
+	 * @param variables
+	 *            the number of variables of the problem
+	 * @param capacity
+	 *            the largest number of assignments in all stored nogoods
+	 * @param maxLength
+	 *            the largest number of assignments in a nogood, longer ones
+	 *            are not stored
+	 */
+	public MeetingNogoods(int variables, long capacity, int maxLength) {
+		this.capacity = capacity;
+		this.maxLength = maxLength;
+		watches = new int[variables][];
+		watchCount = new int[variables];
+	}
+
+	/**
+	 * stores a nogood
+	 *
+	 * @param v
+	 *            the variables, the two assigned last first
+	 * @param s
+	 *            their slots
+	 * @param length
+	 *            the number of assignments
+	 * @return false if the nogood is too long to be stored
+	 */
+	boolean learn(int[] v, int[] s, int length) {
+		if (length == 0 || length > maxLength || length > capacity)
+			return false;
+		if (size + length > capacity)
+			reduce();
+		int id;
+		if (freeCount > 0)
+			id = free[--freeCount];
+		else {
+			if (count == vars.length) {
+				vars = Arrays.copyOf(vars, 2 * count);
+				slots = Arrays.copyOf(slots, 2 * count);
+				activity = Arrays.copyOf(activity, 2 * count);
+			}
+			id = count++;
+		}
+		vars[id] = Arrays.copyOf(v, length);
+		slots[id] = Arrays.copyOf(s, length);
+		activity[id] = 1;
+		watch(v[0], id);
+		if (length > 1)
+			watch(v[1], id);
+		size += length;
+		learned++;
+		return true;
+	}
+
+	/**
+	 * makes a nogood watch a variable
+	 *
+	 * @param v
+	 * @param id
+	 *            the number of the nogood
+	 */
+	private void watch(int v, int id) {
+		if (watches[v] == null)
+			watches[v] = new int[4];
+		else if (watchCount[v] == watches[v].length)
+			watches[v] = Arrays.copyOf(watches[v], 2 * watchCount[v]);
+		watches[v][watchCount[v]++] = id;
+	}
+
+	/**
+	 * tests the nogoods watching a variable that has just been assigned
+	 *
+	 * @param search
+	 *            the search, with v assigned
+	 * @param v
+	 *            the variable index
+	 * @param slot
+	 *            its slot index
+	 * @return false if all assignments of a nogood hold, or a removal wiped
+	 *         out a domain. The search has then been told why
+	 */
+	boolean assign(MeetingSearch search, int v, int slot) {
+		int[] list = watches[v];
+		int i = 0;
+		while (i < watchCount[v]) {
+			int id = list[i];
+			int[] nv = vars[id];
+			int[] ns = slots[id];
+			int w = nv[0] == v ? 0 : 1;
+			if (ns[w] != slot) {
+				i++; // the nogood does not hold
+				continue;
+			}
+			if (nv.length == 1) {
+				activity[id]++;
+				search.blameNogood(nv, nv.length);
+				return false;
+			}
+			// watch an assignment that does not hold instead
+			int k = 2;
+			while (k < nv.length && holds(search, nv[k], ns[k]))
+				k++;
+			if (k < nv.length) {
+				swap(nv, ns, w, k);
+				watch(nv[w], id);
+				list[i] = list[--watchCount[v]]; // no longer watching v
+				continue;
+			}
+			int other = 1 - w;
+			MeetingSlot value = search.getValue(nv[other]);
+			if (value == null) { // the last one can not get its slot
+				activity[id]++;
+				if (!search.pruneNogood(nv[other], ns[other], nv, nv.length))
+					return false;
+			} else if (value.index == ns[other]) {
+				activity[id]++;
+				search.blameNogood(nv, nv.length);
+				return false;
+			}
+			i++;
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @param search
+	 * @param v
+	 * @param slot
+	 * @return true if v is assigned the slot
+	 */
+	private static boolean holds(MeetingSearch search, int v, int slot) {
+		MeetingSlot value = search.getValue(v);
+		return value != null && value.index == slot;
+	}
+
+	/**
+	 * swaps two assignments of a nogood
+	 */
+	private static void swap(int[] v, int[] s, int i, int j) {
+		int t = v[i];
+		v[i] = v[j];
+		v[j] = t;
+		t = s[i];
+		s[i] = s[j];
+		s[j] = t;
+	}
+
+	/**
+	 * forgets the half of the nogoods with the lowest activity, the newest
+	 * first kept on ties, and halves the activity of the others
+	 */
+	private void reduce() {
+		int live = count - freeCount;
+		long[] keys = new long[live];
+		int k = 0;
+		for (int id = 0; id < count; id++) {
+			if (vars[id] != null)
+				keys[k++] = (long) activity[id] << 32 | id;
+		}
+		Arrays.sort(keys);
+		for (int j = 0; j < live / 2 || (j < live && size > capacity / 2); j++) {
+			int id = (int) keys[j];
+			size -= vars[id].length;
+			vars[id] = null;
+			slots[id] = null;
+			if (freeCount == free.length)
+				free = Arrays.copyOf(free, 2 * freeCount);
+			free[freeCount++] = id;
+			forgotten++;
+		}
+		Arrays.fill(watchCount, 0);
+		for (int id = 0; id < count; id++) {
+			if (vars[id] == null)
+				continue;
+			activity[id] >>= 1;
+			watch(vars[id][0], id);
+			if (vars[id].length > 1)
+				watch(vars[id][1], id);
+		}
+	}
+
+	/**
+	 *
+	 * @return the number of nogoods stored now
+	 */
+	public int size() {
+		return count - freeCount;
+	}
+
+	/**
+	 *
+	 * @return the number of nogoods learned
+	 */
+	public long getLearned() {
+		return learned;
+	}
+
+	/**
+	 *
+	 * @return the number of nogoods forgotten to make room for new ones
+	 */
+	public long getForgotten() {
+		return forgotten;
+	}
+
+}
@@ -0,0 +1,155 @@
+
+import java.util.Collection;
+
+/**
+ * A branch and bound search for the best schedule of a meeting problem, the
+ * solution with the smallest total cost of a set of preferences. The search
+ * is a depth first search that does not expand an assignment whose lower
+ * bound of the cost is not below the cost of the best solution found so far,
+ * so each solution it finds is better than the last one. The search is an
+ * anytime algorithm: it can be given a time budget, and when the time is up
+ * the best solution found so far is the answer, which is optimal only if the
+ * search finished in time
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingOptimizer {
+
+	/**
+	 * the search for better solutions
+	 */
+	private final MeetingSearch engine;
+
+	/**
+	 * the cost of the preferences of the search's assignment
+	 */
+	private final MeetingCost cost;
+
+	/**
+	 * the best solution found so far, and its cost
+	 */
+	private MeetingAssignment best;
+	private long bestCost = Long.MAX_VALUE;
+
+	/**
+	 * true if the whole search tree has been explored
+	 */
+	private boolean finished = false;
+
+	/**
+	 *
+	 * @param problem
+	 *            the meeting problem
+	 * @param preferences
+	 *            preferences about the meetings of the problem
+	 */
+	public MeetingOptimizer(MeetingProblem problem, Collection<MeetingPreference> preferences) {
+		this(new MeetingState(problem), preferences);
+	}
+
+	/**
+	 *
+	 * @param state
+	 *            the state the search starts from, e.g. after arc consistency
+	 * @param preferences
+	 *            preferences about the meetings of the problem
+	 */
+	public MeetingOptimizer(MeetingState state, Collection<MeetingPreference> preferences) {
+		engine = new MeetingSearch(state);
+		cost = new MeetingCost(state.problem, preferences);
+		engine.setCost(cost);
+		engine.setValueOrdering(cost); // the cheapest slots first
+	}
+
+	/**
+	 * decides how much propagation the search does after each assignment
+	 *
+	 * @param propagation
+	 */
+	public void setPropagation(MeetingSearch.Propagation propagation) {
+		engine.setPropagation(propagation);
+	}
+
+	/**
+	 * decides how the search picks the variable to assign next
+	 *
+	 * @param variableOrdering
+	 */
+	public void setVariableOrdering(VariableOrdering variableOrdering) {
+		engine.setVariableOrdering(variableOrdering);
+	}
+
+	/**
+	 * makes the search stop when a time has passed from now, the best
+	 * solution found until then is kept
+	 *
+	 * @param millis
+	 *            the time budget in milliseconds
+	 */
+	public void setTimeBudget(long millis) {
+		engine.setDeadline(System.nanoTime() + millis * 1000000L);
+	}
+
+	/**
+	 * finds a solution that is better than the best solution found so far
+	 *
+	 * @return the better solution, or null if there is none or the time is up
+	 */
+	public MeetingAssignment next() {
+		if (!engine.nextLeaf()) {
+			finished = !engine.isStopped();
+			return null;
+		}
+		bestCost = engine.getCost();
+		best = engine.solution();
+		engine.setBound(bestCost); // from now on only better solutions
+		return best;
+	}
+
+	/**
+	 * searches for better solutions until the best is found or the time is up
+	 *
+	 * @return the best solution found, or null if no solution was found
+	 */
+	public MeetingAssignment solve() {
+		while (next() != null)
+			;
+		return best;
+	}
+
+	/**
+	 *
+	 * @return the best solution found so far, or null if none is found
+	 */
+	public MeetingAssignment getBest() {
+		return best;
+	}
+
+	/**
+	 *
+	 * @return the cost of the best solution found so far, Long.MAX_VALUE if
+	 *         none is found
+	 */
+	public long getBestCost() {
+		return bestCost;
+	}
+
+	/**
+	 *
+	 * @return true if the search has shown that no solution is better than
+	 *         the best one found, or that there is no solution
+	 */
+	public boolean isOptimal() {
+		return finished;
+	}
+
+	/**
+	 *
+	 * @return the number of internal nodes visited in the search
+	 */
+	public long getNodes() {
+		return engine.getNodes();
+	}
+
+}
@@ -0,0 +1,397 @@
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A parallel backtracking search for the meeting problem. The top of the
+ * search tree, down to a split depth, is divided into fork/join tasks, one
+ * for each value of the branching variable, and the pool's work stealing
+ * spreads them over the worker threads. Below the split depth a task searches
+ * its subtree with its own MeetingSearch, so each worker has its own
+ * assignment, domains and trail and nothing is shared but the problem itself.
+ *
+ * The search can find a first solution, all solutions or just count them. If
+ * the search is deterministic, first() gives the solution that is first in
+ * the order of the task tree and all() lists the solutions in that order, so
+ * the result does not depend on the number of threads or their timing
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingParallelSearch {
+
+	/**
+	 * what the search is looking for
+	 */
+	enum Mode {
+		FIRST, ALL, COUNT
+	};
+
+	/**
+	 * the state each task's search starts from
+	 */
+	private MeetingState state;
+
+	/**
+	 * the pool running the tasks
+	 */
+	private ForkJoinPool pool;
+
+	/**
+	 * the number of variables assigned before the tree is no longer split
+	 */
+	private int splitDepth = 2;
+
+	/**
+	 * true if the solutions are delivered in task tree order
+	 */
+	private boolean deterministic = false;
+
+	/**
+	 * the settings of each task's search
+	 */
+	private MeetingSearch.Propagation propagation = MeetingSearch.Propagation.FORWARD_CHECKING;
+	private VariableOrdering variableOrdering = VariableOrderings.DOM_WDEG;
+	private ValueOrdering valueOrdering = ValueOrderings.SLOT_ORDER;
+
+	/**
+	 * the metrics all tasks count in, or null
+	 */
+	private MeetingMetrics metrics;
+
+	/**
+	 * the limits of each task's search, Long.MAX_VALUE for no limit
+	 */
+	private long nodeLimit = Long.MAX_VALUE;
+	private long memoryLimit = Long.MAX_VALUE;
+	private long deadline;
+	private boolean hasDeadline = false;
+
+	/**
+	 * the current search mode, and the shared results of a non deterministic
+	 * search
+	 */
+	private Mode mode;
+	private AtomicBoolean stop;
+	private AtomicReference<MeetingAssignment> firstFound;
+	private ConcurrentLinkedQueue<MeetingAssignment> found;
+
+	/**
+	 * set if a limit stopped the search of a task in the last run
+	 */
+	private AtomicBoolean limited = new AtomicBoolean(false);
+
+	/**
+	 *
+	 * @param problem
+	 *            the meeting problem
+	 * @param pool
+	 *            the pool running the tasks
+	 */
+	public MeetingParallelSearch(MeetingProblem problem, ForkJoinPool pool) {
+		this(new MeetingState(problem), pool);
+	}
+
+	/**
+	 *
+	 * @param state
+	 *            the state the searches start from, e.g. after arc
+	 *            consistency. It is only read, so it must not be changed while
+	 *            the search runs
+	 * @param pool
+	 *            the pool running the tasks, it can be shared with other
+	 *            searches
+	 */
+	public MeetingParallelSearch(MeetingState state, ForkJoinPool pool) {
+		this.state = state;
+		this.pool = pool;
+	}
+
+	/**
+	 * sets the number of variables assigned before the tree is no longer
+	 * split, more levels give more and smaller tasks
+	 *
+	 * @param splitDepth
+	 */
+	public void setSplitDepth(int splitDepth) {
+		this.splitDepth = splitDepth;
+	}
+
+	/**
+	 * decides if solutions are delivered in task tree order
+	 *
+	 * @param deterministic
+	 */
+	public void setDeterministic(boolean deterministic) {
+		this.deterministic = deterministic;
+	}
+
+	/**
+	 * sets the propagation of each task's search
+	 *
+	 * @param propagation
+	 */
+	public void setPropagation(MeetingSearch.Propagation propagation) {
+		this.propagation = propagation;
+	}
+
+	/**
+	 * sets the variable ordering of each task's search
+	 *
+	 * @param variableOrdering
+	 */
+	public void setVariableOrdering(VariableOrdering variableOrdering) {
+		this.variableOrdering = variableOrdering;
+	}
+
+	/**
+	 * sets the value ordering of each task's search
+	 *
+	 * @param valueOrdering
+	 */
+	public void setValueOrdering(ValueOrdering valueOrdering) {
+		this.valueOrdering = valueOrdering;
+	}
+
+	/**
+	 * makes each task's search count its statistics in the metrics
+	 *
+	 * @param metrics
+	 */
+	public void setMetrics(MeetingMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * makes each task's search stop when it has made a number of consistent
+	 * assignments
+	 *
+	 * @param nodeLimit
+	 */
+	public void setNodeLimit(long nodeLimit) {
+		this.nodeLimit = nodeLimit;
+	}
+
+	/**
+	 * makes the tasks stop when the heap in use gets larger than a limit
+	 *
+	 * @param bytes
+	 */
+	public void setMemoryLimit(long bytes) {
+		this.memoryLimit = bytes;
+	}
+
+	/**
+	 * makes the tasks stop when a time has passed
+	 *
+	 * @param deadline
+	 *            the System.nanoTime() to stop at
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+		hasDeadline = true;
+	}
+
+	/**
+	 *
+	 * @return true if a limit stopped a task of the last run, its result may
+	 *         then miss solutions
+	 */
+	public boolean isLimited() {
+		return limited.get();
+	}
+
+	/**
+	 *
+	 * @return a solution, or null if there is none
+	 */
+	public MeetingAssignment first() {
+		Result r = run(Mode.FIRST);
+		return deterministic ? (r.solutions.isEmpty() ? null : r.solutions.get(0)) : firstFound.get();
+	}
+
+	/**
+	 *
+	 * @return all solutions
+	 */
+	public List<MeetingAssignment> all() {
+		Result r = run(Mode.ALL);
+		return deterministic ? r.solutions : new ArrayList<MeetingAssignment>(found);
+	}
+
+	/**
+	 *
+	 * @return the number of solutions, no solution objects are made
+	 */
+	public long count() {
+		return run(Mode.COUNT).count;
+	}
+
+	/**
+	 * runs a search in the pool
+	 *
+	 * @param mode
+	 * @return the result of the root task
+	 */
+	private synchronized Result run(Mode mode) {
+		this.mode = mode;
+		stop = new AtomicBoolean(false);
+		firstFound = new AtomicReference<MeetingAssignment>();
+		found = new ConcurrentLinkedQueue<MeetingAssignment>();
+		limited.set(false);
+		return pool.invoke(new SearchTask(new int[0], new int[0]));
+	}
+
+	/**
+	 *
+	 * @return a new search for a task
+	 */
+	private MeetingSearch newSearch() {
+		MeetingSearch search = new MeetingSearch(state);
+		search.setPropagation(propagation);
+		search.setVariableOrdering(variableOrdering);
+		search.setValueOrdering(valueOrdering);
+		search.setMetrics(metrics);
+		search.setNodeLimit(nodeLimit);
+		search.setMemoryLimit(memoryLimit);
+		if (hasDeadline)
+			search.setDeadline(deadline);
+		return search;
+	}
+
+	/**
+	 * the result of a task, in a deterministic search the solutions in order,
+	 * or the number of solutions when counting
+	 */
+	private static class Result {
+		List<MeetingAssignment> solutions = Collections.emptyList();
+		long count = 0;
+	}
+
+	/**
+	 * a task searching the subtree below a partial assignment
+	 */
+	private class SearchTask extends RecursiveTask<Result> {
+
+		private static final long serialVersionUID = 1L;
+
+		// the partial assignment, slots[i] is given to variables[i]
+		private int[] variables;
+		private int[] slots;
+
+		// set when the task is no longer needed
+		private AtomicBoolean cancelled = new AtomicBoolean(false);
+
+		// the tasks this task has split into, if any
+		private volatile List<SearchTask> children = Collections.emptyList();
+
+		SearchTask(int[] variables, int[] slots) {
+			this.variables = variables;
+			this.slots = slots;
+		}
+
+		/**
+		 * cancels this task and all tasks it has split into
+		 */
+		void cancel() {
+			cancelled.set(true);
+			for (SearchTask child : children)
+				child.cancel();
+		}
+
+		@Override
+		protected Result compute() {
+			Result result = new Result();
+			if (cancelled.get() || stop.get())
+				return result;
+			MeetingSearch search = newSearch();
+			for (int i = 0; i < variables.length; i++) {
+				if (!search.assume(variables[i], slots[i]))
+					return result; // a dead end
+			}
+			int v = search.branchVariable();
+			if (variables.length < splitDepth && v >= 0)
+				return split(search, v);
+
+			// search the subtree here
+			search.setCancel(deterministic ? cancelled : stop);
+			List<MeetingAssignment> solutions = new ArrayList<MeetingAssignment>();
+			while (!cancelled.get() && search.nextLeaf()) {
+				if (mode == Mode.COUNT) {
+					result.count++;
+					continue;
+				}
+				MeetingAssignment solution = search.solution();
+				if (deterministic) {
+					solutions.add(solution);
+					if (mode == Mode.FIRST)
+						break;
+				} else if (mode == Mode.FIRST) {
+					if (firstFound.compareAndSet(null, solution))
+						stop.set(true); // every task can stop now
+					break;
+				} else {
+					found.add(solution);
+				}
+			}
+			if (search.isStopped() && !cancelled.get() && !stop.get())
+				limited.set(true); // not stopped because it was not needed
+			result.solutions = solutions;
+			return result;
+		}
+
+		/**
+		 * forks a task for each value of the branching variable and combines
+		 * their results in order
+		 *
+		 * @param search
+		 *            the search with this task's partial assignment
+		 * @param v
+		 *            the branching variable
+		 * @return the combined result
+		 */
+		private Result split(MeetingSearch search, int v) {
+			int[] values = search.branchValues(v);
+			List<SearchTask> children = new ArrayList<SearchTask>();
+			for (int slot : values) {
+				int[] childVariables = Arrays.copyOf(variables, variables.length + 1);
+				int[] childSlots = Arrays.copyOf(slots, slots.length + 1);
+				childVariables[variables.length] = v;
+				childSlots[slots.length] = slot;
+				children.add(new SearchTask(childVariables, childSlots));
+			}
+			this.children = children;
+			if (cancelled.get()) // cancelled while splitting
+				return new Result();
+			for (int i = children.size() - 1; i >= 0; i--)
+				children.get(i).fork(); // the first child ends up on top, so
+										// this thread runs it when joining
+
+			Result result = new Result();
+			List<MeetingAssignment> solutions = new ArrayList<MeetingAssignment>();
+			for (int i = 0; i < children.size(); i++) {
+				Result r = children.get(i).join();
+				result.count += r.count;
+				solutions.addAll(r.solutions);
+				if (deterministic && mode == Mode.FIRST && !solutions.isEmpty()) {
+					for (int j = i + 1; j < children.size(); j++)
+						children.get(j).cancel(); // later siblings are not
+													// needed
+					for (int j = i + 1; j < children.size(); j++)
+						children.get(j).join(); // they return quickly
+					break;
+				}
+			}
+			result.solutions = solutions;
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,173 @@
+
+/**
+ * A soft constraint, a wish about a schedule that has a cost when it is not
+ * met. Unlike a MeetingConstraint a preference may be broken, the best
+ * schedule is the one where the sum of the costs of all preferences is
+ * smallest. Preferences are about one or two meetings of a problem
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public final class MeetingPreference {
+
+	/**
+	 * the kinds of preferences
+	 */
+	enum Kind {
+		EARLY, // costs weight for each time period after the first
+		ROOM, // costs weight if first is not in room target
+		TIME, // costs weight if first is not at time target
+		SAME_ROOM, // costs weight if first and second are in different rooms
+		CLOSE // costs weight for each time period between first and second
+	};
+
+	/**
+	 * the name of the preference
+	 */
+	final String name;
+
+	/**
+	 * the kind of the preference
+	 */
+	final Kind kind;
+
+	/**
+	 * the meetings of the preference, second is null if there is only one
+	 */
+	final MeetingNode first;
+	final MeetingNode second;
+
+	/**
+	 * the preferred room or time number
+	 */
+	final int target;
+
+	/**
+	 * the cost of breaking the preference once
+	 */
+	final int weight;
+
+	/**
+	 *
+	 * @param name
+	 * @param kind
+	 * @param first
+	 * @param second
+	 * @param target
+	 * @param weight
+	 */
+	private MeetingPreference(String name, Kind kind, MeetingNode first, MeetingNode second, int target,
+			int weight) {
+		if (weight < 0)
+			throw new IllegalArgumentException("The preference " + name + " has a negative weight");
+		this.name = name;
+		this.kind = kind;
+		this.first = first;
+		this.second = second;
+		this.target = target;
+		this.weight = weight;
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param meeting
+	 * @param weight
+	 *            the cost per time period after the first
+	 * @return a preference for holding the meeting early
+	 */
+	public static MeetingPreference early(String name, MeetingNode meeting, int weight) {
+		return new MeetingPreference(name, Kind.EARLY, meeting, null, 0, weight);
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param meeting
+	 * @param room
+	 *            a room number
+	 * @param weight
+	 *            the cost if the meeting is in another room
+	 * @return a preference for holding the meeting in the room
+	 */
+	public static MeetingPreference room(String name, MeetingNode meeting, int room, int weight) {
+		return new MeetingPreference(name, Kind.ROOM, meeting, null, room, weight);
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param meeting
+	 * @param period
+	 *            a time period number
+	 * @param weight
+	 *            the cost if the meeting is at another time
+	 * @return a preference for holding the meeting at the time
+	 */
+	public static MeetingPreference time(String name, MeetingNode meeting, int period, int weight) {
+		return new MeetingPreference(name, Kind.TIME, meeting, null, period, weight);
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param first
+	 * @param second
+	 * @param weight
+	 *            the cost if the meetings are in different rooms
+	 * @return a preference for holding the meetings in the same room, e.g.
+	 *         so that the people in both need not change rooms
+	 */
+	public static MeetingPreference sameRoom(String name, MeetingNode first, MeetingNode second, int weight) {
+		return new MeetingPreference(name, Kind.SAME_ROOM, first, second, 0, weight);
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param first
+	 * @param second
+	 * @param weight
+	 *            the cost per time period between the meetings
+	 * @return a preference for holding the meetings close in time
+	 */
+	public static MeetingPreference close(String name, MeetingNode first, MeetingNode second, int weight) {
+		return new MeetingPreference(name, Kind.CLOSE, first, second, 0, weight);
+	}
+
+	/**
+	 *
+	 * @return true if the preference is about a single meeting
+	 */
+	boolean isUnary() {
+		return second == null;
+	}
+
+	/**
+	 *
+	 * @param a
+	 *            the slot of the first meeting
+	 * @param b
+	 *            the slot of the second meeting, not used if there is none
+	 * @return the cost of the preference for the slots
+	 */
+	int cost(MeetingSlot a, MeetingSlot b) {
+		switch (kind) {
+		case EARLY:
+			return weight * a.getPeriod();
+		case ROOM:
+			return a.getRoomNumber() == target ? 0 : weight;
+		case TIME:
+			return a.getPeriod() == target ? 0 : weight;
+		case SAME_ROOM:
+			return a.getRoomNumber() == b.getRoomNumber() ? 0 : weight;
+		default:
+			return weight * Math.abs(a.getPeriod() - b.getPeriod());
+		}
+	}
+
+	public String toString() {
+		return name;
+	}
+
+}
@@ -1,99 +1,31 @@
 
 
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
 /**
  * This class is a representation of a constraint satisfaction problem that is
- * about assigning meeting rooms and times to a set of meetings. The meeting
- * problem is represented as a singleton pattern that can be obtained through
- * MeetingProblem.getMeetingProblem();
+ * about assigning meeting rooms and times to a set of meetings. A problem is
+ * not changed after it is made, and everything that changes while it is
+ * solved is kept in a MeetingState, so one problem can be solved by several
+ * threads at once and several problems can be solved in the same program. The
+ * example problem can be obtained through MeetingProblem.getMeetingProblem();
  * 
- * @author Bjrnar Tessem
+ * @author Bjørnar Tessem
  *
  */
 public class MeetingProblem {
 
-	Set<MeetingNode> variables; // the variables to be assigned in the CSP
-	Set<MeetingConstraint> constraints; // the constraints of the CSP
-
-	// a collection of meetings
-	final MeetingNode Meeting1 = new MeetingNode("Planlegging prosjekt A");
-	final MeetingNode Meeting2 = new MeetingNode("Planlegging prosjekt B");
-	final MeetingNode Meeting3 = new MeetingNode("Styremte");
-	final MeetingNode Meeting4 = new MeetingNode("Kontraktmte kunde");
-	final MeetingNode Meeting5 = new MeetingNode("Kaffemte");
-	final MeetingNode Meeting6 = new MeetingNode("Spesialmte 1");
-	final MeetingNode Meeting7 = new MeetingNode("Krisemte!");
-	final MeetingNode Meeting8 = new MeetingNode("Kakemte");
-
-	// Constraint: meeting1 should be held before meeting2
-	final MeetingConstraint M1BeforeM2 = new MeetingConstraint("M1<M2", Meeting1, Meeting2) {
-		@Override
-		public boolean constraint() {
-			return Meeting1.assignment.getTime().ordinal() < Meeting2.assignment.getTime().ordinal();
-		}
-	};
-
-	// Constraint: meeting3 cannot be held at same time as meeting4
-	final MeetingConstraint M3UnequalM4 = new MeetingConstraint("M3!=M4", Meeting3, Meeting4) {
-		@Override
-		public boolean constraint() {
-			return Meeting3.assignment.getTime().ordinal() != Meeting4.assignment.getTime().ordinal();
-		}
-	};
-
-	// Constraint: meeting3 needs to be held in Room3
-	final MeetingConstraint M3RoomB = new MeetingConstraint("M3R3", Meeting3) {
-		@Override
-		public boolean constraint() {
-			return Meeting3.assignment.getRoom() == MeetingSlot.Room.RoomB;
-		}
-	};
-
-	// Constraint: meeting 5 must be held after meeting 3
-	final MeetingConstraint M5AfterM3 = new MeetingConstraint("M5AfterM3", Meeting5, Meeting3) {
-		@Override
-		public boolean constraint() {
-			return Meeting5.assignment.getTime().ordinal() > Meeting3.assignment.getTime().ordinal();
-		}
-	};
-
-	//  Constraint: meeting 8 cannot be at the same time as meeting 5
-	final MeetingConstraint M8UnequalM5 = new MeetingConstraint("M8UnequalM5", Meeting8, Meeting5) {
-		@Override
-		public boolean constraint() {
-			return Meeting8.assignment.getTime().ordinal() != Meeting5.assignment.getTime().ordinal();
-		}
-	};
-
-	// Constraint: Meeting 7 must be in the morning at 08:00
-	final MeetingConstraint M7Time = new MeetingConstraint("M7Time", Meeting7) {
-		@Override
-		public boolean constraint() {
-			return Meeting7.assignment.getTime() == MeetingSlot.Time.MORNING;
-		}
-	};
-
-	// Constraint: Meeting 6 can only be later than 08:00 and after Meeting 7
-	final MeetingConstraint M6NotMorning = new MeetingConstraint("M6NotMorning", Meeting6, Meeting7) {
-		@Override
-		public boolean constraint() {
-			return Meeting6.assignment.getTime() != MeetingSlot.Time.MORNING &&
-					Meeting6.assignment.getTime().ordinal() > Meeting7.assignment.getTime().ordinal();
-		}
-	};
-
-	// Constraint: Meeting 8 must be in room A
-	final MeetingConstraint M8RoomA = new MeetingConstraint("M8RoomA", Meeting8) {
-		@Override
-		public boolean constraint() {
-			return Meeting8.assignment.getRoom() == MeetingSlot.Room.RoomA;
-		}
-	};
-
-
+	final Set<MeetingNode> variables; // the variables to be assigned in the CSP
+	final Set<MeetingConstraint> constraints; // the constraints of the CSP
+	final MeetingIndex index; // which constraints involve which variables
+	final MeetingSupports supports; // support tables of binary constraints
+	final MeetingKernel[] kernels; // the compiled rules, by constraint index
+	final MeetingCalendar calendar; // the slots the meetings can have
+	final int slotCount; // the number of slots, slot indexes are below it
 
 	/**
 	 * The problem also has a constraint that two meetings cannot be held in the
@@ -104,30 +36,163 @@ public class MeetingProblem {
 	 * 
 	 * @param assignedNodes
 	 *            the nodes/variables that has an assignment
+	 * @param values
+	 *            values[i] is the slot of the i'th assigned node
 	 * @return true if the assignment does not contain double bookings
 	 */
-	public boolean otherConstraints(List<MeetingNode> assignedNodes) {
-		Set<MeetingSlot> used = new HashSet<MeetingSlot>(); // a list of used
-															// slots
-		for (int i = 0; i < assignedNodes.size(); i++) { // check all assigned
-															// Nodes
-			if (used.contains(assignedNodes.get(i).assignment)) // if an
-																// assignment is
-																// used,
-				return false; // the constraint is broken
-			used.add(assignedNodes.get(i).assignment); // remember assignment
+	public boolean otherConstraints(List<MeetingNode> assignedNodes, MeetingSlot[] values) {
+		for (int i = 1; i < assignedNodes.size(); i++) {
+			MeetingSlot slot = values[i];
+			for (int j = 0; j < i; j++) {
+				if (values[j] == slot)
+					return false; // the constraint is broken
+			}
 		}
 		return true; // no double bookings
 	}
 
 	/**
-	 * the constructor for the meeting problem. It is private as it can only be
-	 * used in this class. To access the meeting problem you need to use the
-	 * static method getMeetingProblem
+	 * tests a constraint of the problem, a rule with its kernel
+	 * 
+	 * @param c
+	 *            a constraint index
+	 * @param values
+	 *            values[v] is the slot of the node with index v
+	 * @param scratch
+	 *            an array of at least index.maxArity slots, used for the
+	 *            constraints that are not rules
+	 * @return true if the constraint is satisfied
 	 */
-	private MeetingProblem() {
-		variables = new HashSet<MeetingNode>();
-		constraints = new HashSet<MeetingConstraint>();
+	public boolean test(int c, MeetingSlot[] values, MeetingSlot[] scratch) {
+		MeetingKernel kernel = kernels[c];
+		if (kernel == null)
+			return index.test(c, values, scratch);
+		int[] scope = index.scope[c];
+		if (scope.length == 1)
+			return kernel.test(values[scope[0]].index);
+		return kernel.test(values[scope[0]].index, values[scope[1]].index);
+	}
+
+	/**
+	 * makes a meeting problem. The domains of the meeting nodes are the slots
+	 * they can have, they are copied by each MeetingState and are not to be
+	 * changed afterwards
+	 * 
+	 * @param variables
+	 *            the meetings
+	 * @param constraints
+	 *            the constraints between the meetings
+	 * @throws IllegalArgumentException
+	 *             if a constraint has a meeting that is not in variables, or
+	 *             the meetings have slots from different calendars
+	 */
+	public MeetingProblem(Collection<MeetingNode> variables, Collection<MeetingConstraint> constraints) {
+		this.variables = Collections.unmodifiableSet(new LinkedHashSet<MeetingNode>(variables));
+		this.constraints = Collections.unmodifiableSet(new LinkedHashSet<MeetingConstraint>(constraints));
+
+		// all meetings take their slots from one calendar
+		MeetingCalendar found = null;
+		for (MeetingNode n : this.variables) {
+			if (n.domain.calendar == null)
+				continue; // no slots
+			if (found == null)
+				found = n.domain.calendar;
+			else if (n.domain.calendar != found)
+				throw new IllegalArgumentException("The meeting " + n + " has slots from another calendar");
+		}
+		calendar = found == null ? MeetingSlot.EXAMPLE : found;
+		slotCount = calendar.size();
+
+		// number the variables and constraints and index them
+		index = new MeetingIndex(this.variables, this.constraints);
+
+		// turn the rules into kernels, the other binary constraints get
+		// support tables when they are first revised
+		kernels = MeetingKernel.compile(index, calendar, slotCount);
+		supports = new MeetingSupports(index, calendar);
+	}
+
+	/**
+	 * makes a changed copy of this problem. The meetings and constraints
+	 * that are kept are shared with the new problem, which numbers them in
+	 * its own index, so this problem, its searches and its solutions are
+	 * not affected. The constraints of a removed meeting are also removed
+	 * 
+	 * @param addedMeetings
+	 *            new meetings
+	 * @param removedMeetings
+	 *            meetings of this problem to remove
+	 * @param addedConstraints
+	 *            new constraints
+	 * @param removedConstraints
+	 *            constraints of this problem to remove
+	 * @return the changed problem
+	 * @throws IllegalArgumentException
+	 *             if a new constraint has a meeting that is not in the
+	 *             changed problem
+	 */
+	public MeetingProblem edit(Collection<MeetingNode> addedMeetings, Collection<MeetingNode> removedMeetings,
+			Collection<MeetingConstraint> addedConstraints, Collection<MeetingConstraint> removedConstraints) {
+		Set<MeetingNode> newVariables = new LinkedHashSet<MeetingNode>(variables);
+		newVariables.removeAll(removedMeetings);
+		newVariables.addAll(addedMeetings);
+		Set<MeetingConstraint> newConstraints = new LinkedHashSet<MeetingConstraint>();
+		for (MeetingConstraint mc : constraints) {
+			if (!removedConstraints.contains(mc) && newVariables.containsAll(mc.nodes))
+				newConstraints.add(mc);
+		}
+		for (MeetingConstraint mc : addedConstraints) {
+			if (!newVariables.containsAll(mc.nodes))
+				throw new IllegalArgumentException("The constraint " + mc + " has a meeting that is not in the problem");
+			newConstraints.add(mc);
+		}
+		return new MeetingProblem(newVariables, newConstraints);
+	}
+
+	/**
+	 * makes the example problem of eight meetings in two rooms
+	 * 
+	 * @return a new example problem
+	 */
+	public static MeetingProblem example() {
+		// a collection of meetings
+		final MeetingNode Meeting1 = new MeetingNode("Planlegging prosjekt A");
+		final MeetingNode Meeting2 = new MeetingNode("Planlegging prosjekt B");
+		final MeetingNode Meeting3 = new MeetingNode("Styremøte");
+		final MeetingNode Meeting4 = new MeetingNode("Kontraktmøte kunde");
+		final MeetingNode Meeting5 = new MeetingNode("Kaffemøte");
+		final MeetingNode Meeting6 = new MeetingNode("Spesialmøte 1");
+		final MeetingNode Meeting7 = new MeetingNode("Krisemøte!");
+		final MeetingNode Meeting8 = new MeetingNode("Kakemøte");
+
+		// Constraint: meeting1 should be held before meeting2
+		final MeetingConstraint M1BeforeM2 = MeetingRule.before("M1<M2", Meeting1, Meeting2);
+
+		// Constraint: meeting3 cannot be held at same time as meeting4
+		final MeetingConstraint M3UnequalM4 = MeetingRule.notSameTime("M3!=M4", Meeting3, Meeting4);
+
+		// Constraint: meeting3 needs to be held in Room3
+		final MeetingConstraint M3RoomB = MeetingRule.fixedRoom("M3R3", Meeting3, MeetingSlot.Room.RoomB.ordinal());
+
+		// Constraint: meeting 5 must be held after meeting 3
+		final MeetingConstraint M5AfterM3 = MeetingRule.after("M5AfterM3", Meeting5, Meeting3);
+
+		//  Constraint: meeting 8 cannot be at the same time as meeting 5
+		final MeetingConstraint M8UnequalM5 = MeetingRule.notSameTime("M8UnequalM5", Meeting8, Meeting5);
+
+		// Constraint: Meeting 7 must be in the morning at 08:00
+		final MeetingConstraint M7Time = MeetingRule.fixedTime("M7Time", Meeting7, MeetingSlot.Time.MORNING.ordinal());
+
+		// Constraint: Meeting 6 can only be later than 08:00 and after Meeting 7
+		final MeetingConstraint M6NotMorning = MeetingRule.notTime("M6NotMorning", Meeting6,
+				MeetingSlot.Time.MORNING.ordinal());
+		final MeetingConstraint M6AfterM7 = MeetingRule.after("M6AfterM7", Meeting6, Meeting7);
+
+		// Constraint: Meeting 8 must be in room A
+		final MeetingConstraint M8RoomA = MeetingRule.fixedRoom("M8RoomA", Meeting8, MeetingSlot.Room.RoomA.ordinal());
+
+		Set<MeetingNode> variables = new LinkedHashSet<MeetingNode>();
+		Set<MeetingConstraint> constraints = new LinkedHashSet<MeetingConstraint>();
 
 		// add all meetings to variables
 		variables.add(Meeting1);
@@ -147,22 +212,26 @@ public class MeetingProblem {
 		constraints.add(M8UnequalM5);
 		constraints.add(M7Time);
 		constraints.add(M6NotMorning);
+		constraints.add(M6AfterM7);
 		constraints.add(M8RoomA);
+
+		return new MeetingProblem(variables, constraints);
 	}
 
-	// The single meeting problem object
-	private static MeetingProblem theMeetingProblem = null;
+	/**
+	 * holds the shared example problem, it is made the first time it is used,
+	 * and the class loader makes sure that happens only once
+	 */
+	private static class Holder {
+		static final MeetingProblem theMeetingProblem = example();
+	}
 
 	/**
 	 *
-	 * @return the singleton meeting problem
+	 * @return the shared example meeting problem
 	 */
 	public static MeetingProblem getMeetingProblem() {
-		if (theMeetingProblem == null) { // if not yet initiated
-			theMeetingProblem = new MeetingProblem(); // initiate the meeting
-														// problem
-		}
-		return theMeetingProblem;
+		return Holder.theMeetingProblem;
 	}
 
 }
@@ -0,0 +1,440 @@
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds meeting problems from a text format with one record per line, with
+ * the fields of a record separated by commas. A field can be quoted with
+ * double quotes if it contains commas or quotes, a quote inside a quoted field
+ * is written as two quotes. Empty lines and lines starting with # are skipped.
+ * The records are
+ *
+ * <pre>
+ * time,name             a time period, in the order they happen
+ * room,name             a room
+ * meeting,name          a meeting that can be held at any time in any room
+ * before,m1,m2          meeting m1 is held at an earlier time than m2
+ * after,m1,m2           meeting m1 is held at a later time than m2
+ * sameTime,m1,m2        the meetings are held at the same time
+ * differentTime,m1,m2   the meetings are held at different times
+ * inRoom,m,room         meeting m is held in the room
+ * atTime,m,time         meeting m is held at the time
+ * notAtTime,m,time      meeting m is not held at the time
+ * window,m,from,to      meeting m is held at a time from from to to
+ * </pre>
+ *
+ * All times and rooms must come before the first meeting, and a meeting must
+ * come before the constraints that use it. The input is read one record at a
+ * time, so only the text of the current record is held in memory however
+ * large the input is. The slots are interned in a calendar of the loaded
+ * problem only, so their indexes run from 0 to the number of slots and can be
+ * used directly by the solver
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingProblemLoader {
+
+	/**
+	 * the input
+	 */
+	private Reader in;
+
+	/**
+	 * a character read too far, or -2 if there is none
+	 */
+	private int pushedBack = -2;
+
+	/**
+	 * the number of the line being read
+	 */
+	private int line = 0;
+
+	/**
+	 * the fields of the current record
+	 */
+	private List<String> fields = new ArrayList<String>();
+
+	/**
+	 * the text of the field being read
+	 */
+	private StringBuilder field = new StringBuilder();
+
+	/**
+	 * the time periods and rooms by name
+	 */
+	private Map<String, Integer> periods = new HashMap<String, Integer>();
+	private Map<String, Integer> rooms = new HashMap<String, Integer>();
+	private List<String> periodNames = new ArrayList<String>();
+	private List<String> roomNames = new ArrayList<String>();
+
+	/**
+	 * all slots, made when the first meeting is read
+	 */
+	private MeetingDomain slots = null;
+
+	/**
+	 * the meetings by name
+	 */
+	private Map<String, MeetingNode> meetings = new HashMap<String, MeetingNode>();
+
+	/**
+	 * the variables and constraints read so far
+	 */
+	private Set<MeetingNode> variables = new LinkedHashSet<MeetingNode>();
+	private Set<MeetingConstraint> constraints = new LinkedHashSet<MeetingConstraint>();
+
+	/**
+	 *
+	 * @param in
+	 *            the input, it is not closed
+	 */
+	private MeetingProblemLoader(Reader in) {
+		this.in = in instanceof BufferedReader ? in : new BufferedReader(in);
+	}
+
+	/**
+	 * reads a problem
+	 *
+	 * @param in
+	 *            the input, it is not closed
+	 * @return the problem
+	 * @throws IOException
+	 *             if the input cannot be read or is not in the right format
+	 */
+	public static MeetingProblem load(Reader in) throws IOException {
+		return new MeetingProblemLoader(in).load();
+	}
+
+	/**
+	 * reads a problem from a file in UTF-8
+	 *
+	 * @param file
+	 * @return the problem
+	 * @throws IOException
+	 *             if the file cannot be read or is not in the right format
+	 */
+	public static MeetingProblem load(Path file) throws IOException {
+		try (Reader in = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+			return load(in);
+		}
+	}
+
+	/**
+	 * a main method, loads a problem from a file and prints a first solution
+	 *
+	 * @param args
+	 *            the name of the file
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		MeetingProblem problem = load(Paths.get(args[0]));
+		System.out.println(problem.variables.size() + " meetings, " + problem.constraints.size() + " constraints");
+		MeetingSolver solver = new MeetingSolver(problem);
+		System.out.println("Romfordeling " + solver.search());
+	}
+
+	/**
+	 * reads all records and makes the problem
+	 *
+	 * @return the problem
+	 * @throws IOException
+	 */
+	private MeetingProblem load() throws IOException {
+		while (nextRecord()) {
+			String kind = fields.get(0);
+			if (kind.equals("time")) {
+				expect(2);
+				addName(periods, periodNames, fields.get(1), "time");
+			} else if (kind.equals("room")) {
+				expect(2);
+				addName(rooms, roomNames, fields.get(1), "room");
+			} else if (kind.equals("meeting")) {
+				expect(2);
+				addMeeting(fields.get(1));
+			} else {
+				addConstraint(kind);
+			}
+		}
+		try {
+			return new MeetingProblem(variables, constraints);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * adds a time or room
+	 *
+	 * @param numbers
+	 *            the numbers of the names read so far
+	 * @param names
+	 *            the names read so far
+	 * @param name
+	 *            the new name
+	 * @param what
+	 *            time or room
+	 * @throws IOException
+	 *             if the name is already used, or meetings have been read
+	 */
+	private void addName(Map<String, Integer> numbers, List<String> names, String name, String what)
+			throws IOException {
+		if (slots != null)
+			throw error("the " + what + " " + name + " comes after the first meeting");
+		if (numbers.containsKey(name))
+			throw error("the " + what + " " + name + " is already defined");
+		numbers.put(name, names.size());
+		names.add(name);
+	}
+
+	/**
+	 * adds a meeting that can have all slots
+	 *
+	 * @param name
+	 * @throws IOException
+	 *             if the name is already used
+	 */
+	private void addMeeting(String name) throws IOException {
+		if (slots == null) { // the first meeting, all slots are known now
+			MeetingCalendar calendar = new MeetingCalendar(); // of this problem only
+			slots = new MeetingDomain();
+			for (int t = 0; t < periodNames.size(); t++) {
+				for (int r = 0; r < roomNames.size(); r++)
+					slots.add(calendar.intern(t, periodNames.get(t), r, roomNames.get(r)));
+			}
+		}
+		if (meetings.containsKey(name))
+			throw error("the meeting " + name + " is already defined");
+		MeetingNode node = new MeetingNode(name, slots);
+		meetings.put(name, node);
+		variables.add(node);
+	}
+
+	/**
+	 * adds a constraint from the fields of the current record
+	 *
+	 * @param kind
+	 *            the kind of constraint
+	 * @throws IOException
+	 *             if the kind is unknown or a field is not defined
+	 */
+	private void addConstraint(String kind) throws IOException {
+		if (kind.equals("window"))
+			expect(4);
+		else
+			expect(3);
+		MeetingNode m = meeting(fields.get(1));
+		String argument = fields.get(2);
+		StringBuilder name = new StringBuilder(kind).append('(');
+		for (int i = 1; i < fields.size(); i++)
+			name.append(i > 1 ? "," : "").append(fields.get(i));
+		String ruleName = name.append(')').toString();
+		try {
+			constraints.add(rule(kind, ruleName, m, argument));
+		} catch (IllegalArgumentException e) { // e.g. a meeting before itself
+			throw error(e.getMessage());
+		}
+	}
+
+	/**
+	 * makes the rule of a constraint record
+	 *
+	 * @param kind
+	 *            the kind of constraint
+	 * @param ruleName
+	 *            the name of the rule
+	 * @param m
+	 *            the first meeting
+	 * @param argument
+	 *            the name of the second meeting, the room or the time
+	 * @return the rule
+	 * @throws IOException
+	 *             if the kind is unknown or a field is not defined
+	 */
+	private MeetingRule rule(String kind, String ruleName, MeetingNode m, String argument) throws IOException {
+		if (kind.equals("before"))
+			return MeetingRule.before(ruleName, m, meeting(argument));
+		if (kind.equals("after"))
+			return MeetingRule.after(ruleName, m, meeting(argument));
+		if (kind.equals("sameTime"))
+			return MeetingRule.sameTime(ruleName, m, meeting(argument));
+		if (kind.equals("differentTime"))
+			return MeetingRule.notSameTime(ruleName, m, meeting(argument));
+		if (kind.equals("inRoom"))
+			return MeetingRule.fixedRoom(ruleName, m, number(rooms, argument, "room"));
+		if (kind.equals("atTime"))
+			return MeetingRule.fixedTime(ruleName, m, number(periods, argument, "time"));
+		if (kind.equals("notAtTime"))
+			return MeetingRule.notTime(ruleName, m, number(periods, argument, "time"));
+		if (kind.equals("window"))
+			return MeetingRule.timeWindow(ruleName, m, number(periods, argument, "time"),
+					number(periods, fields.get(3), "time"));
+		throw error("unknown record " + kind);
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @return the meeting with the name
+	 * @throws IOException
+	 *             if there is no such meeting
+	 */
+	private MeetingNode meeting(String name) throws IOException {
+		MeetingNode result = meetings.get(name);
+		if (result == null)
+			throw error("unknown meeting " + name);
+		return result;
+	}
+
+	/**
+	 *
+	 * @param numbers
+	 *            the numbers of the times or rooms
+	 * @param name
+	 * @param what
+	 *            time or room
+	 * @return the number of the time or room with the name
+	 * @throws IOException
+	 *             if there is no such time or room
+	 */
+	private int number(Map<String, Integer> numbers, String name, String what) throws IOException {
+		Integer result = numbers.get(name);
+		if (result == null)
+			throw error("unknown " + what + " " + name);
+		return result;
+	}
+
+	/**
+	 * checks the number of fields of the current record
+	 *
+	 * @param count
+	 * @throws IOException
+	 *             if the record has another number of fields
+	 */
+	private void expect(int count) throws IOException {
+		if (fields.size() != count)
+			throw error(fields.get(0) + " needs " + (count - 1) + " fields, not " + (fields.size() - 1));
+	}
+
+	/**
+	 *
+	 * @param message
+	 * @return an exception telling where in the input the problem is
+	 */
+	private IOException error(String message) {
+		return new IOException("line " + line + ": " + message);
+	}
+
+	/**
+	 * reads the next record into fields, skipping empty lines and comments
+	 *
+	 * @return false at the end of the input
+	 * @throws IOException
+	 */
+	private boolean nextRecord() throws IOException {
+		while (true) {
+			fields.clear();
+			int c = read();
+			if (c < 0)
+				return false;
+			line++;
+			if (c == '#') { // a comment, skip the line
+				while (c >= 0 && c != '\n')
+					c = read();
+				continue;
+			}
+			unread(c);
+			boolean end = false;
+			while (!end)
+				end = readField();
+			if (fields.size() == 1 && fields.get(0).isEmpty())
+				continue; // an empty line
+			return true;
+		}
+	}
+
+	/**
+	 * reads a field of the current record and adds it to fields
+	 *
+	 * @return true if it was the last field of the record
+	 * @throws IOException
+	 *             if the input cannot be read or a quote is not closed
+	 */
+	private boolean readField() throws IOException {
+		field.setLength(0);
+		int c = read();
+		while (c == ' ' || c == '\t')
+			c = read();
+		boolean quoted = c == '"';
+		if (quoted) {
+			while (true) {
+				c = read();
+				if (c < 0)
+					throw error("a quote is not closed");
+				if (c == '"') {
+					c = read();
+					if (c != '"')
+						break; // the end of the field
+				}
+				if (c == '\n')
+					line++;
+				field.append((char) c);
+			}
+			while (c == ' ' || c == '\t')
+				c = read();
+		} else {
+			while (c >= 0 && c != ',' && c != '\n' && c != '\r') {
+				field.append((char) c);
+				c = read();
+			}
+		}
+		if (c == '\r') { // a windows line end
+			c = read();
+			if (c != '\n')
+				unread(c);
+			c = '\n';
+		}
+		fields.add(quoted ? field.toString() : field.toString().trim());
+		if (c == ',')
+			return false;
+		if (c >= 0 && c != '\n')
+			throw error("unexpected text after a quoted field");
+		return true;
+	}
+
+	/**
+	 *
+	 * @return the next character, or -1 at the end of the input
+	 * @throws IOException
+	 */
+	private int read() throws IOException {
+		if (pushedBack != -2) {
+			int c = pushedBack;
+			pushedBack = -2;
+			return c;
+		}
+		return in.read();
+	}
+
+	/**
+	 * puts a character back so it is read again
+	 *
+	 * @param c
+	 */
+	private void unread(int c) {
+		pushedBack = c;
+	}
+
+}
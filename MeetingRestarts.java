@@ -0,0 +1,99 @@
+
+/**
+ * A restart policy for MeetingSearch: how many failed assignments each run
+ * of the search may have before it starts again from the top of the search
+ * tree. The limits grow, so a search that restarts still explores the whole
+ * search tree in the end. LUBY gives the limits unit * (1, 1, 2, 1, 1, 2, 4,
+ * 1, ...) and GEOMETRIC the limits first * factor^run
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingRestarts {
+
+	/**
+	 * the kinds of restart policy
+	 */
+	public enum Kind {
+		LUBY, GEOMETRIC
+	};
+
+	private final Kind kind;
+	private final long first; // the limit of the first run
+	private final double factor; // the growth of the limits, for GEOMETRIC
+
+	private MeetingRestarts(Kind kind, long first, double factor) {
+		if (first < 1)
+			throw new IllegalArgumentException("The first limit must be at least 1, not " + first);
+		if (kind == Kind.GEOMETRIC && !(factor > 1))
+			throw new IllegalArgumentException("The factor must be larger than 1, not " + factor);
+		this.kind = kind;
+		this.first = first;
+		this.factor = factor;
+	}
+
+	/**
+	 *
+	 * @param unit
+	 *            the number of failures in the shortest runs
+	 * @return restarts after unit times the numbers of the Luby sequence
+	 */
+	public static MeetingRestarts luby(long unit) {
+		return new MeetingRestarts(Kind.LUBY, unit, 0);
+	}
+
+	/**
+	 *
+	 * @param first
+	 *            the number of failures in the first run
+	 * @param factor
+	 *            how much the limit grows for each run, larger than 1
+	 * @return restarts after limits that grow geometrically
+	 */
+	public static MeetingRestarts geometric(long first, double factor) {
+		return new MeetingRestarts(Kind.GEOMETRIC, first, factor);
+	}
+
+	/**
+	 *
+	 * @param run
+	 *            the number of restarts made before the run, from 0
+	 * @return the number of failed assignments the run may have
+	 */
+	public long limit(int run) {
+		if (kind == Kind.GEOMETRIC) {
+			double limit = first * Math.pow(factor, run);
+			return limit >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) limit;
+		}
+		long luby = lubyNumber(run + 1);
+		return luby > Long.MAX_VALUE / first ? Long.MAX_VALUE : first * luby;
+	}
+
+	/**
+	 *
+	 * @param i
+	 *            a position in the sequence, from 1
+	 * @return the i'th number of the Luby sequence
+	 */
+	static long lubyNumber(long i) {
+		while (true) {
+			int k = 64 - Long.numberOfLeadingZeros(i); // 2^(k-1) <= i < 2^k
+			if (i == (1L << k) - 1)
+				return 1L << (k - 1); // the end of a block
+			i -= (1L << (k - 1)) - 1; // the same as in the block before
+		}
+	}
+
+	/**
+	 *
+	 * @return the kind of restart policy
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+
+	public String toString() {
+		return kind == Kind.LUBY ? "luby(" + first + ")" : "geometric(" + first + ", " + factor + ")";
+	}
+
+}
@@ -0,0 +1,232 @@
+
+/**
+ * A constraint from a small vocabulary of meeting rules, e.g. that a meeting
+ * is held before another or in a given room. Unlike a constraint written as
+ * an anonymous class, a rule is data: each problem it is part of compiles it
+ * into a MeetingKernel that answers the test on slot indexes with a table
+ * lookup, and the kernel's support tables let arc consistency revise the
+ * domain of a rule with bitset operations
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public final class MeetingRule extends MeetingConstraint {
+
+	/**
+	 * the kinds of rules, lo and hi are the parameters of the unary rules
+	 */
+	enum Kind {
+		BEFORE(2), // first is held at an earlier time than second
+		AFTER(2), // first is held at a later time than second
+		SAME_TIME(2), // first and second are held at the same time
+		NOT_SAME_TIME(2), // first and second are held at different times
+		FIXED_ROOM(1), // first is held in room lo
+		FIXED_TIME(1), // first is held at time lo
+		NOT_TIME(1), // first is not held at time lo
+		TIME_WINDOW(1); // first is held at a time from lo to hi
+
+		/**
+		 * the number of meetings in a rule of this kind
+		 */
+		final int arity;
+
+		Kind(int arity) {
+			this.arity = arity;
+		}
+	};
+
+	/**
+	 * the kind of the rule
+	 */
+	final Kind kind;
+
+	/**
+	 * the meetings of the rule, second is null for a unary rule
+	 */
+	final MeetingNode first;
+	final MeetingNode second;
+
+	/**
+	 * the parameters of a unary rule, a room or time number
+	 */
+	final int lo;
+	final int hi;
+
+	/**
+	 *
+	 * @param name
+	 * @param kind
+	 * @param first
+	 * @param second
+	 * @param lo
+	 * @param hi
+	 */
+	private MeetingRule(String name, Kind kind, MeetingNode first, MeetingNode second, int lo, int hi) {
+		super(name, second == null ? new MeetingNode[] { first } : new MeetingNode[] { first, second });
+		if (first == second)
+			throw new IllegalArgumentException("The rule " + name + " must be about two different meetings");
+		this.kind = kind;
+		this.first = first;
+		this.second = second;
+		this.lo = lo;
+		this.hi = hi;
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param first
+	 * @param second
+	 * @return a rule that first is held at an earlier time than second
+	 */
+	public static MeetingRule before(String name, MeetingNode first, MeetingNode second) {
+		return new MeetingRule(name, Kind.BEFORE, first, second, 0, 0);
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param first
+	 * @param second
+	 * @return a rule that first is held at a later time than second
+	 */
+	public static MeetingRule after(String name, MeetingNode first, MeetingNode second) {
+		return new MeetingRule(name, Kind.AFTER, first, second, 0, 0);
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param first
+	 * @param second
+	 * @return a rule that the meetings are held at the same time
+	 */
+	public static MeetingRule sameTime(String name, MeetingNode first, MeetingNode second) {
+		return new MeetingRule(name, Kind.SAME_TIME, first, second, 0, 0);
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param first
+	 * @param second
+	 * @return a rule that the meetings are held at different times
+	 */
+	public static MeetingRule notSameTime(String name, MeetingNode first, MeetingNode second) {
+		return new MeetingRule(name, Kind.NOT_SAME_TIME, first, second, 0, 0);
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param meeting
+	 * @param room
+	 *            a room number
+	 * @return a rule that the meeting is held in the room
+	 */
+	public static MeetingRule fixedRoom(String name, MeetingNode meeting, int room) {
+		return new MeetingRule(name, Kind.FIXED_ROOM, meeting, null, room, room);
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param meeting
+	 * @param period
+	 *            a time period number
+	 * @return a rule that the meeting is held at the time
+	 */
+	public static MeetingRule fixedTime(String name, MeetingNode meeting, int period) {
+		return new MeetingRule(name, Kind.FIXED_TIME, meeting, null, period, period);
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param meeting
+	 * @param period
+	 *            a time period number
+	 * @return a rule that the meeting is not held at the time
+	 */
+	public static MeetingRule notTime(String name, MeetingNode meeting, int period) {
+		return new MeetingRule(name, Kind.NOT_TIME, meeting, null, period, period);
+	}
+
+	/**
+	 *
+	 * @param name
+	 * @param meeting
+	 * @param from
+	 *            the first allowed time period number
+	 * @param to
+	 *            the last allowed time period number
+	 * @return a rule that the meeting is held at a time from from to to
+	 */
+	public static MeetingRule timeWindow(String name, MeetingNode meeting, int from, int to) {
+		return new MeetingRule(name, Kind.TIME_WINDOW, meeting, null, from, to);
+	}
+
+	/**
+	 * tests the rule on its meetings' slots, first then second. A problem
+	 * tests its rules with their kernels instead
+	 */
+	@Override
+	public boolean constraint(MeetingSlot[] values) {
+		if (second == null)
+			return holds(kind, lo, hi, values[0]);
+		return holds(kind, values[0], values[1]);
+	}
+
+	/**
+	 * the meaning of a unary rule
+	 *
+	 * @param kind
+	 * @param lo
+	 * @param hi
+	 * @param slot
+	 *            the slot of the meeting
+	 * @return true if the rule allows the slot
+	 */
+	static boolean holds(Kind kind, int lo, int hi, MeetingSlot slot) {
+		switch (kind) {
+		case FIXED_ROOM:
+			return slot.getRoomNumber() == lo;
+		case FIXED_TIME:
+			return slot.getPeriod() == lo;
+		case NOT_TIME:
+			return slot.getPeriod() != lo;
+		case TIME_WINDOW:
+			return slot.getPeriod() >= lo && slot.getPeriod() <= hi;
+		default:
+			throw new IllegalStateException(kind + " is not a unary rule");
+		}
+	}
+
+	/**
+	 * the meaning of a binary rule
+	 *
+	 * @param kind
+	 * @param a
+	 *            the slot of the first meeting
+	 * @param b
+	 *            the slot of the second meeting
+	 * @return true if the rule allows the slots
+	 */
+	static boolean holds(Kind kind, MeetingSlot a, MeetingSlot b) {
+		int p = a.getPeriod();
+		int q = b.getPeriod();
+		switch (kind) {
+		case BEFORE:
+			return p < q;
+		case AFTER:
+			return p > q;
+		case SAME_TIME:
+			return p == q;
+		case NOT_SAME_TIME:
+			return p != q;
+		default:
+			throw new IllegalStateException(kind + " is not a binary rule");
+		}
+	}
+
+}
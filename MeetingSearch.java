@@ -0,0 +1,1486 @@
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A backtracking search engine for the meeting problem that works on one
+ * mutable assignment instead of copying a MeetingAssignment for every node.
+ * Choosing a value for a variable pushes an entry on a trail and backtracking
+ * pops it, so going up and down in the search tree does not allocate. The
+ * variable to assign next and the order its values are tried in are decided
+ * by pluggable orderings. The search can be stopped after a solution and
+ * continued later with next()
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingSearch {
+
+	/**
+	 * how much propagation is done after each assignment
+	 */
+	public enum Propagation {
+		NONE, // only test the constraints that can be tested
+		FORWARD_CHECKING, // revise the domains of the last unassigned
+							// variable in each constraint of the assigned
+							// variable
+		MAC // maintain arc consistency on the remaining problem
+	};
+
+	/**
+	 * what is known about the solutions not found yet
+	 */
+	public enum Status {
+		SEARCHING, // there may be more solutions
+		EXHAUSTED, // the whole search tree is explored, no more solutions
+		UNKNOWN // a limit stopped the search, there may be more solutions
+	};
+
+	/**
+	 * the variables, index.indexOf(variables[i]) == i
+	 */
+	private MeetingNode[] variables;
+
+	/**
+	 * which constraints involve which variables
+	 */
+	private MeetingIndex index;
+
+	/**
+	 * values[i] is the slot given to variables[i], or null if not assigned
+	 */
+	private MeetingSlot[] values;
+
+	/**
+	 * the values of the nodes of a constraint being tested
+	 */
+	private MeetingSlot[] scratch;
+
+	/**
+	 * order[d] is the index of the variable assigned at depth d
+	 */
+	private int[] order;
+
+	/**
+	 * the values to try at each depth, in the order to try them. The values
+	 * for depth d are candidates[candidateStart[d]] up to, but not including,
+	 * candidates[candidateEnd[d]]
+	 */
+	private int[] candidates;
+	private int[] candidateStart;
+	private int[] candidateEnd;
+
+	/**
+	 * cursor[d] is the position in candidates of the next value to try at
+	 * depth d
+	 */
+	private int[] cursor;
+
+	/**
+	 * ignored[v] is true for a variable a search restricted by setVariables
+	 * leaves unassigned, null if the search assigns all variables. goal is
+	 * the number of variables assigned in a solution
+	 */
+	private boolean[] ignored;
+	private int goal;
+
+	/**
+	 * remaining[c] is the number of unassigned variables in constraint c, the
+	 * constraint is tested when it becomes 0
+	 */
+	private int[] remaining;
+
+	/**
+	 * the weights of the constraints, increased when a constraint fails or
+	 * wipes out a domain
+	 */
+	private int[] weights;
+
+	/**
+	 * picks the variable to assign next
+	 */
+	private VariableOrdering variableOrdering = VariableOrderings.INPUT;
+
+	/**
+	 * decides the order the values of a variable are tried in
+	 */
+	private ValueOrdering valueOrdering = ValueOrderings.SLOT_ORDER;
+
+	/**
+	 * scratch space for value orderings, one int per slot
+	 */
+	private int[] scores;
+
+	/**
+	 * the current domains of the variables, reduced by propagation and
+	 * restored from the trail on backtracking
+	 */
+	private MeetingDomain[] domains;
+
+	/**
+	 * the constraint graph doing the propagation on the domains
+	 */
+	private MeetingConstraintGraph graph;
+
+	/**
+	 * the propagation done after each assignment
+	 */
+	private Propagation propagation = Propagation.NONE;
+
+	/**
+	 * the slots used by the assigned variables (no double booking)
+	 */
+	private MeetingDomain occupied = new MeetingDomain();
+
+	/**
+	 * the undo trail
+	 */
+	private MeetingTrail trail = new MeetingTrail();
+
+	/**
+	 * the visited states, a consistent assignment already in the store is not
+	 * expanded again
+	 */
+	private MeetingStateStore visited = new MeetingStateStore(MeetingStateStore.Mode.OFF, 0);
+
+	/**
+	 * the canonical encoding of the current assignment, the slot of
+	 * variables[i] is stored in field i whatever order they are assigned in
+	 */
+	private long[] packed;
+
+	/**
+	 * the bits per variable in packed
+	 */
+	private int bits;
+
+	/**
+	 * the fingerprint of the current assignment
+	 */
+	private long fingerprint = 0;
+
+	/**
+	 * the number of assigned variables, equal to the size of the trail
+	 */
+	private int depth = 0;
+
+	/**
+	 * true when the search has been started
+	 */
+	private boolean started = false;
+
+	/**
+	 * true when the whole search tree has been explored
+	 */
+	private boolean exhausted = false;
+
+	/**
+	 * the number of consistent assignments made during the search
+	 */
+	private long nodes = 0;
+
+	/**
+	 * the depth the search does not backtrack above, i.e. the number of
+	 * assignments made by assume()
+	 */
+	private int floor = 0;
+
+	/**
+	 * when set by another thread the search stops as if there were no more
+	 * solutions, may be null
+	 */
+	private AtomicBoolean cancelled;
+
+	/**
+	 * the System.nanoTime() when the search stops, if hasDeadline
+	 */
+	private long deadline;
+	private boolean hasDeadline = false;
+
+	/**
+	 * the number of times the search loop has run, the stop conditions are
+	 * tested every 1024 steps
+	 */
+	private long steps = 0;
+
+	/**
+	 * true if the search was stopped by a flag or the deadline before the
+	 * whole search tree was explored
+	 */
+	private boolean stopped = false;
+
+	/**
+	 * the search stops when it has made this many consistent assignments, or
+	 * when the heap in use is larger than the memory limit
+	 */
+	private long nodeLimit = Long.MAX_VALUE;
+	private long memoryLimit = Long.MAX_VALUE;
+
+	/**
+	 * the restart policy, null if the search does not restart. The search is
+	 * in run number run, which has had fails failed assignments and may have
+	 * failLimit
+	 */
+	private MeetingRestarts restarts;
+	private int run = 0;
+	private long fails = 0;
+	private long failLimit = Long.MAX_VALUE;
+
+	/**
+	 * true when a solution has been reported, from then on the search does
+	 * not restart unless it has a cost
+	 */
+	private boolean found = false;
+
+	/**
+	 * for orderings that break ties at random
+	 */
+	private Random random = new Random(0);
+
+	/**
+	 * the deepest assignment made so far: the variables bestOrder[0] up to
+	 * bestOrder[bestDepth - 1] with the slots bestValues
+	 */
+	private int[] bestOrder;
+	private MeetingSlot[] bestValues;
+	private int bestDepth = -1;
+
+	/**
+	 * the cost of the preferences of the current assignment, null if the
+	 * search does not optimize
+	 */
+	private MeetingCost cost;
+
+	/**
+	 * only assignments whose cost can get below the bound are expanded
+	 */
+	private long bound = Long.MAX_VALUE;
+
+	/**
+	 * the problem being solved
+	 */
+	private MeetingProblem problem;
+
+	/**
+	 * counts the statistics of the search, null if they are not collected
+	 */
+	private MeetingMetrics.Recorder recorder;
+
+	/**
+	 * the symmetries of the problem and how the search breaks them
+	 */
+	private MeetingSymmetry symmetry;
+	private MeetingSymmetry.Breaking breaking = MeetingSymmetry.Breaking.NONE;
+
+	/**
+	 * true if only the canonical solution of each orbit is reported
+	 */
+	private boolean modulo = false;
+
+	/**
+	 * for DYNAMIC: touched[r] is the number of assigned meetings in room r,
+	 * the untouched rooms of a class are still interchangeable
+	 */
+	private int[] touched;
+
+	/**
+	 * for DYNAMIC: tried[d] is the slot last tried at depth d, or -1.
+	 * triedAt[s] is the number of the last node where a value with
+	 * representative s was tried in an untouched room, and node[d] the
+	 * number of the node at depth d
+	 */
+	private int[] tried;
+	private int[] triedAt;
+	private int[] node;
+	private int nodeCount = 0;
+
+	/**
+	 * the nogoods learned when backjumping, null if the search backtracks
+	 * chronologically
+	 */
+	private MeetingNogoods nogoods;
+
+	/**
+	 * for backjumping: level[v] is the depth variable v was assigned at, and
+	 * holder[s] the variable given slot s. blame[v] are the depths of the
+	 * assignments that removed values from the domain of v. conflict[d] are
+	 * the depths the failures of the values tried at depth d are blamed on,
+	 * and solved[d] is true if a solution has been found below depth d, so
+	 * the search must not jump over it
+	 */
+	private int[] level;
+	private int[] holder;
+	private BitSet[] blame;
+	private BitSet[] conflict;
+	private boolean[] solved;
+
+	/**
+	 * the depths the last failure is blamed on
+	 */
+	private BitSet reason = new BitSet();
+
+	/**
+	 * the blame sets saved before they were changed, those saved at depth d
+	 * start at blameStart[d]. blameStamp[v] is the stamp of the depth where
+	 * blame[v] was last saved, each assignment gets a new stamp
+	 */
+	private int[] blameVar;
+	private BitSet[] blameSaved;
+	private int blameCount = 0;
+	private int[] blameStart;
+	private int[] blameStamp;
+	private int[] stamp;
+	private int stampCount = 0;
+
+	/**
+	 * scratch space for the assignments of a learned nogood
+	 */
+	private int[] learnVars;
+	private int[] learnSlots;
+
+	/**
+	 *
+	 * @param problem
+	 *            the meeting problem to solve
+	 */
+	public MeetingSearch(MeetingProblem problem) {
+		this(new MeetingState(problem));
+	}
+
+	/**
+	 * makes a search starting from the domains and weights of a state. The
+	 * search has its own copies of them, so the state is not changed and
+	 * several searches can start from the same state
+	 *
+	 * @param state
+	 *            the state of a solve, e.g. after arc consistency
+	 */
+	public MeetingSearch(MeetingState state) {
+		problem = state.problem;
+		index = problem.index;
+		variables = index.nodes.clone(); // index.indexOf(variables[i]) == i
+		values = new MeetingSlot[variables.length];
+		scratch = new MeetingSlot[index.maxArity];
+		order = new int[variables.length];
+		goal = variables.length;
+		cursor = new int[variables.length];
+		candidates = new int[Math.max(16, problem.slotCount)];
+		candidateStart = new int[variables.length];
+		candidateEnd = new int[variables.length];
+		scores = new int[problem.slotCount];
+		remaining = new int[index.constraints.length];
+		weights = new int[index.constraints.length];
+		for (int c = 0; c < remaining.length; c++) {
+			remaining[c] = index.scope[c].length;
+			weights[c] = state.weights[c];
+		}
+		bits = MeetingStateStore.bitsPerVariable(problem.slotCount);
+		packed = MeetingStateStore.newPacked(this.variables.length, bits);
+		domains = new MeetingDomain[variables.length];
+		for (int v = 0; v < variables.length; v++)
+			domains[v] = new MeetingDomain(state.domains[v]);
+		graph = new MeetingConstraintGraph(problem, domains, trail);
+		graph.setWeights(weights);
+		exhausted = !state.consistent; // known to have no solutions
+	}
+
+	/**
+	 * sets how the variable to assign next is picked
+	 * 
+	 * @param variableOrdering
+	 */
+	public void setVariableOrdering(VariableOrdering variableOrdering) {
+		this.variableOrdering = variableOrdering;
+	}
+
+	/**
+	 * sets the order the values of a variable are tried in
+	 * 
+	 * @param valueOrdering
+	 */
+	public void setValueOrdering(ValueOrdering valueOrdering) {
+		this.valueOrdering = valueOrdering;
+	}
+
+	/**
+	 * sets the propagation done after each assignment
+	 * 
+	 * @param propagation
+	 */
+	public void setPropagation(Propagation propagation) {
+		this.propagation = propagation;
+	}
+
+	/**
+	 * decides if MAC also propagates the no double booking constraint as a
+	 * global all different constraint
+	 * 
+	 * @param useAllDifferent
+	 */
+	public void setAllDifferent(boolean useAllDifferent) {
+		graph.setAllDifferent(useAllDifferent);
+	}
+
+	/**
+	 * makes the search break the symmetries of the problem. A DYNAMIC search
+	 * does not use the visited states, as what is searched below an
+	 * assignment depends on the values tried before it. Must be called
+	 * before the search is started
+	 * 
+	 * @param symmetry
+	 *            the symmetries of the problem
+	 * @param breaking
+	 *            how they are broken
+	 * @param modulo
+	 *            true to report only one solution of each orbit, a LEX
+	 *            search always does
+	 * @throws IllegalArgumentException
+	 *             for a DYNAMIC search modulo symmetry, as the dynamic
+	 *             pruning may cut the canonical solution of an orbit
+	 */
+	public void setSymmetry(MeetingSymmetry symmetry, MeetingSymmetry.Breaking breaking, boolean modulo) {
+		if (modulo && breaking == MeetingSymmetry.Breaking.DYNAMIC)
+			throw new IllegalArgumentException("A DYNAMIC search can not report the solutions modulo symmetry");
+		this.symmetry = symmetry;
+		this.breaking = breaking;
+		this.modulo = modulo;
+		if (breaking == MeetingSymmetry.Breaking.DYNAMIC) {
+			touched = new int[symmetry.roomClass.length];
+			tried = new int[variables.length + 1];
+			triedAt = new int[problem.slotCount];
+			node = new int[variables.length + 1];
+		}
+	}
+
+	/**
+	 * makes the search jump back to the last assignment a failure is blamed
+	 * on, and learn a nogood each time a variable runs out of values. Only
+	 * forward checking and the search without propagation can tell which
+	 * assignments removed a value, so a learning search can not have MAC, a
+	 * cost or DYNAMIC symmetry breaking. Must be called before the search is
+	 * started
+	 *
+	 * @param capacity
+	 *            the largest number of assignments in all learned nogoods
+	 * @param maxLength
+	 *            the largest number of assignments in a learned nogood
+	 */
+	public void setLearning(long capacity, int maxLength) {
+		int n = variables.length;
+		nogoods = new MeetingNogoods(n, capacity, maxLength);
+		level = new int[n];
+		holder = new int[problem.slotCount];
+		blame = new BitSet[n];
+		for (int v = 0; v < n; v++)
+			blame[v] = new BitSet();
+		conflict = new BitSet[n + 1];
+		for (int d = 0; d <= n; d++)
+			conflict[d] = new BitSet();
+		solved = new boolean[n + 1];
+		blameVar = new int[16];
+		blameSaved = new BitSet[16];
+		blameStart = new int[n + 1];
+		blameStamp = new int[n];
+		stamp = new int[n + 1];
+		learnVars = new int[n];
+		learnSlots = new int[n];
+	}
+
+	/**
+	 *
+	 * @return the learned nogoods, null if the search does not learn
+	 */
+	public MeetingNogoods getNogoods() {
+		return nogoods;
+	}
+
+	/**
+	 * restricts the search to some of the variables, e.g. a component of the
+	 * constraint graph that shares no constraints with the others. The other
+	 * variables are left unassigned and their domains are not changed, so a
+	 * solution may use the same slot as one of them. MAC would also reduce
+	 * the domains of the other variables, so the search can not have MAC, and
+	 * it can not break symmetries. Must be called before the search is
+	 * started
+	 *
+	 * @param vars
+	 *            the indexes of the variables to assign
+	 */
+	public void setVariables(int[] vars) {
+		ignored = new boolean[variables.length];
+		Arrays.fill(ignored, true);
+		for (int v : vars)
+			ignored[v] = false;
+		goal = vars.length;
+	}
+
+	/**
+	 * checks that the settings can be used together, before the search is
+	 * started
+	 *
+	 * @throws IllegalStateException
+	 *             if a learning search has MAC, a cost or DYNAMIC symmetry
+	 *             breaking, or a search restricted by setVariables has MAC or
+	 *             breaks symmetries
+	 */
+	private void checkSettings() {
+		if (nogoods != null
+				&& (propagation == Propagation.MAC || cost != null || breaking == MeetingSymmetry.Breaking.DYNAMIC))
+			throw new IllegalStateException("A learning search can not have MAC, a cost or DYNAMIC symmetry breaking");
+		if (ignored != null && (propagation == Propagation.MAC || symmetry != null))
+			throw new IllegalStateException("A search of some of the variables can not have MAC or break symmetries");
+	}
+
+	/**
+	 * sets the store used to recognize visited states
+	 * 
+	 * @param visited
+	 */
+	public void setStateStore(MeetingStateStore visited) {
+		this.visited = visited;
+	}
+
+	/**
+	 * finds the next solution
+	 *
+	 * @return the next solution, or null if there are no more solutions
+	 */
+	public MeetingAssignment next() {
+		return nextLeaf() ? solution() : null;
+	}
+
+	/**
+	 * moves the search to the next solution without making a
+	 * MeetingAssignment of it
+	 *
+	 * @return false if there are no more solutions
+	 */
+	public boolean nextLeaf() {
+		if (recorder == null)
+			return advance();
+		recorder.start();
+		try {
+			return advance();
+		} finally {
+			recorder.stop();
+		}
+	}
+
+	/**
+	 * the search loop of nextLeaf
+	 *
+	 * @return false if there are no more solutions
+	 */
+	private boolean advance() {
+		if (exhausted)
+			return false;
+		if (!started) {
+			started = true;
+			checkSettings();
+			if (depth == goal) { // the assignment is already
+												// complete, so it is the only
+												// solution
+				exhausted = true;
+				return true;
+			}
+			choose();
+		} else {
+			undo(); // go on from the last solution
+		}
+		while (true) {
+			if ((++steps & 1023) == 0) {
+				if (recorder != null)
+					recorder.tick();
+				if (stopRequested()) {
+					exhausted = true; // stopped from outside or by a limit
+					stopped = true;
+					return false;
+				}
+			}
+			if (fails >= failLimit && (!found || cost != null)) {
+				restart();
+				continue;
+			}
+			if (cursor[depth] == candidateEnd[depth]) { // no more values for
+														// this variable
+				if (nogoods != null) {
+					if (!backjump()) {
+						exhausted = true;
+						return false;
+					}
+					if (recorder != null)
+						recorder.backtracks++;
+					continue;
+				}
+				if (depth == floor) {
+					exhausted = true;
+					return false;
+				}
+				undo(); // backtrack
+				if (recorder != null)
+					recorder.backtracks++;
+				continue;
+			}
+			int slot = candidates[cursor[depth]++];
+			if (occupied.has(slot)) {
+				if (nogoods != null)
+					conflict[depth].set(level[holder[slot]]);
+				continue; // the slot is used by another meeting
+			}
+			int v = order[depth];
+			if (breaking == MeetingSymmetry.Breaking.DYNAMIC && skipSymmetric(v, slot))
+				continue; // the same subtree as a value already tried
+			assign(v, slot);
+			if (!consistent(v) || !unseen() || !ordered(v, slot) || !learned(v, slot) || !propagate(v, slot)
+					|| !belowBound()) {
+				if (nogoods != null) { // blame the failure on the earlier
+										// assignments
+					reason.clear(depth - 1);
+					conflict[depth - 1].or(reason);
+					reason.clear();
+				}
+				undo(); // broken constraint, already seen, a dead end or too
+						// expensive
+				fails++;
+				continue;
+			}
+			nodes++;
+			if (depth > bestDepth)
+				keepBest();
+			if (recorder != null) {
+				recorder.nodes++;
+				recorder.maxDepth = Math.max(recorder.maxDepth, depth);
+			}
+			if (depth == goal) {
+				if (nogoods != null)
+					Arrays.fill(solved, 0, depth, true);
+				if (report()) {
+					found = true;
+					return true;
+				}
+				undo(); // not the solution reported for its orbit
+				continue;
+			}
+			choose();
+		}
+	}
+
+	/**
+	 *
+	 * @return false if the current assignment is in the visited states
+	 */
+	private boolean unseen() {
+		if (breaking == MeetingSymmetry.Breaking.DYNAMIC || visited.add(fingerprint, packed))
+			return true;
+		if (nogoods != null)
+			reason.set(0, depth); // blamed on the whole assignment
+		return false;
+	}
+
+	/**
+	 *
+	 * @param v
+	 *            the variable just assigned
+	 * @param slot
+	 *            its slot index
+	 * @return false if a learned nogood holds or a domain was wiped out by
+	 *         one
+	 */
+	private boolean learned(int v, int slot) {
+		return nogoods == null || nogoods.assign(this, v, slot);
+	}
+
+	/**
+	 * jumps back from a variable that has run out of values to the last
+	 * assignment its failures are blamed on, and learns that the assignments
+	 * blamed can not all hold. Below a solution the search backtracks
+	 * chronologically
+	 *
+	 * @return false if no assignment below the floor is blamed, so there are
+	 *         no more solutions
+	 */
+	private boolean backjump() {
+		BitSet blamed = conflict[depth];
+		if (solved[depth])
+			blamed.set(0, depth);
+		else
+			blamed.or(blame[order[depth]]); // the values removed before
+		int target = blamed.length() - 1;
+		if (target < floor)
+			return false;
+		if (!solved[depth]) {
+			int length = 0;
+			for (int d = target; d >= 0; d = blamed.previousSetBit(d - 1)) {
+				learnVars[length] = order[d];
+				learnSlots[length++] = values[order[d]].index;
+			}
+			nogoods.learn(learnVars, learnSlots, length);
+		}
+		while (depth > target + 1)
+			undo();
+		blamed.clear(target);
+		conflict[target].or(blamed);
+		undo(); // the next value at the target depth is tried
+		return true;
+	}
+
+	/**
+	 * the blame set of a variable, saved so it can be changed
+	 *
+	 * @param w
+	 *            a variable index
+	 * @return the depths blamed for the values removed from its domain
+	 */
+	private BitSet blameOf(int w) {
+		if (blameStamp[w] != stamp[depth]) {
+			if (blameCount == blameVar.length) {
+				blameVar = Arrays.copyOf(blameVar, 2 * blameCount);
+				blameSaved = Arrays.copyOf(blameSaved, 2 * blameCount);
+			}
+			blameVar[blameCount] = w;
+			blameSaved[blameCount++] = (BitSet) blame[w].clone();
+			blameStamp[w] = stamp[depth];
+		}
+		return blame[w];
+	}
+
+	/**
+	 * blames the failure on the assignments of a nogood that holds
+	 *
+	 * @param vars
+	 *            the variables of the nogood
+	 * @param length
+	 *            the number of variables
+	 */
+	void blameNogood(int[] vars, int length) {
+		for (int i = 0; i < length; i++)
+			reason.set(level[vars[i]]);
+	}
+
+	/**
+	 * removes the slot of the last unassigned variable of a nogood
+	 *
+	 * @param w
+	 *            the variable index
+	 * @param slot
+	 *            the slot index
+	 * @param vars
+	 *            the variables of the nogood
+	 * @param length
+	 *            the number of variables
+	 * @return false if the domain was wiped out
+	 */
+	boolean pruneNogood(int w, int slot, int[] vars, int length) {
+		if (!graph.removeSlot(w, slot))
+			return true;
+		BitSet blamed = blameOf(w);
+		for (int i = 0; i < length; i++) {
+			if (vars[i] != w)
+				blamed.set(level[vars[i]]);
+		}
+		if (!domains[w].isEmpty())
+			return true;
+		reason.or(blamed);
+		return false;
+	}
+
+	/**
+	 * the dynamic symmetry breaking before a value of a variable is tried.
+	 * First the value tried before it, and the values at the same time in the
+	 * untouched rooms of its class, are removed from the other unassigned
+	 * meetings of its class, as a solution where one of them has such a
+	 * value is symmetric to one already searched. Then the value is skipped
+	 * if a value at the same time in an interchangeable untouched room has
+	 * been tried
+	 *
+	 * @param v
+	 *            the variable index
+	 * @param slot
+	 *            the slot index of the value
+	 * @return true if the value is to be skipped
+	 */
+	private boolean skipSymmetric(int v, int slot) {
+		int last = tried[depth];
+		int c = symmetry.meetingClass[v];
+		tried[depth] = -1;
+		if (last >= 0 && c >= 0) {
+			int r = symmetry.room[last];
+			int[] rooms = symmetry.roomClass[r] >= 0 && touched[r] == 0
+					? symmetry.roomClasses[symmetry.roomClass[r]] : new int[] { r };
+			for (int w : symmetry.meetingClasses[c]) {
+				if (w == v || values[w] != null)
+					continue;
+				for (int other : rooms) {
+					if (touched[other] == 0 || other == r)
+						graph.removeSlot(w, symmetry.slotAt[symmetry.time[last]][other]);
+				}
+				if (domains[w].isEmpty()) {
+					cursor[depth] = candidateEnd[depth]; // no value of v is
+															// left that can be
+															// extended
+					return true;
+				}
+			}
+		}
+		int r = symmetry.room[slot];
+		if (symmetry.roomClass[r] >= 0 && touched[r] == 0) {
+			int s = symmetry.representative[slot];
+			if (triedAt[s] == node[depth])
+				return true;
+			triedAt[s] = node[depth];
+		}
+		tried[depth] = slot;
+		return false;
+	}
+
+	/**
+	 * the lexicographic symmetry breaking after an assignment, the meetings
+	 * before v in its class get smaller slots and those after it larger slots
+	 *
+	 * @param v
+	 *            the variable index
+	 * @param slot
+	 *            the slot index given to it
+	 * @return false if some domain was wiped out
+	 */
+	private boolean ordered(int v, int slot) {
+		if (breaking != MeetingSymmetry.Breaking.LEX || symmetry.meetingClass[v] < 0)
+			return true;
+		for (int w : symmetry.meetingClasses[symmetry.meetingClass[v]]) {
+			if (values[w] != null)
+				continue;
+			MeetingDomain domain = domains[w];
+			int s = domain.nextSlot(w < v ? slot : 0);
+			while (s >= 0 && (w < v || s < slot)) {
+				graph.removeSlot(w, s);
+				if (nogoods != null)
+					blameOf(w).set(level[v]);
+				s = domain.nextSlot(s + 1);
+			}
+			if (domain.isEmpty()) {
+				if (nogoods != null)
+					reason.or(blame[w]);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @return true if the complete assignment is to be reported
+	 */
+	private boolean report() {
+		if (symmetry == null)
+			return true;
+		if (breaking == MeetingSymmetry.Breaking.LEX || modulo)
+			return symmetry.isCanonical(values);
+		return true;
+	}
+
+	/**
+	 * makes an assignment that the search will not backtrack over, e.g. to
+	 * search only a part of the search tree. Must be called before the search
+	 * is started
+	 *
+	 * @param v
+	 *            the variable index
+	 * @param slot
+	 *            the slot index of its value
+	 * @return false if the assignment is inconsistent, the search then has no
+	 *         solutions
+	 */
+	public boolean assume(int v, int slot) {
+		if (exhausted)
+			return false;
+		if (values[v] != null || occupied.has(slot) || !domains[v].has(slot)) {
+			exhausted = true;
+			return false;
+		}
+		order[depth] = v;
+		assign(v, slot);
+		floor = depth;
+		if (!consistent(v) || !ordered(v, slot) || !propagate(v, slot)) {
+			exhausted = true;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * picks the variable the search would branch on next, without changing
+	 * the search
+	 *
+	 * @return the index of the variable, or -1 if all are assigned
+	 */
+	public int branchVariable() {
+		return depth == goal ? -1 : variableOrdering.select(this);
+	}
+
+	/**
+	 *
+	 * @param v
+	 *            a variable index
+	 * @return the values of the variable in the order the search would try
+	 *         them
+	 */
+	public int[] branchValues(int v) {
+		int[] result = new int[domains[v].size()];
+		int count = valueOrdering.order(this, v, result, 0);
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * makes the search stop when a flag is set, e.g. by another thread
+	 *
+	 * @param cancelled
+	 */
+	public void setCancel(AtomicBoolean cancelled) {
+		this.cancelled = cancelled;
+	}
+
+	/**
+	 * makes the search count its statistics in a metrics object, which may
+	 * be shared with other searches of the problem
+	 *
+	 * @param metrics
+	 */
+	public void setMetrics(MeetingMetrics metrics) {
+		recorder = metrics == null ? null : metrics.recorder();
+		graph.setRecorder(recorder);
+	}
+
+	/**
+	 * makes the search stop, as if there were no more solutions, when a time
+	 * has passed
+	 *
+	 * @param deadline
+	 *            the System.nanoTime() to stop at
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+		hasDeadline = true;
+	}
+
+	/**
+	 *
+	 * @return true if the search was stopped before the whole search tree was
+	 *         explored
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 *
+	 * @return true if the cancel flag is set or the deadline has passed
+	 */
+	private boolean stopRequested() {
+		if ((cancelled != null && cancelled.get()) || (hasDeadline && System.nanoTime() - deadline > 0))
+			return true;
+		if (nodes >= nodeLimit)
+			return true;
+		if (memoryLimit == Long.MAX_VALUE)
+			return false;
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory() > memoryLimit;
+	}
+
+	/**
+	 * makes the search stop, as if there were no more solutions, when it has
+	 * made a number of consistent assignments
+	 *
+	 * @param nodeLimit
+	 */
+	public void setNodeLimit(long nodeLimit) {
+		this.nodeLimit = nodeLimit;
+	}
+
+	/**
+	 * makes the search stop, as if there were no more solutions, when the
+	 * heap in use, including garbage, gets larger than a limit
+	 *
+	 * @param bytes
+	 */
+	public void setMemoryLimit(long bytes) {
+		this.memoryLimit = bytes;
+	}
+
+	/**
+	 *
+	 * @return EXHAUSTED if there are no more solutions, UNKNOWN if the search
+	 *         was stopped before it knew, else SEARCHING
+	 */
+	public Status getStatus() {
+		return stopped ? Status.UNKNOWN : exhausted ? Status.EXHAUSTED : Status.SEARCHING;
+	}
+
+	/**
+	 * makes the search start again from the top of the search tree when a
+	 * run has had as many failed assignments as the policy allows. The
+	 * weights of the constraints and the learned nogoods are kept, so the
+	 * orderings choose differently in the next run, and with a random value
+	 * ordering the values are also tried in a new order. A solution is
+	 * reported once, as the search stops restarting when it has found one,
+	 * except when it has a cost and the bound is lowered for each solution.
+	 * Must be called before the search is started
+	 *
+	 * @param restarts
+	 *            the restart policy, null for no restarts
+	 */
+	public void setRestarts(MeetingRestarts restarts) {
+		this.restarts = restarts;
+		run = 0;
+		fails = 0;
+		failLimit = restarts == null ? Long.MAX_VALUE : restarts.limit(0);
+	}
+
+	/**
+	 *
+	 * @return the number of restarts made so far
+	 */
+	public int getRestarts() {
+		return run;
+	}
+
+	/**
+	 * goes back to the floor and starts the next run
+	 */
+	private void restart() {
+		while (depth > floor)
+			undo();
+		visited.clear(); // the states seen were only partly searched
+		run++;
+		fails = 0;
+		failLimit = restarts.limit(run);
+		choose();
+	}
+
+	/**
+	 * sets the seed of the random numbers used by the orderings
+	 *
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		random = new Random(seed);
+	}
+
+	/**
+	 *
+	 * @return the random numbers used by the orderings
+	 */
+	Random getRandom() {
+		return random;
+	}
+
+	/**
+	 * remembers the current assignment as the deepest one so far
+	 */
+	private void keepBest() {
+		if (bestOrder == null) {
+			bestOrder = new int[variables.length];
+			bestValues = new MeetingSlot[variables.length];
+		}
+		for (int d = 0; d < depth; d++) {
+			bestOrder[d] = order[d];
+			bestValues[d] = values[order[d]];
+		}
+		bestDepth = depth;
+	}
+
+	/**
+	 * the deepest assignment the search has made, e.g. to show how far a
+	 * search that was stopped came. The assigned meetings come first in the
+	 * variables of the assignment
+	 *
+	 * @return the assignment with the most meetings assigned so far, null if
+	 *         the search has made no assignments
+	 */
+	public MeetingAssignment getBestPartial() {
+		if (bestDepth < 0)
+			return null;
+		MeetingSlot[] slots = new MeetingSlot[variables.length];
+		for (int d = 0; d < bestDepth; d++)
+			slots[bestOrder[d]] = bestValues[d];
+		return partial(bestOrder, slots, bestDepth);
+	}
+
+	/**
+	 * makes an assignment of some of the variables, they come first in its
+	 * variables
+	 *
+	 * @param assigned
+	 *            the indexes of the assigned variables
+	 * @param slots
+	 *            slots[v] is the slot of variable v
+	 * @param count
+	 *            the number of assigned variables
+	 * @return the assignment
+	 */
+	private MeetingAssignment partial(int[] assigned, MeetingSlot[] slots, int count) {
+		List<MeetingNode> meetings = new ArrayList<MeetingNode>();
+		List<MeetingSlot> given = new ArrayList<MeetingSlot>();
+		boolean[] done = new boolean[variables.length];
+		for (int d = 0; d < count; d++) {
+			meetings.add(variables[assigned[d]]);
+			given.add(slots[assigned[d]]);
+			done[assigned[d]] = true;
+		}
+		for (int v = 0; v < variables.length; v++) {
+			if (!done[v])
+				meetings.add(variables[v]);
+		}
+		return new MeetingAssignment(problem, meetings, given);
+	}
+
+	/**
+	 * makes the search keep track of the cost of the preferences, e.g. for
+	 * branch and bound. Must be called before the search is started
+	 *
+	 * @param cost
+	 */
+	public void setCost(MeetingCost cost) {
+		this.cost = cost;
+	}
+
+	/**
+	 * makes the search only look for solutions that cost less than a bound,
+	 * it can be lowered at any time, e.g. each time a solution is found
+	 *
+	 * @param bound
+	 */
+	public void setBound(long bound) {
+		this.bound = bound;
+	}
+
+	/**
+	 *
+	 * @return the cost of the preferences of the current assignment, 0 if the
+	 *         search has no cost
+	 */
+	public long getCost() {
+		return cost == null ? 0 : cost.getCost();
+	}
+
+	/**
+	 *
+	 * @return true if the current assignment may be extended to a solution
+	 *         that costs less than the bound
+	 */
+	private boolean belowBound() {
+		return cost == null || cost.lowerBound(this) < bound;
+	}
+
+	/**
+	 *
+	 * @return the number of variables assigned now
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * picks the variable for the current depth and puts its values on the
+	 * candidates stack
+	 */
+	private void choose() {
+		int v = variableOrdering.select(this);
+		order[depth] = v;
+		int start = depth == 0 ? 0 : candidateEnd[depth - 1];
+		int size = domains[v].size();
+		if (start + size > candidates.length)
+			candidates = Arrays.copyOf(candidates, Math.max(2 * candidates.length, start + size));
+		candidateStart[depth] = start;
+		candidateEnd[depth] = start + valueOrdering.order(this, v, candidates, start);
+		cursor[depth] = start;
+		if (nogoods != null) {
+			conflict[depth].clear();
+			solved[depth] = false;
+		}
+		if (breaking == MeetingSymmetry.Breaking.DYNAMIC) {
+			tried[depth] = -1;
+			node[depth] = ++nodeCount;
+		}
+		if (recorder != null)
+			recorder.peakFrontier = Math.max(recorder.peakFrontier, candidateEnd[depth]);
+	}
+
+	/**
+	 * gives a variable a value and pushes it on the trail
+	 *
+	 * @param v
+	 *            the variable index
+	 * @param slot
+	 *            the slot index of the value
+	 */
+	private void assign(int v, int slot) {
+		MeetingSlot value = problem.calendar.getSlot(slot);
+		values[v] = value;
+		if (cost != null)
+			cost.assign(v, values);
+		occupied.set(slot);
+		MeetingStateStore.pack(packed, bits, v, slot);
+		fingerprint ^= MeetingStateStore.fingerprint(v, slot);
+		for (int c : index.incident[v])
+			remaining[c]--;
+		if (nogoods != null) {
+			level[v] = depth;
+			holder[slot] = v;
+			stamp[depth + 1] = ++stampCount;
+			blameStart[depth + 1] = blameCount;
+		}
+		trail.push(v);
+		depth++;
+		if (breaking == MeetingSymmetry.Breaking.DYNAMIC)
+			touched[symmetry.room[slot]]++;
+	}
+
+	/**
+	 * pops the last assignment off the trail
+	 */
+	private void undo() {
+		if (nogoods != null) {
+			while (blameCount > blameStart[depth]) {
+				blameCount--;
+				blame[blameVar[blameCount]] = blameSaved[blameCount];
+				blameSaved[blameCount] = null;
+			}
+		}
+		int v = trail.pop(domains); // also restores the domains
+		if (cost != null)
+			cost.unassign(v, values);
+		occupied.unset(values[v].index);
+		MeetingStateStore.pack(packed, bits, v, -1);
+		fingerprint ^= MeetingStateStore.fingerprint(v, values[v].index);
+		for (int c : index.incident[v])
+			remaining[c]++;
+		if (breaking == MeetingSymmetry.Breaking.DYNAMIC)
+			touched[symmetry.room[values[v].index]]--;
+		values[v] = null;
+		depth--;
+	}
+
+	/**
+	 * tests the constraints of a variable that became testable when it was
+	 * assigned
+	 *
+	 * @param v
+	 *            the variable index
+	 * @return true if none of them are broken
+	 */
+	private boolean consistent(int v) {
+		for (int c : index.incident[v]) {
+			if (remaining[c] != 0)
+				continue;
+			if (recorder != null)
+				recorder.checks[c]++;
+			if (!problem.test(c, values, scratch)) {
+				weights[c]++;
+				if (nogoods != null) {
+					for (int u : index.scope[c])
+						reason.set(level[u]);
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * propagates the last assignment to the domains of the unassigned
+	 * variables
+	 * 
+	 * @param v
+	 *            the index of the last assigned variable
+	 * @param slot
+	 *            the slot index given to it
+	 * @return false if some domain was wiped out
+	 */
+	private boolean propagate(int v, int slot) {
+		if (propagation == Propagation.NONE)
+			return true;
+		if (recorder == null)
+			return propagateDomains(v, slot);
+		long start = System.nanoTime();
+		boolean result = propagateDomains(v, slot);
+		recorder.propagationNanos += System.nanoTime() - start;
+		return result;
+	}
+
+	/**
+	 * the propagation of propagate
+	 *
+	 * @param v
+	 * @param slot
+	 * @return false if some domain was wiped out
+	 */
+	private boolean propagateDomains(int v, int slot) {
+		graph.reduceTo(v, slot);
+		if (propagation == Propagation.MAC)
+			return graph.propagate(v);
+
+		// forward checking, first no double booking
+		for (int w = 0; w < variables.length; w++) {
+			if (values[w] == null && (ignored == null || !ignored[w]) && graph.removeSlot(w, slot)) {
+				if (nogoods != null)
+					blameOf(w).set(level[v]);
+				if (domains[w].isEmpty()) {
+					if (nogoods != null)
+						reason.or(blame[w]);
+					return false;
+				}
+			}
+		}
+		// then the constraints with exactly one unassigned variable left
+		for (int c : index.incident[v]) {
+			if (remaining[c] != 1)
+				continue;
+			int[] scope = index.scope[c];
+			for (int k = 0; k < scope.length; k++) {
+				int w = scope[k];
+				if (values[w] != null)
+					continue;
+				int before = nogoods == null ? 0 : domains[w].size();
+				boolean alive = graph.revise(c, k);
+				if (nogoods != null && domains[w].size() < before) {
+					BitSet blamed = blameOf(w);
+					for (int u : scope) {
+						if (u != w)
+							blamed.set(level[u]);
+					}
+				}
+				if (!alive) {
+					if (nogoods != null)
+						reason.or(blame[w]);
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @return the current complete assignment as a MeetingAssignment
+	 */
+	MeetingAssignment solution() {
+		if (ignored != null)
+			return partial(order, values, depth);
+		return new MeetingAssignment(problem, Arrays.asList(variables), Arrays.asList(values.clone()));
+	}
+
+	/**
+	 *
+	 * @return the number of consistent assignments made so far
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	// the view of the search state used by the orderings
+
+	/**
+	 *
+	 * @return the problem being solved
+	 */
+	MeetingProblem getProblem() {
+		return problem;
+	}
+
+	/**
+	 *
+	 * @return which constraints involve which variables
+	 */
+	MeetingIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 *
+	 * @param v
+	 *            a variable index
+	 * @return true if the variable has been assigned
+	 */
+	boolean isAssigned(int v) {
+		return values[v] != null || (ignored != null && ignored[v]);
+	}
+
+	/**
+	 *
+	 * @param v
+	 *            a variable index
+	 * @return the slot of the variable, or null if it is not assigned
+	 */
+	MeetingSlot getValue(int v) {
+		return values[v];
+	}
+
+	/**
+	 *
+	 * @param v
+	 *            a variable index
+	 * @return the current domain of the variable
+	 */
+	MeetingDomain getDomain(int v) {
+		return domains[v];
+	}
+
+	/**
+	 *
+	 * @param c
+	 *            a constraint index
+	 * @return the number of unassigned variables in the constraint
+	 */
+	int getRemaining(int c) {
+		return remaining[c];
+	}
+
+	/**
+	 *
+	 * @param c
+	 *            a constraint index
+	 * @return the weight of the constraint in this search
+	 */
+	int getWeight(int c) {
+		return weights[c];
+	}
+
+	/**
+	 *
+	 * @return scratch space with room for one int per slot
+	 */
+	int[] getScores() {
+		return scores;
+	}
+
+	/**
+	 * tests a binary constraint for a pair of values
+	 *
+	 * @param c
+	 *            a constraint index
+	 * @param v
+	 *            a variable in the constraint
+	 * @param a
+	 *            a slot index for v
+	 * @param w
+	 *            the other variable in the constraint
+	 * @param b
+	 *            a slot index for w
+	 * @return true if the constraint allows the values
+	 */
+	boolean allows(int c, int v, int a, int w, int b) {
+		MeetingSlot oldV = values[v];
+		MeetingSlot oldW = values[w];
+		values[v] = problem.calendar.getSlot(a);
+		values[w] = problem.calendar.getSlot(b);
+		boolean result = problem.test(c, values, scratch);
+		values[v] = oldV;
+		values[w] = oldW;
+		return result;
+	}
+
+}
@@ -0,0 +1,274 @@
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A meeting problem that changes while it is being used, e.g. a calendar
+ * where meetings are added and rooms are closed. Changes are collected with
+ * the add and remove methods and applied by resolve(), which repairs the
+ * last solution instead of solving the changed problem from scratch. The
+ * meetings keep their slots, the new meetings are placed greedily, and a
+ * local search then moves only meetings of broken constraints or double
+ * booked slots, so most meetings keep their slot and the work depends on the
+ * size of the change. Only if the repair fails is the changed problem solved
+ * from scratch, by a local search and then by a complete search, which also
+ * shows if it has no solution.
+ *
+ * Removing meetings or constraints cannot make a solution invalid, so then
+ * nothing is searched, and adding to a problem without solutions gives a
+ * problem without solutions
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingSession {
+
+	/**
+	 * the current problem, replaced by a new one each time changes are
+	 * applied
+	 */
+	private MeetingProblem problem;
+
+	/**
+	 * the slot of each meeting in the last solution, null if there is none
+	 */
+	private Map<MeetingNode, MeetingSlot> solution;
+
+	/**
+	 * the last solution
+	 */
+	private MeetingAssignment last;
+
+	/**
+	 * true if the current problem is known to have no solution
+	 */
+	private boolean infeasible = false;
+
+	/**
+	 * the changes not yet applied
+	 */
+	private final Set<MeetingNode> addedMeetings = new LinkedHashSet<MeetingNode>();
+	private final Set<MeetingNode> removedMeetings = new LinkedHashSet<MeetingNode>();
+	private final Set<MeetingConstraint> addedConstraints = new LinkedHashSet<MeetingConstraint>();
+	private final Set<MeetingConstraint> removedConstraints = new LinkedHashSet<MeetingConstraint>();
+
+	/**
+	 * the seed of the local search, and the number of moves it may make per
+	 * changed meeting or constraint
+	 */
+	private long seed = 0;
+	private int stepsPerChange = 1000;
+
+	/**
+	 * how the last resolve() found its solution, and how many meetings that
+	 * had a slot got a new one
+	 */
+	private boolean repaired = false;
+	private int moved = 0;
+
+	/**
+	 *
+	 * @param problem
+	 *            the problem to start from, it belongs to the session from
+	 *            now on
+	 */
+	public MeetingSession(MeetingProblem problem) {
+		this.problem = problem;
+	}
+
+	/**
+	 * adds a meeting when the changes are applied
+	 *
+	 * @param meeting
+	 */
+	public void addMeeting(MeetingNode meeting) {
+		if (!removedMeetings.remove(meeting))
+			addedMeetings.add(meeting);
+	}
+
+	/**
+	 * removes a meeting and its constraints when the changes are applied
+	 *
+	 * @param meeting
+	 */
+	public void removeMeeting(MeetingNode meeting) {
+		if (!addedMeetings.remove(meeting))
+			removedMeetings.add(meeting);
+	}
+
+	/**
+	 * adds a constraint when the changes are applied
+	 *
+	 * @param constraint
+	 */
+	public void addConstraint(MeetingConstraint constraint) {
+		if (!removedConstraints.remove(constraint))
+			addedConstraints.add(constraint);
+	}
+
+	/**
+	 * removes a constraint when the changes are applied
+	 *
+	 * @param constraint
+	 */
+	public void removeConstraint(MeetingConstraint constraint) {
+		if (!addedConstraints.remove(constraint))
+			removedConstraints.add(constraint);
+	}
+
+	/**
+	 *
+	 * @param seed
+	 *            the seed of the random choices of the repair
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 *
+	 * @param stepsPerChange
+	 *            the number of moves the repair may make for each changed
+	 *            meeting or constraint before the problem is solved from
+	 *            scratch
+	 */
+	public void setStepsPerChange(int stepsPerChange) {
+		this.stepsPerChange = stepsPerChange;
+	}
+
+	/**
+	 * applies the changes and finds a solution of the changed problem,
+	 * keeping the slots of the last solution where possible
+	 *
+	 * @return a solution, or null if the problem has none
+	 * @throws IllegalArgumentException
+	 *             if the changes do not fit the problem, they are then
+	 *             forgotten and the problem is not changed
+	 */
+	public MeetingAssignment resolve() {
+		boolean relaxed = !removedMeetings.isEmpty() || !removedConstraints.isEmpty();
+		int changes = addedMeetings.size() + removedMeetings.size() + addedConstraints.size()
+				+ removedConstraints.size();
+		List<MeetingConstraint> suspects = new ArrayList<MeetingConstraint>(addedConstraints);
+		repaired = false;
+		moved = 0;
+		if (changes > 0) {
+			try {
+				problem = problem.edit(addedMeetings, removedMeetings, addedConstraints, removedConstraints);
+			} finally {
+				addedMeetings.clear();
+				removedMeetings.clear();
+				addedConstraints.clear();
+				removedConstraints.clear();
+			}
+		}
+		if (solution == null) {
+			if (infeasible && !relaxed)
+				return null; // more constraints on a problem without solutions
+			return solveFromScratch();
+		}
+		if (changes == 0)
+			return last;
+
+		MeetingNode[] nodes = problem.index.nodes;
+		MeetingSlot[] start = new MeetingSlot[nodes.length];
+		for (int v = 0; v < nodes.length; v++)
+			start[v] = solution.get(nodes[v]); // null for a new meeting
+		int[] tested = new int[suspects.size()];
+		for (int i = 0; i < tested.length; i++)
+			tested[i] = problem.index.indexOf(suspects.get(i));
+		MeetingLocalSearch repair = new MeetingLocalSearch(new MeetingState(problem));
+		repair.setSeed(seed);
+		repair.setMaxSteps((long) stepsPerChange * changes);
+		repair.setRestartAfter((long) stepsPerChange * changes);
+		MeetingAssignment result = repair.repair(start, tested);
+		if (result == null)
+			return solveFromScratch();
+		repaired = true;
+		return remember(result);
+	}
+
+	/**
+	 * solves the current problem with a local search, and if that fails with
+	 * a complete search
+	 *
+	 * @return a solution, or null if there is none
+	 */
+	private MeetingAssignment solveFromScratch() {
+		MeetingState state = new MeetingState(problem);
+		state.arcConsistency();
+		MeetingLocalSearch local = new MeetingLocalSearch(state);
+		local.setSeed(seed);
+		local.setMaxSteps((long) stepsPerChange * Math.max(1, problem.variables.size()));
+		MeetingAssignment result = local.solve();
+		if (result == null)
+			result = new MeetingSearch(state).next();
+		infeasible = result == null;
+		if (result == null) {
+			solution = null;
+			last = null;
+			return null;
+		}
+		return remember(result);
+	}
+
+	/**
+	 * keeps a solution, and counts the meetings that got a new slot
+	 *
+	 * @param result
+	 * @return the solution
+	 */
+	private MeetingAssignment remember(MeetingAssignment result) {
+		Map<MeetingNode, MeetingSlot> slots = new HashMap<MeetingNode, MeetingSlot>();
+		for (int i = 0; i < result.variables.size(); i++) {
+			MeetingNode n = result.variables.get(i);
+			MeetingSlot slot = result.assignments.get(i);
+			slots.put(n, slot);
+			if (solution != null && solution.containsKey(n) && solution.get(n) != slot)
+				moved++;
+		}
+		solution = slots;
+		last = result;
+		return result;
+	}
+
+	/**
+	 *
+	 * @return the current problem, with the changes applied so far
+	 */
+	public MeetingProblem getProblem() {
+		return problem;
+	}
+
+	/**
+	 *
+	 * @return true if the last resolve() repaired the last solution, false if
+	 *         it solved the problem from scratch or found nothing to do
+	 */
+	public boolean wasRepaired() {
+		return repaired;
+	}
+
+	/**
+	 *
+	 * @return the number of meetings that got a new slot in the last
+	 *         resolve()
+	 */
+	public int getMoved() {
+		return moved;
+	}
+
+	/**
+	 *
+	 * @return the meetings of the current problem
+	 */
+	public Collection<MeetingNode> getMeetings() {
+		return problem.variables;
+	}
+
+}
@@ -1,9 +1,12 @@
-
-
 /**
- * A class representing a meeting slot, i.e. a time and a room
+ * A class representing a meeting slot, i.e. a time and a room. The example
+ * problem uses the Time and Room enumerations, a loaded problem can have any
+ * number of time periods and rooms. Times are numbered in the order they
+ * happen, so constraints can compare them. Slots are interned in a
+ * MeetingCalendar, there is only one slot for a given time and room in a
+ * calendar, so slots can be compared with ==
  * 
- * @author Bjrnar Tessem
+ * @author Bjørnar Tessem
  *
  */
 public class MeetingSlot {
@@ -17,25 +20,89 @@ public class MeetingSlot {
 		RoomA, RoomB
 	};
 
-	// The fields of a meeting slot
+	/**
+	 * the calendar of the example slots
+	 */
+	static final MeetingCalendar EXAMPLE = new MeetingCalendar();
+
+	// The fields of a meeting slot, time and room are null if the slot is
+	// not one of the example slots
 	private Time time;
 	private Room room;
 
+	/**
+	 * the number of the time period, earlier times have smaller numbers
+	 */
+	private int period;
+
+	/**
+	 * the number of the room
+	 */
+	private int roomNumber;
+
+	/**
+	 * the names of the time period and the room
+	 */
+	private String periodName;
+	private String roomName;
+
+	/**
+	 * the calendar the slot is interned in
+	 */
+	final MeetingCalendar calendar;
+
+	/**
+	 * the dense index of this slot in its calendar, used as bit position in a
+	 * MeetingDomain
+	 */
+	final int index;
+
+	/**
+	 * makes a slot, only done by the calendar that interns it
+	 *
+	 * @param calendar
+	 *            the calendar
+	 * @param index
+	 *            the next free index of the calendar
+	 * @param period
+	 *            the number of the time period
+	 * @param periodName
+	 *            the name of the time period
+	 * @param roomNumber
+	 *            the number of the room
+	 * @param roomName
+	 *            the name of the room
+	 */
+	MeetingSlot(MeetingCalendar calendar, int index, int period, String periodName, int roomNumber, String roomName) {
+		this.calendar = calendar;
+		this.index = index;
+		this.period = period;
+		this.periodName = periodName;
+		this.roomNumber = roomNumber;
+		this.roomName = roomName;
+	}
+
+	/**
+	 * the example slots are interned in the example calendar
+	 */
+	private static MeetingSlot example(Time t, Room r) {
+		MeetingSlot slot = EXAMPLE.intern(t.ordinal(), timeName(t), r.ordinal(), roomName(r));
+		slot.time = t;
+		slot.room = r;
+		return slot;
+	}
+
 	/**
 	 * 
-	 * @param t
-	 *            the time
-	 * @param r
-	 *            the room
-	 */
-	public MeetingSlot(Time t, Room r) {
-		time = t;
-		room = r;
+	 * @return the calendar of the slot
+	 */
+	public MeetingCalendar getCalendar() {
+		return calendar;
 	}
 
 	/**
 	 * 
-	 * @return the time
+	 * @return the time, null if this is not an example slot
 	 */
 	public Time getTime() {
 		return time;
@@ -43,50 +110,92 @@ public class MeetingSlot {
 
 	/**
 	 * 
-	 * @return the room
+	 * @return the room, null if this is not an example slot
 	 */
 	public Room getRoom() {
 		return room;
 	}
 
+	/**
+	 * 
+	 * @return the number of the time period, earlier times have smaller
+	 *         numbers
+	 */
+	public int getPeriod() {
+		return period;
+	}
+
+	/**
+	 * 
+	 * @return the number of the room
+	 */
+	public int getRoomNumber() {
+		return roomNumber;
+	}
+
+	/**
+	 * 
+	 * @return the name of the time period
+	 */
+	public String getPeriodName() {
+		return periodName;
+	}
+
+	/**
+	 * 
+	 * @return the name of the room
+	 */
+	public String getRoomName() {
+		return roomName;
+	}
+
 	// Eight legal meeting slots
-	public final static MeetingSlot MORNING_A = new MeetingSlot(Time.MORNING, Room.RoomA);
-	public final static MeetingSlot MORNING_B = new MeetingSlot(Time.MORNING, Room.RoomB);
-	public final static MeetingSlot BEFORENOON_A = new MeetingSlot(Time.BEFORENOON, Room.RoomA);
-	public final static MeetingSlot BEFORENOON_B = new MeetingSlot(Time.BEFORENOON, Room.RoomB);
-	public final static MeetingSlot AFTERNOON_A = new MeetingSlot(Time.AFTERNOON, Room.RoomA);
-	public final static MeetingSlot AFTERNOON_B = new MeetingSlot(Time.AFTERNOON, Room.RoomB);
-	public final static MeetingSlot LATE_A = new MeetingSlot(Time.LATE, Room.RoomA);
-	public final static MeetingSlot LATE_B = new MeetingSlot(Time.LATE, Room.RoomB);
+	public final static MeetingSlot MORNING_A = example(Time.MORNING, Room.RoomA);
+	public final static MeetingSlot MORNING_B = example(Time.MORNING, Room.RoomB);
+	public final static MeetingSlot BEFORENOON_A = example(Time.BEFORENOON, Room.RoomA);
+	public final static MeetingSlot BEFORENOON_B = example(Time.BEFORENOON, Room.RoomB);
+	public final static MeetingSlot AFTERNOON_A = example(Time.AFTERNOON, Room.RoomA);
+	public final static MeetingSlot AFTERNOON_B = example(Time.AFTERNOON, Room.RoomB);
+	public final static MeetingSlot LATE_A = example(Time.LATE, Room.RoomA);
+	public final static MeetingSlot LATE_B = example(Time.LATE, Room.RoomB);
 
 	/**
-	 * a string representation of a meeting slot
+	 * 
+	 * @param time
+	 * @return the name of an example time
 	 */
-	public String toString() {
-		StringBuffer result = new StringBuffer();
+	private static String timeName(Time time) {
 		switch (time) {
 		case MORNING:
-			result.append("08:00");
-			break;
+			return "08:00";
 		case BEFORENOON:
-			result.append("10:00");
-			break;
+			return "10:00";
 		case AFTERNOON:
-			result.append("12:00");
-			break;
-		case LATE:
-			result.append("14:00");
-			break;
+			return "12:00";
+		default:
+			return "14:00";
 		}
-		result.append(" - ");
+	}
+
+	/**
+	 * 
+	 * @param room
+	 * @return the name of an example room
+	 */
+	private static String roomName(Room room) {
 		switch (room) {
 		case RoomA:
-			result.append("Room A");
-			break;
-		case RoomB:
-			result.append("Room B");
+			return "Room A";
+		default:
+			return "Room B";
 		}
-		return result.toString();
+	}
+
+	/**
+	 * a string representation of a meeting slot
+	 */
+	public String toString() {
+		return periodName + " - " + roomName;
 	}
 
 }
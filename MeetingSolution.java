@@ -0,0 +1,121 @@
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A solution as delivered by the streams and publishers of MeetingSolutions:
+ * just the slot index of each meeting, by node index. It is not changed
+ * after it is made, so it can be passed to other threads, and a
+ * MeetingAssignment is only made if it is asked for
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public final class MeetingSolution {
+
+	/**
+	 * the problem solved
+	 */
+	private final MeetingProblem problem;
+
+	/**
+	 * slots[v] is the slot index of the meeting with index v, or -1 if it is
+	 * not assigned
+	 */
+	private final int[] slots;
+
+	/**
+	 *
+	 * @param problem
+	 *            the problem solved
+	 * @param slots
+	 *            the slot index of each meeting, by node index. The array is
+	 *            kept, so it must not be changed afterwards
+	 */
+	MeetingSolution(MeetingProblem problem, int[] slots) {
+		this.problem = problem;
+		this.slots = slots;
+	}
+
+	/**
+	 *
+	 * @return the number of meetings
+	 */
+	public int size() {
+		return slots.length;
+	}
+
+	/**
+	 *
+	 * @param v
+	 *            a node index
+	 * @return the slot index of the meeting, or -1 if it is not assigned
+	 */
+	public int getSlotIndex(int v) {
+		return slots[v];
+	}
+
+	/**
+	 *
+	 * @param meeting
+	 *            a meeting of the problem
+	 * @return its slot, or null if it is not assigned or not in the problem
+	 */
+	public MeetingSlot getSlot(MeetingNode meeting) {
+		int v = problem.index.indexOf(meeting);
+		int slot = v < 0 ? -1 : slots[v];
+		return slot < 0 ? null : problem.calendar.getSlot(slot);
+	}
+
+	/**
+	 *
+	 * @return a copy of the slot indexes, by node index
+	 */
+	public int[] toArray() {
+		return slots.clone();
+	}
+
+	/**
+	 *
+	 * @return the solution as a MeetingAssignment, with the assigned meetings
+	 *         first
+	 */
+	public MeetingAssignment toAssignment() {
+		MeetingNode[] nodes = problem.index.nodes;
+		List<MeetingNode> variables = new ArrayList<MeetingNode>(nodes.length);
+		List<MeetingSlot> assignments = new ArrayList<MeetingSlot>(nodes.length);
+		for (int v = 0; v < nodes.length; v++) {
+			if (slots[v] >= 0) {
+				variables.add(nodes[v]);
+				assignments.add(problem.calendar.getSlot(slots[v]));
+			}
+		}
+		for (int v = 0; v < nodes.length; v++) {
+			if (slots[v] < 0)
+				variables.add(nodes[v]);
+		}
+		return new MeetingAssignment(problem, variables, assignments);
+	}
+
+	public boolean equals(Object o) {
+		if (!(o instanceof MeetingSolution))
+			return false;
+		MeetingSolution other = (MeetingSolution) o;
+		return problem == other.problem && Arrays.equals(slots, other.slots);
+	}
+
+	public int hashCode() {
+		return Arrays.hashCode(slots);
+	}
+
+	public String toString() {
+		MeetingNode[] nodes = problem.index.nodes;
+		StringBuilder result = new StringBuilder();
+		for (int v = 0; v < nodes.length; v++)
+			result.append(nodes[v].name).append(" : ").append(slots[v] < 0 ? null : problem.calendar.getSlot(slots[v]))
+					.append("  ");
+		return result.toString();
+	}
+
+}
@@ -0,0 +1,291 @@
+
+import java.util.Spliterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The solutions of a MeetingSearch, found one at a time when they are asked
+ * for, as a Spliterator for streams or a Flow.Publisher. Skipping and
+ * limiting is done in the search: a skipped solution is only moved past, no
+ * MeetingSolution is made of it, and when the limit is reached the search is
+ * not run any further. Use these rather than Stream.skip() and
+ * Stream.limit(), which can only drop solutions the search has already
+ * delivered
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingSolutions implements Spliterator<MeetingSolution> {
+
+	/**
+	 * the search finding the solutions
+	 */
+	private final MeetingSearch search;
+
+	/**
+	 * the number of solutions still to skip, and still to deliver
+	 */
+	private long skip;
+	private long remaining;
+
+	/**
+	 *
+	 * @param search
+	 *            a search that has not been started
+	 * @param skip
+	 *            the number of solutions to skip first
+	 * @param limit
+	 *            the largest number of solutions to deliver after them
+	 */
+	public MeetingSolutions(MeetingSearch search, long skip, long limit) {
+		if (skip < 0 || limit < 0)
+			throw new IllegalArgumentException("Negative skip or limit: " + skip + ", " + limit);
+		this.search = search;
+		this.skip = skip;
+		this.remaining = limit;
+	}
+
+	/**
+	 *
+	 * @param search
+	 *            a search that has not been started
+	 * @param skip
+	 *            the number of solutions to skip first
+	 * @param limit
+	 *            the largest number of solutions to deliver after them
+	 * @return a sequential stream of the solutions
+	 */
+	public static Stream<MeetingSolution> stream(MeetingSearch search, long skip, long limit) {
+		return StreamSupport.stream(new MeetingSolutions(search, skip, limit), false);
+	}
+
+	public boolean tryAdvance(Consumer<? super MeetingSolution> action) {
+		if (remaining == 0)
+			return false;
+		for (; skip > 0; skip--) {
+			if (!search.nextLeaf()) {
+				remaining = 0;
+				return false;
+			}
+		}
+		if (!search.nextLeaf()) {
+			remaining = 0;
+			return false;
+		}
+		remaining--;
+		action.accept(current());
+		return true;
+	}
+
+	/**
+	 *
+	 * @return the solution the search is at
+	 */
+	private MeetingSolution current() {
+		MeetingProblem problem = search.getProblem();
+		int[] slots = new int[problem.index.nodes.length];
+		for (int v = 0; v < slots.length; v++) {
+			MeetingSlot value = search.getValue(v);
+			slots[v] = value == null ? -1 : value.index;
+		}
+		return new MeetingSolution(problem, slots);
+	}
+
+	/**
+	 * the search is depth first, so it is not split
+	 */
+	public Spliterator<MeetingSolution> trySplit() {
+		return null;
+	}
+
+	public long estimateSize() {
+		return remaining == 0 ? 0 : Long.MAX_VALUE; // not known
+	}
+
+	public int characteristics() {
+		return ORDERED | DISTINCT | NONNULL | IMMUTABLE;
+	}
+
+	/**
+	 *
+	 * @return what is known about the solutions not delivered, UNKNOWN if a
+	 *         limit of the search stopped it
+	 */
+	public MeetingSearch.Status getStatus() {
+		return search.getStatus();
+	}
+
+	/**
+	 * makes the search of each subscriber of a publisher
+	 */
+	public interface SearchFactory {
+
+		/**
+		 *
+		 * @return a new search that has not been started
+		 */
+		MeetingSearch newSearch();
+
+	}
+
+	/**
+	 * makes a publisher of the solutions of a search. Each subscriber gets its
+	 * own search, made when it subscribes, and the search only runs while the
+	 * subscriber has asked for more solutions than it has got, so a slow
+	 * subscriber holds the search back instead of having solutions queued up
+	 * for it. The solutions are delivered by tasks in an executor, one task
+	 * at a time for each subscriber. The subscriber is completed when there
+	 * are no more solutions, when the limit is reached or when a limit of
+	 * the search stopped it
+	 *
+	 * @param factory
+	 *            makes a search for each subscriber
+	 * @param executor
+	 *            runs the tasks delivering the solutions
+	 * @param skip
+	 *            the number of solutions to skip first
+	 * @param limit
+	 *            the largest number of solutions to deliver after them
+	 * @return a publisher of the solutions
+	 */
+	public static Flow.Publisher<MeetingSolution> publisher(final SearchFactory factory, final Executor executor,
+			final long skip, final long limit) {
+		if (skip < 0 || limit < 0)
+			throw new IllegalArgumentException("Negative skip or limit: " + skip + ", " + limit);
+		return new Flow.Publisher<MeetingSolution>() {
+			public void subscribe(Flow.Subscriber<? super MeetingSolution> subscriber) {
+				if (subscriber == null)
+					throw new NullPointerException();
+				MeetingSearch search = factory.newSearch();
+				Subscription subscription = new Subscription(subscriber, search, executor, skip, limit);
+				subscriber.onSubscribe(subscription);
+			}
+		};
+	}
+
+	/**
+	 * delivers the solutions of one search to one subscriber
+	 */
+	private static class Subscription implements Flow.Subscription, Runnable {
+
+		private final Flow.Subscriber<? super MeetingSolution> subscriber;
+		private final MeetingSolutions solutions;
+		private final Executor executor;
+
+		/**
+		 * the number of solutions asked for and not delivered
+		 */
+		private final AtomicLong demand = new AtomicLong();
+
+		/**
+		 * the number of times the task has been asked to run, it runs again
+		 * until it has seen them all
+		 */
+		private final AtomicInteger wip = new AtomicInteger();
+
+		/**
+		 * set when the subscriber cancels, it also stops the search
+		 */
+		private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+		/**
+		 * a request that broke the rules, to be reported by the task
+		 */
+		private volatile long badRequest = 0;
+
+		/**
+		 * true when the subscriber has been completed, only used by the task
+		 */
+		private boolean done = false;
+
+		/**
+		 * gives a solution to the subscriber
+		 */
+		private final Consumer<MeetingSolution> onNext = new Consumer<MeetingSolution>() {
+			public void accept(MeetingSolution solution) {
+				subscriber.onNext(solution);
+			}
+		};
+
+		Subscription(Flow.Subscriber<? super MeetingSolution> subscriber, MeetingSearch search, Executor executor,
+				long skip, long limit) {
+			this.subscriber = subscriber;
+			this.executor = executor;
+			search.setCancel(cancelled);
+			solutions = new MeetingSolutions(search, skip, limit);
+		}
+
+		public void request(long n) {
+			if (n <= 0)
+				badRequest = n;
+			else {
+				long old, added;
+				do { // add, but not beyond Long.MAX_VALUE
+					old = demand.get();
+					added = old + n < 0 ? Long.MAX_VALUE : old + n;
+				} while (!demand.compareAndSet(old, added));
+			}
+			schedule();
+		}
+
+		public void cancel() {
+			cancelled.set(true);
+		}
+
+		/**
+		 * makes the task run, unless it is already running
+		 */
+		private void schedule() {
+			if (wip.getAndIncrement() == 0)
+				executor.execute(this);
+		}
+
+		/**
+		 * delivers the solutions asked for
+		 */
+		public void run() {
+			int missed = 1;
+			do {
+				deliver();
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void deliver() {
+			while (!done && !cancelled.get()) {
+				if (badRequest != 0) {
+					done = true;
+					cancelled.set(true);
+					subscriber.onError(new IllegalArgumentException("Request for " + badRequest + " solutions"));
+					return;
+				}
+				if (demand.get() == 0)
+					return; // wait for the next request
+				boolean delivered;
+				try {
+					delivered = solutions.tryAdvance(onNext);
+				} catch (RuntimeException e) {
+					done = true;
+					cancelled.set(true);
+					subscriber.onError(e);
+					return;
+				}
+				if (!delivered) {
+					done = true;
+					if (!cancelled.get())
+						subscriber.onComplete();
+					return;
+				}
+				demand.decrementAndGet();
+			}
+		}
+
+	}
+
+}
@@ -1,14 +1,16 @@
 
 
+import java.math.BigInteger;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 /**
  * The backtracking search CSP solver for the meeting problem
  * 
- * @author Bjrnar
+ * @author Bjørnar
  * 
  */
 public class MeetingSolver {
@@ -22,6 +24,8 @@ public class MeetingSolver {
 		// Get current time
 		long start = System.currentTimeMillis();
 		MeetingSolver s = new MeetingSolver(); // make a new solver
+		MeetingMetrics metrics = new MeetingMetrics(s.problem);
+		s.setMetrics(metrics); // count the statistics of the search
 		s.initialize(); // initialize
 		MeetingAssignment sol = s.search(); // find a first solution
 		int numberOfSolutions = 0;
@@ -37,30 +41,129 @@ public class MeetingSolver {
 		// Get elapsed time in seconds
 		float elapsedTimeSec = elapsedTimeMillis/1000F;
 		System.out.println("Search time: " + elapsedTimeSec);
-		System.out.println("Visited internal nodes in search: " + s.visited.size());
-		System.out.println("Number of solutions (leafs): " + numberOfSolutions);
+		System.out.println("Visited internal nodes in search: " + s.engine.getNodes());
+		System.out.println("Number of solutions (leafs): " + numberOfSolutions + ", " + s.getStatus());
+		System.out.println("Number of solutions (counted): " + s.count());
+		System.out.println(metrics);
 	}
 
 	/**
-	 * the data structure to handle the backtracking (depth-first
-	 * search-algorithm)
+	 * the kinds of search the solver can do
 	 */
-	private Stack<MeetingAssignment> frontier;
+	public enum Engine {
+		BACKTRACKING, // a complete depth first search, finds all solutions
+		LOCAL_SEARCH // min-conflicts with tabu, finds one solution fast
+	};
 
 	/**
-	 * visited assignments
+	 * the kind of search done by search()
 	 */
-	private HashSet<MeetingAssignment> visited = new HashSet<MeetingAssignment>();
+	private Engine kind = Engine.BACKTRACKING;
 
 	/**
-	 * the variables of the problem
+	 * the local search, used instead of the backtracking if kind is
+	 * LOCAL_SEARCH
 	 */
-	private Set<MeetingNode> variables;
+	private MeetingLocalSearch localSearch;
 
 	/**
-	 * the constraints of the problem
+	 * the seed of the random choices of the local search and of a random
+	 * value ordering
 	 */
-	private Set<MeetingConstraint> constraints;
+	private long seed = 0;
+
+	/**
+	 * the engine doing the backtracking (depth-first search-algorithm) on a
+	 * single trailed assignment
+	 */
+	private MeetingSearch engine;
+
+	/**
+	 * visited assignments, not remembered unless setVisitedMode is called.
+	 * The capacity is also used for the stores of streams and publishers
+	 */
+	private MeetingStateStore visited = new MeetingStateStore(MeetingStateStore.Mode.OFF, 0);
+	private int visitedCapacity = 0;
+
+	/**
+	 * the statistics of the searches, null if they are not collected
+	 */
+	private MeetingMetrics metrics;
+
+	/**
+	 * the propagation done after each assignment in the search
+	 */
+	private MeetingSearch.Propagation propagation = MeetingSearch.Propagation.FORWARD_CHECKING;
+
+	/**
+	 * picks the variable to assign next in the search
+	 */
+	private VariableOrdering variableOrdering = VariableOrderings.DOM_WDEG;
+
+	/**
+	 * decides the order the values of a variable are tried in the search
+	 */
+	private ValueOrdering valueOrdering = ValueOrderings.SLOT_ORDER;
+
+	/**
+	 * how the search breaks the symmetries of the problem, and if it reports
+	 * only one solution of each orbit
+	 */
+	private MeetingSymmetry.Breaking symmetryBreaking = MeetingSymmetry.Breaking.NONE;
+	private boolean moduloSymmetry = false;
+
+	/**
+	 * the symmetries of the problem, found the first time they are needed
+	 */
+	private MeetingSymmetry symmetry;
+
+	/**
+	 * the largest number of assignments in all nogoods learned by the search,
+	 * and in one nogood. A capacity of 0 turns learning off
+	 */
+	private long learningCapacity = 0;
+	private int learningLength = 0;
+
+	/**
+	 * the restart policy of the search, null for no restarts
+	 */
+	private MeetingRestarts restarts;
+
+	/**
+	 * the limits of a search, Long.MAX_VALUE for no limit
+	 */
+	private long nodeLimit = Long.MAX_VALUE;
+	private long timeLimit = Long.MAX_VALUE; // milliseconds
+	private long memoryLimit = Long.MAX_VALUE; // bytes
+
+	/**
+	 * the problem to solve
+	 */
+	private MeetingProblem problem;
+
+	/**
+	 * the state of the solve, made by initialize
+	 */
+	private MeetingState state;
+
+	/**
+	 * makes a solver for the example problem
+	 */
+	public MeetingSolver() {
+		this(MeetingProblem.getMeetingProblem());
+	}
+
+	/**
+	 * makes a solver for a problem. Each solver has its own state, so several
+	 * solvers can solve the same problem or different problems at the same
+	 * time
+	 * 
+	 * @param problem
+	 *            the problem to solve
+	 */
+	public MeetingSolver(MeetingProblem problem) {
+		this.problem = problem;
+	}
 
 	/**
 	 * runs an initialization of search
@@ -68,13 +171,275 @@ public class MeetingSolver {
 	 */
 	private void initialize() {
 		// first of all, runs an arcConsistency algorithm
-		// on the same problem
-		MeetingConstraintGraph cg = new MeetingConstraintGraph();
-		cg.arcConsistency();
+		// on a new state of the problem
+		state = new MeetingState(problem);
+		state.arcConsistency();
+	}
 
-		// initiates the variables and constraints
-		variables = MeetingProblem.getMeetingProblem().variables;
-		constraints = MeetingProblem.getMeetingProblem().constraints;
+	/**
+	 * decides how visited assignments are remembered in later searches
+	 * 
+	 * @param mode
+	 *            off, exact or fingerprint only
+	 * @param capacity
+	 *            the maximal number of assignments remembered, older ones are
+	 *            forgotten when the store is full
+	 */
+	public void setVisitedMode(MeetingStateStore.Mode mode, int capacity) {
+		visited = new MeetingStateStore(mode, capacity);
+		visitedCapacity = capacity;
+	}
+
+	/**
+	 * decides how much propagation later searches do after each assignment.
+	 * A backtracking search with MAC does not learn, see setLearning, and a
+	 * decomposition does forward checking instead of MAC
+	 * 
+	 * @param propagation
+	 *            none, forward checking or maintaining arc consistency
+	 */
+	public void setPropagation(MeetingSearch.Propagation propagation) {
+		this.propagation = propagation;
+	}
+
+	/**
+	 * decides how later searches pick the variable to assign next
+	 * 
+	 * @param variableOrdering
+	 *            e.g. one of the VariableOrderings
+	 */
+	public void setVariableOrdering(VariableOrdering variableOrdering) {
+		this.variableOrdering = variableOrdering;
+	}
+
+	/**
+	 * decides the order later searches try the values of a variable in
+	 * 
+	 * @param valueOrdering
+	 *            e.g. one of the ValueOrderings
+	 */
+	public void setValueOrdering(ValueOrdering valueOrdering) {
+		this.valueOrdering = valueOrdering;
+	}
+
+	/**
+	 * makes later searches count their statistics
+	 * 
+	 * @param metrics
+	 *            the metrics to count in, e.g. new MeetingMetrics(problem),
+	 *            or null to stop counting
+	 */
+	public void setMetrics(MeetingMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * decides the kind of search later calls to search() do
+	 * 
+	 * @param kind
+	 *            backtracking or local search
+	 */
+	public void setEngine(Engine kind) {
+		this.kind = kind;
+	}
+
+	/**
+	 * 
+	 * @param seed
+	 *            the seed of the random choices of a local search or of a
+	 *            random value ordering
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * sets how the search breaks the symmetries of interchangeable rooms and
+	 * meetings. A search with DYNAMIC breaking does not learn, see
+	 * setLearning
+	 * 
+	 * @param breaking
+	 *            none, lexicographic ordering or dynamic
+	 * @throws IllegalArgumentException
+	 *             for DYNAMIC breaking when the solutions are reported modulo
+	 *             symmetry, see setModuloSymmetry
+	 */
+	public void setSymmetryBreaking(MeetingSymmetry.Breaking breaking) {
+		if (moduloSymmetry && breaking == MeetingSymmetry.Breaking.DYNAMIC)
+			throw new IllegalArgumentException("DYNAMIC breaking can not report the solutions modulo symmetry");
+		this.symmetryBreaking = breaking;
+	}
+
+	/**
+	 * decides if the search reports only the canonical solution of each
+	 * orbit, i.e. the solutions modulo symmetry. It can be done with no or
+	 * with LEX symmetry breaking, but not with DYNAMIC, whose pruning may cut
+	 * the canonical solution of an orbit
+	 * 
+	 * @param modulo
+	 * @throws IllegalArgumentException
+	 *             if modulo is true and the symmetry breaking is DYNAMIC
+	 */
+	public void setModuloSymmetry(boolean modulo) {
+		if (modulo && symmetryBreaking == MeetingSymmetry.Breaking.DYNAMIC)
+			throw new IllegalArgumentException("DYNAMIC breaking can not report the solutions modulo symmetry");
+		this.moduloSymmetry = modulo;
+	}
+
+	/**
+	 * makes the search jump back over assignments that did not cause a
+	 * failure, and learn nogoods from the failures. Only a search with
+	 * forward checking or no propagation can tell which assignments caused a
+	 * failure, so a search with MAC or with DYNAMIC symmetry breaking, and
+	 * the optimizer, backtrack chronologically without learning
+	 * 
+	 * @param capacity
+	 *            the largest number of assignments in all learned nogoods, 0
+	 *            for no learning
+	 * @param maxLength
+	 *            the largest number of assignments in a learned nogood
+	 */
+	public void setLearning(long capacity, int maxLength) {
+		this.learningCapacity = capacity;
+		this.learningLength = maxLength;
+	}
+
+	/**
+	 * makes the search start again from the top when a run has failed too
+	 * often, e.g. with a random value ordering
+	 * 
+	 * @param restarts
+	 *            the restart policy, null for no restarts
+	 */
+	public void setRestarts(MeetingRestarts restarts) {
+		this.restarts = restarts;
+	}
+
+	/**
+	 * limits each search, so that it gives up with the status UNKNOWN
+	 * instead of running for ever. The limits are also given to each search
+	 * of a parallel search and of a decomposition, and the time counts from
+	 * when they are made. The local search gives up after as many moves as
+	 * the node limit and when the time is up, it has no memory limit as it
+	 * keeps only one assignment
+	 * 
+	 * @param nodes
+	 *            the largest number of consistent assignments, or of moves
+	 *            of a local search
+	 * @param millis
+	 *            the time from the start of the search in milliseconds
+	 * @param bytes
+	 *            the largest heap in use
+	 */
+	public void setLimits(long nodes, long millis, long bytes) {
+		nodeLimit = nodes;
+		timeLimit = millis;
+		memoryLimit = bytes;
+	}
+
+	/**
+	 * 
+	 * @return EXHAUSTED if all solutions are found, UNKNOWN if a limit
+	 *         stopped the search, else SEARCHING. A local search finds only
+	 *         one solution and never knows if there are more, so it is
+	 *         SEARCHING if it found it and UNKNOWN if it gave up
+	 */
+	public MeetingSearch.Status getStatus() {
+		if (localSearch != null)
+			return localSearch.getViolations() == 0 ? MeetingSearch.Status.SEARCHING : MeetingSearch.Status.UNKNOWN;
+		return engine == null ? MeetingSearch.Status.SEARCHING : engine.getStatus();
+	}
+
+	/**
+	 * 
+	 * @return the deepest assignment of the last backtracking search, e.g.
+	 *         when it was stopped by a limit, or null
+	 */
+	public MeetingAssignment getBestPartial() {
+		return localSearch != null || engine == null ? null : engine.getBestPartial();
+	}
+
+	/**
+	 * 
+	 * @return the symmetries of the problem
+	 */
+	public MeetingSymmetry getSymmetry() {
+		if (symmetry == null)
+			symmetry = new MeetingSymmetry(problem);
+		return symmetry;
+	}
+
+	/**
+	 * makes a parallel search with the settings of this solver
+	 * 
+	 * @param pool
+	 *            the pool running the search tasks
+	 * @return a parallel search on the initialized problem
+	 */
+	public MeetingParallelSearch parallelSearch(ForkJoinPool pool) {
+		if (state == null)
+			initialize();
+		MeetingParallelSearch result = new MeetingParallelSearch(state, pool);
+		result.setPropagation(propagation);
+		result.setVariableOrdering(variableOrdering);
+		result.setValueOrdering(valueOrdering);
+		result.setMetrics(metrics);
+		result.setNodeLimit(nodeLimit);
+		result.setMemoryLimit(memoryLimit);
+		if (timeLimit != Long.MAX_VALUE)
+			result.setDeadline(System.nanoTime() + timeLimit * 1000000L);
+		return result;
+	}
+
+	/**
+	 * makes a search that solves the independent components of the problem
+	 * at the same time, with the settings of this solver
+	 * 
+	 * @param pool
+	 *            the pool running the searches of the components
+	 * @return a decomposed search on the initialized problem
+	 */
+	public MeetingDecomposition decomposition(ForkJoinPool pool) {
+		if (state == null)
+			initialize();
+		MeetingDecomposition result = new MeetingDecomposition(state, pool);
+		result.setPropagation(propagation);
+		result.setVariableOrdering(variableOrdering);
+		result.setValueOrdering(valueOrdering);
+		result.setMetrics(metrics);
+		result.setNodeLimit(nodeLimit);
+		result.setMemoryLimit(memoryLimit);
+		if (timeLimit != Long.MAX_VALUE)
+			result.setDeadline(System.nanoTime() + timeLimit * 1000000L);
+		return result;
+	}
+
+	/**
+	 * makes a branch and bound search for the best solution with the settings
+	 * of this solver, the value ordering is by cost
+	 * 
+	 * @param preferences
+	 *            preferences about the meetings of the problem
+	 * @return an optimizer on the initialized problem
+	 */
+	public MeetingOptimizer optimizer(Collection<MeetingPreference> preferences) {
+		if (state == null)
+			initialize();
+		MeetingOptimizer result = new MeetingOptimizer(state, preferences);
+		result.setPropagation(propagation);
+		result.setVariableOrdering(variableOrdering);
+		return result;
+	}
+
+	/**
+	 * counts the solutions without making them, by components and caching
+	 * 
+	 * @return the number of solutions of the initialized problem
+	 */
+	public BigInteger count() {
+		if (state == null)
+			initialize();
+		return new MeetingCounter(state).count();
 	}
 
 	/**
@@ -83,49 +448,110 @@ public class MeetingSolver {
 	 * @return a solution meeting assignment
 	 */
 	public MeetingAssignment search() {
-		initializeFrontier();
+		if (state == null)
+			initialize();
+		if (kind == Engine.LOCAL_SEARCH) {
+			localSearch = new MeetingLocalSearch(state);
+			localSearch.setSeed(seed);
+			if (nodeLimit != Long.MAX_VALUE)
+				localSearch.setMaxSteps(nodeLimit);
+			if (timeLimit != Long.MAX_VALUE)
+				localSearch.setTimeBudget(timeLimit);
+			return localSearch.solve();
+		}
+		localSearch = null;
+		visited.clear();
+		engine = newSearch(visited);
 		return continueSearch();
 	}
 
 	/**
-	 * make frontier an empty stack and pushes an initial meeting assignment (0
-	 * assigments)
+	 * makes a backtracking search with the settings of this solver
+	 * 
+	 * @param store
+	 *            the store of the visited states of the search
+	 * @return the search, not started
 	 */
-	private void initializeFrontier() {
-		frontier = new Stack<MeetingAssignment>();
-		frontier.push(new MeetingAssignment(variables, constraints));
+	private MeetingSearch newSearch(MeetingStateStore store) {
+		if (state == null)
+			initialize();
+		MeetingSearch result = new MeetingSearch(state);
+		result.setStateStore(store);
+		result.setPropagation(propagation);
+		result.setVariableOrdering(variableOrdering);
+		result.setValueOrdering(valueOrdering);
+		result.setMetrics(metrics);
+		if (symmetryBreaking != MeetingSymmetry.Breaking.NONE || moduloSymmetry)
+			result.setSymmetry(getSymmetry(), symmetryBreaking, moduloSymmetry);
+		if (learningCapacity > 0 && propagation != MeetingSearch.Propagation.MAC
+				&& symmetryBreaking != MeetingSymmetry.Breaking.DYNAMIC)
+			result.setLearning(learningCapacity, learningLength);
+		result.setSeed(seed);
+		result.setRestarts(restarts);
+		result.setNodeLimit(nodeLimit);
+		result.setMemoryLimit(memoryLimit);
+		if (timeLimit != Long.MAX_VALUE)
+			result.setDeadline(System.nanoTime() + timeLimit * 1000000L);
+		return result;
 	}
 
-	public MeetingAssignment continueSearch() {
-		while (!frontier.isEmpty()) { // still some nodes to be checked
-			MeetingAssignment node = frontier.pop();// get the top node of the
-													// stack
-			if (goal(node)) { // if it is a goal node we are finished
-				return node;
-			}
-			updateFrontier(node); // if not find new node for the stack
-		}
-		return null; // if no solutions found return null
-	}
-
-	private void updateFrontier(MeetingAssignment node) {
-		Collection<MeetingAssignment> newNodes = node.neighbours(); // find
-																	// neighbours
-																	// of node
-		visited.add(node); // add node to visited
-		for (MeetingAssignment n : newNodes) {
-			if (!visited.contains(n)) { // if a node n has been visited we do
-										// not need to do it again
-				frontier.push(n); // add n to the frontier stack
+	/**
+	 * makes a stream of the solutions, found by a new search with the
+	 * settings of this solver as the stream is consumed. Skipping and
+	 * limiting is done by the search, e.g. solutions(0, 10) only searches for
+	 * the first ten solutions
+	 * 
+	 * @param skip
+	 *            the number of solutions to skip first
+	 * @param limit
+	 *            the largest number of solutions after them
+	 * @return a sequential stream of the solutions
+	 */
+	public Stream<MeetingSolution> solutions(long skip, long limit) {
+		return MeetingSolutions.stream(newSearch(newStateStore()), skip, limit);
+	}
+
+	/**
+	 * makes a publisher of the solutions, each subscriber gets a new search
+	 * with the settings of this solver, which searches for solutions as the
+	 * subscriber requests them
+	 * 
+	 * @param executor
+	 *            runs the tasks delivering the solutions
+	 * @param skip
+	 *            the number of solutions to skip first
+	 * @param limit
+	 *            the largest number of solutions after them
+	 * @return the publisher
+	 */
+	public Flow.Publisher<MeetingSolution> publisher(Executor executor, long skip, long limit) {
+		return MeetingSolutions.publisher(new MeetingSolutions.SearchFactory() {
+			public MeetingSearch newSearch() {
+				synchronized (MeetingSolver.this) {
+					return MeetingSolver.this.newSearch(newStateStore());
+				}
 			}
-		}
+		}, executor, skip, limit);
+	}
+
+	/**
+	 * 
+	 * @return an empty store for the visited states of a search of its own
+	 */
+	private MeetingStateStore newStateStore() {
+		return new MeetingStateStore(visited.getMode(), visitedCapacity);
 	}
 
-	private boolean goal(MeetingAssignment node) {
-		return (node != null && // a null node is not a goal
-				node.allAssigned() && // a node need to have all guests assigned
-										// (invited or not)
-				node.consistent()); // a node need to be consistent with the
-									// requirements in its definition
+	/**
+	 * continues the search from the last solution found, a local search
+	 * finds only one solution
+	 * 
+	 * @return the next solution meeting assignment, or null if there are no
+	 *         more solutions
+	 */
+	public MeetingAssignment continueSearch() {
+		if (localSearch != null)
+			return null;
+		return engine.next();
 	}
 }
@@ -0,0 +1,78 @@
+
+import java.util.Arrays;
+
+/**
+ * The state of one solve of a meeting problem, i.e. everything that changes
+ * while the problem is solved. The problem itself is never changed, so any
+ * number of states, in any number of threads, can be made from the same
+ * problem. A state is used by one thread at a time, the searches started from
+ * it copy what they change
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingState {
+
+	/**
+	 * the problem being solved
+	 */
+	final MeetingProblem problem;
+
+	/**
+	 * the domains of the variables, domains[v] is the domain of the node with
+	 * index v. They start as copies of the node domains and are reduced by
+	 * arcConsistency()
+	 */
+	final MeetingDomain[] domains;
+
+	/**
+	 * the weights of the constraints by constraint index, increased each time
+	 * a constraint wipes out a domain. Used to order arcs and variables so
+	 * that hard constraints are dealt with first
+	 */
+	final int[] weights;
+
+	/**
+	 * false when arc consistency has found that the problem has no solutions
+	 */
+	boolean consistent = true;
+
+	/**
+	 *
+	 * @param problem
+	 *            the problem to solve
+	 */
+	public MeetingState(MeetingProblem problem) {
+		this.problem = problem;
+		MeetingIndex index = problem.index;
+		domains = new MeetingDomain[index.nodes.length];
+		for (int v = 0; v < domains.length; v++)
+			domains[v] = new MeetingDomain(index.nodes[v].domain, problem.slotCount);
+		weights = new int[index.constraints.length];
+		Arrays.fill(weights, 1);
+	}
+
+	/**
+	 * runs the arc consistency algorithm on the domains of this state,
+	 * including the all different propagation of the no double booking
+	 * constraint
+	 *
+	 * @return false if some domain was wiped out or the meetings cannot all
+	 *         have different slots, the problem then has no solutions
+	 */
+	public boolean arcConsistency() {
+		MeetingConstraintGraph cg = new MeetingConstraintGraph(this);
+		if (!cg.arcConsistency())
+			consistent = false;
+		return consistent;
+	}
+
+	/**
+	 *
+	 * @return the problem being solved
+	 */
+	public MeetingProblem getProblem() {
+		return problem;
+	}
+
+}
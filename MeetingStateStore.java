@@ -0,0 +1,257 @@
+
+import java.util.Arrays;
+
+/**
+ * A bounded store of visited search states. A state is a partial assignment
+ * encoded canonically as a packed array of slot indexes, one field per
+ * variable, together with a 64 bit fingerprint of it. The store can be off,
+ * exact (states are compared on the packed encoding) or fingerprint only
+ * (states are compared on the fingerprint alone, which uses less memory but
+ * may in rare cases take a new state for a visited one). When the store is
+ * full, an old state is forgotten using the clock algorithm, so memory stays
+ * flat however long the search runs
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingStateStore {
+
+	/**
+	 * the ways visited states can be remembered
+	 */
+	public enum Mode {
+		OFF, EXACT, FINGERPRINT
+	};
+
+	/**
+	 * how states are remembered
+	 */
+	private Mode mode;
+
+	/**
+	 * the maximal number of states remembered
+	 */
+	private int capacity;
+
+	/**
+	 * the fingerprint of each remembered state
+	 */
+	private long[] fingerprints;
+
+	/**
+	 * the packed encoding of each remembered state (only in EXACT mode)
+	 */
+	private long[][] keys;
+
+	/**
+	 * the clock reference bit of each remembered state
+	 */
+	private boolean[] referenced;
+
+	/**
+	 * hash table with linear probing from fingerprint to state number + 1, 0
+	 * means an empty place
+	 */
+	private int[] table;
+
+	/**
+	 * the number of remembered states
+	 */
+	private int size = 0;
+
+	/**
+	 * the clock hand, the next state considered for eviction
+	 */
+	private int hand = 0;
+
+	/**
+	 *
+	 * @param mode
+	 *            how states are remembered
+	 * @param capacity
+	 *            the maximal number of states remembered
+	 */
+	public MeetingStateStore(Mode mode, int capacity) {
+		this.mode = mode;
+		this.capacity = mode == Mode.OFF ? 0 : Math.max(1, capacity);
+		fingerprints = new long[this.capacity];
+		referenced = new boolean[this.capacity];
+		if (mode == Mode.EXACT)
+			keys = new long[this.capacity][];
+		table = new int[Integer.highestOneBit(Math.max(1, 2 * this.capacity - 1)) << 1];
+	}
+
+	/**
+	 *
+	 * @return how states are remembered
+	 */
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 *
+	 * @return the number of remembered states
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * remembers a state
+	 *
+	 * @param fingerprint
+	 *            the fingerprint of the state
+	 * @param packed
+	 *            the packed encoding of the state, it is copied if it needs to
+	 *            be kept
+	 * @return true if the state was not remembered from before
+	 */
+	public boolean add(long fingerprint, long[] packed) {
+		if (mode == Mode.OFF)
+			return true;
+		int mask = table.length - 1;
+		int pos = hash(fingerprint) & mask;
+		while (table[pos] != 0) { // look for the state
+			int s = table[pos] - 1;
+			if (fingerprints[s] == fingerprint && (mode == Mode.FINGERPRINT || Arrays.equals(keys[s], packed))) {
+				referenced[s] = true;
+				return false; // visited
+			}
+			pos = (pos + 1) & mask;
+		}
+		int s;
+		if (size < capacity) { // there is still room
+			s = size++;
+		} else { // forget a state to make room
+			s = evict();
+			pos = hash(fingerprint) & mask; // the table may have moved
+			while (table[pos] != 0)
+				pos = (pos + 1) & mask;
+		}
+		fingerprints[s] = fingerprint;
+		if (mode == Mode.EXACT)
+			keys[s] = packed.clone();
+		referenced[s] = false;
+		table[pos] = s + 1;
+		return true;
+	}
+
+	/**
+	 * forgets everything
+	 */
+	public void clear() {
+		Arrays.fill(table, 0);
+		if (keys != null)
+			Arrays.fill(keys, null);
+		size = 0;
+		hand = 0;
+	}
+
+	/**
+	 * finds a state that has not been referenced since the clock hand last
+	 * passed it, and removes it from the table
+	 *
+	 * @return the number of the state that can be reused
+	 */
+	private int evict() {
+		while (referenced[hand]) { // give referenced states a second chance
+			referenced[hand] = false;
+			hand = (hand + 1) % capacity;
+		}
+		int victim = hand;
+		hand = (hand + 1) % capacity;
+
+		// find the victim in the table and remove it by shifting the
+		// following entries of its probe sequence backwards
+		int mask = table.length - 1;
+		int pos = hash(fingerprints[victim]) & mask;
+		while (table[pos] != victim + 1)
+			pos = (pos + 1) & mask;
+		int next = (pos + 1) & mask;
+		while (table[next] != 0) {
+			int home = hash(fingerprints[table[next] - 1]) & mask;
+			// the entry at next can move to pos if its home is not between
+			// pos (exclusive) and next (inclusive)
+			if (((next - home) & mask) >= ((next - pos) & mask)) {
+				table[pos] = table[next];
+				pos = next;
+			}
+			next = (next + 1) & mask;
+		}
+		table[pos] = 0;
+		return victim;
+	}
+
+	/**
+	 *
+	 * @param fingerprint
+	 * @return a table position for the fingerprint
+	 */
+	private static int hash(long fingerprint) {
+		return (int) (fingerprint ^ (fingerprint >>> 32));
+	}
+
+	/**
+	 * the fingerprint contribution of a single variable assignment. The
+	 * fingerprint of a state is the exclusive or of the contributions of its
+	 * assignments, so it can be updated in both directions in constant time
+	 *
+	 * @param variable
+	 *            the position of the variable
+	 * @param slot
+	 *            the slot index of its value
+	 * @return a well mixed 64 bit value
+	 */
+	public static long fingerprint(int variable, int slot) {
+		long z = ((long) variable << 32 | slot) + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 *
+	 * @param slots
+	 *            the number of different slots
+	 * @return the number of bits needed per variable in a packed state, where 0
+	 *         means unassigned and slot index i is stored as i + 1
+	 */
+	public static int bitsPerVariable(int slots) {
+		return 64 - Long.numberOfLeadingZeros(slots);
+	}
+
+	/**
+	 *
+	 * @param variables
+	 *            the number of variables
+	 * @param bits
+	 *            the bits per variable
+	 * @return an empty packed state
+	 */
+	public static long[] newPacked(int variables, int bits) {
+		int perWord = 64 / bits;
+		return new long[(variables + perWord - 1) / perWord];
+	}
+
+	/**
+	 * stores the value of a variable in a packed state
+	 *
+	 * @param packed
+	 *            the packed state
+	 * @param bits
+	 *            the bits per variable
+	 * @param variable
+	 *            the position of the variable
+	 * @param slot
+	 *            the slot index of the value, or -1 for unassigned
+	 */
+	public static void pack(long[] packed, int bits, int variable, int slot) {
+		int perWord = 64 / bits;
+		int shift = (variable % perWord) * bits;
+		long mask = ((1L << bits) - 1) << shift;
+		int w = variable / perWord;
+		packed[w] = (packed[w] & ~mask) | ((long) (slot + 1) << shift);
+	}
+
+}
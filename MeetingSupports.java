@@ -0,0 +1,135 @@
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The support tables of the binary constraints of a problem that are not
+ * rules. The table of a constraint is made the first time it is needed, by
+ * testing the constraint once for every pair of slots in the initial domains
+ * of its two nodes, and is then shared by all searches of the problem, also
+ * in other threads. A row of a table is a bitset of the slots of the other
+ * node that support a slot, a slot never supports itself (no double booking)
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingSupports {
+
+	/**
+	 * the index of the problem
+	 */
+	private final MeetingIndex index;
+
+	/**
+	 * the calendar of the problem
+	 */
+	private final MeetingCalendar calendar;
+
+	/**
+	 * the tables, made when first needed. The table of the node at position k
+	 * in constraint c is at 2 * c + k
+	 */
+	private final AtomicReferenceArray<long[][]> tables;
+
+	/**
+	 *
+	 * @param index
+	 *            the index of the problem
+	 * @param calendar
+	 *            the calendar of the problem
+	 */
+	public MeetingSupports(MeetingIndex index, MeetingCalendar calendar) {
+		this.index = index;
+		this.calendar = calendar;
+		tables = new AtomicReferenceArray<long[][]>(2 * index.constraints.length);
+	}
+
+	/**
+	 *
+	 * @param c
+	 *            the index of a binary constraint
+	 * @param k
+	 *            the position of a node in the scope of the constraint
+	 * @return rows[a] is the bitset of the slots of the other node that
+	 *         support slot a of the node, or null if a is not in the initial
+	 *         domain of the node
+	 */
+	long[][] rows(int c, int k) {
+		long[][] result = tables.get(2 * c + k);
+		if (result == null) { // two threads may both build it, the tables
+								// are the same
+			build(c);
+			result = tables.get(2 * c + k);
+		}
+		return result;
+	}
+
+	/**
+	 * builds the tables of both nodes of a binary constraint
+	 *
+	 * @param c
+	 *            the constraint index
+	 */
+	private void build(int c) {
+		int x = index.scope[c][0];
+		int y = index.scope[c][1];
+		MeetingDomain dx = index.nodes[x].domain;
+		MeetingDomain dy = index.nodes[y].domain;
+		long[][] forward = new long[dx.words.length << 6][];
+		long[][] backward = new long[dy.words.length << 6][];
+		MeetingSlot[] values = new MeetingSlot[2]; // in scope order
+		MeetingConstraint mc = index.constraints[c];
+		for (int a = dx.nextSlot(0); a >= 0; a = dx.nextSlot(a + 1)) {
+			values[0] = calendar.getSlot(a);
+			for (int b = dy.nextSlot(0); b >= 0; b = dy.nextSlot(b + 1)) {
+				if (a == b)
+					continue;
+				values[1] = calendar.getSlot(b);
+				if (mc.constraint(values)) {
+					if (forward[a] == null)
+						forward[a] = new long[dy.words.length];
+					if (backward[b] == null)
+						backward[b] = new long[dx.words.length];
+					forward[a][b >>> 6] |= 1L << b;
+					backward[b][a >>> 6] |= 1L << a;
+				}
+			}
+			if (forward[a] == null) // a has no support
+				forward[a] = new long[0];
+		}
+		for (int b = dy.nextSlot(0); b >= 0; b = dy.nextSlot(b + 1)) {
+			if (backward[b] == null)
+				backward[b] = new long[0];
+		}
+		tables.compareAndSet(2 * c, null, forward);
+		tables.compareAndSet(2 * c + 1, null, backward);
+	}
+
+	/**
+	 * finds a support of a slot in the current domain of the other node
+	 *
+	 * @param row
+	 *            the supports of the slot
+	 * @param domain
+	 *            the current domain of the other node
+	 * @param from
+	 *            the slot index to start looking from
+	 * @return the smallest supporting slot index from from, or -1 if there is
+	 *         none
+	 */
+	static int nextSupport(long[] row, MeetingDomain domain, int from) {
+		long[] other = domain.words;
+		int common = Math.min(row.length, other.length);
+		int w = from >>> 6;
+		if (w >= common)
+			return -1;
+		long word = row[w] & other[w] & (-1L << from);
+		while (true) {
+			if (word != 0)
+				return (w << 6) + Long.numberOfTrailingZeros(word);
+			if (++w == common)
+				return -1;
+			word = row[w] & other[w];
+		}
+	}
+
+}
@@ -0,0 +1,650 @@
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The symmetries of a meeting problem that are found from the problem model.
+ * Two rooms are interchangeable if swapping them in every slot gives the same
+ * problem: the same slots exist for both, every meeting can have both or
+ * neither, and no constraint tells them apart. Rules only tell rooms apart by
+ * FIXED_ROOM, other constraints are tested for all the slots of the two
+ * rooms. Two meetings are interchangeable if they have the same domain and
+ * swapping them gives the same rules, a meeting with a constraint that is not
+ * a rule is not interchangeable with any other.
+ *
+ * Each class of interchangeable rooms and of interchangeable meetings can be
+ * permuted freely, so a solution stands for a class of solutions, its orbit,
+ * whose size is found by orbitSize(). In each orbit exactly one solution is
+ * canonical: the meetings of a class have increasing slot indexes, and the
+ * rooms of a class are used in increasing order of their profiles, the sorted
+ * (time, meeting class) pairs held in the room
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingSymmetry {
+
+	/**
+	 * the ways a search can break the symmetries
+	 */
+	public enum Breaking {
+		NONE, // all solutions are searched
+		LEX, // the meetings of a class get increasing slots, and only the
+				// canonical solution of each orbit is reported
+		DYNAMIC // the values that give the same subtree as a value already
+				// tried are skipped, at least one solution of each orbit is
+				// reported, so it can not be used modulo symmetry
+	}
+
+	/**
+	 * which constraints involve which variables
+	 */
+	private final MeetingIndex index;
+
+	/**
+	 * the calendar of the problem
+	 */
+	private final MeetingCalendar calendar;
+
+	/**
+	 * meetingClass[v] is the class of variable v, -1 if no other variable is
+	 * interchangeable with v. The variables of a class are in increasing
+	 * order
+	 */
+	final int[] meetingClass;
+	final int[][] meetingClasses;
+
+	/**
+	 * room[s] is the room number of slot s in this problem, from 0, and
+	 * time[s] its time number, both -1 if no meeting can have slot s.
+	 * slotAt[t][r] is the slot of time t in room r, or -1
+	 */
+	final int[] room;
+	final int[] time;
+	final int[][] slotAt;
+
+	/**
+	 * roomClass[r] is the class of room r, -1 if no other room is
+	 * interchangeable with r. The rooms of a class are in increasing order
+	 */
+	final int[] roomClass;
+	final int[][] roomClasses;
+
+	/**
+	 * representative[s] is the slot at the same time as s in the first room
+	 * of the class of its room, or s if its room has no class
+	 */
+	final int[] representative;
+
+	/**
+	 * the scratch assignment used to test constraints
+	 */
+	private final MeetingSlot[] values;
+
+	/**
+	 * finds the symmetries of a problem
+	 *
+	 * @param problem
+	 *            the problem
+	 */
+	public MeetingSymmetry(MeetingProblem problem) {
+		index = problem.index;
+		calendar = problem.calendar;
+		int n = index.nodes.length;
+		values = new MeetingSlot[index.maxArity];
+
+		// number the times and rooms of the slots the meetings can have
+		MeetingDomain universe = new MeetingDomain();
+		for (MeetingNode node : index.nodes) {
+			for (int s = node.domain.nextSlot(0); s >= 0; s = node.domain.nextSlot(s + 1))
+				universe.set(s);
+		}
+		TreeSet<Integer> periods = new TreeSet<Integer>();
+		TreeSet<Integer> roomNumbers = new TreeSet<Integer>();
+		for (int s = universe.nextSlot(0); s >= 0; s = universe.nextSlot(s + 1)) {
+			periods.add(calendar.getSlot(s).getPeriod());
+			roomNumbers.add(calendar.getSlot(s).getRoomNumber());
+		}
+		Map<Integer, Integer> timeOf = number(periods);
+		Map<Integer, Integer> roomOf = number(roomNumbers);
+		int slots = problem.slotCount;
+		room = new int[slots];
+		time = new int[slots];
+		Arrays.fill(room, -1);
+		Arrays.fill(time, -1);
+		slotAt = new int[periods.size()][roomNumbers.size()];
+		for (int[] row : slotAt)
+			Arrays.fill(row, -1);
+		boolean[] fixed = new boolean[roomNumbers.size()];
+		for (int s = universe.nextSlot(0); s >= 0; s = universe.nextSlot(s + 1)) {
+			MeetingSlot slot = calendar.getSlot(s);
+			time[s] = timeOf.get(slot.getPeriod());
+			room[s] = roomOf.get(slot.getRoomNumber());
+			if (slotAt[time[s]][room[s]] >= 0) // two slots with the same time
+												// and room, e.g. with other
+												// names
+				fixed[room[s]] = true;
+			slotAt[time[s]][room[s]] = s;
+		}
+
+		// rooms named by rules, and constraints that cannot be tested
+		boolean opaque = false;
+		for (int c = 0; c < index.constraints.length; c++) {
+			MeetingConstraint mc = index.constraints[c];
+			if (mc instanceof MeetingRule) {
+				MeetingRule rule = (MeetingRule) mc;
+				if (rule.kind == MeetingRule.Kind.FIXED_ROOM && roomOf.containsKey(rule.lo))
+					fixed[roomOf.get(rule.lo)] = true;
+			} else if (index.scope[c].length > 2)
+				opaque = true;
+		}
+
+		// the classes of rooms, a room joins the first class it can be
+		// swapped with
+		List<List<Integer>> classes = new ArrayList<List<Integer>>();
+		for (int r = 0; r < fixed.length && !opaque; r++) {
+			if (fixed[r])
+				continue;
+			List<Integer> joined = null;
+			for (List<Integer> c : classes) {
+				if (swappableRooms(c.get(0), r)) {
+					joined = c;
+					break;
+				}
+			}
+			if (joined == null) {
+				joined = new ArrayList<Integer>();
+				classes.add(joined);
+			}
+			joined.add(r);
+		}
+		roomClass = new int[fixed.length];
+		roomClasses = classes(classes, roomClass);
+		representative = new int[slots];
+		for (int s = 0; s < slots; s++) {
+			representative[s] = s;
+			if (room[s] >= 0 && roomClass[room[s]] >= 0)
+				representative[s] = slotAt[time[s]][roomClasses[roomClass[room[s]]][0]];
+		}
+
+		// the rules of each meeting, and the meetings that have other
+		// constraints
+		List<List<int[]>> rules = new ArrayList<List<int[]>>();
+		for (int v = 0; v < n; v++)
+			rules.add(new ArrayList<int[]>());
+		boolean[] alone = new boolean[n];
+		for (int c = 0; c < index.constraints.length; c++) {
+			MeetingConstraint mc = index.constraints[c];
+			int[] scope = index.scope[c];
+			if (!(mc instanceof MeetingRule)) {
+				for (int v : scope)
+					alone[v] = true;
+				continue;
+			}
+			MeetingRule rule = (MeetingRule) mc;
+			if (rule.second == null) { // scope[0] is first, scope[1] second
+				rules.get(scope[0]).add(new int[] { rule.kind.ordinal(), rule.lo, rule.hi, -1 });
+				continue;
+			}
+			rules.get(scope[0]).add(new int[] { rule.kind.ordinal(), 0, 0, scope[1] });
+			rules.get(scope[1]).add(new int[] { flip(rule.kind).ordinal(), 0, 0, scope[0] });
+		}
+
+		// the classes of meetings, only meetings with the same domain and
+		// kinds of rules are compared
+		Map<String, List<List<Integer>>> candidates = new LinkedHashMap<String, List<List<Integer>>>();
+		classes = new ArrayList<List<Integer>>();
+		for (int v = 0; v < n; v++) {
+			if (alone[v])
+				continue;
+			String key = signature(v, rules.get(v));
+			List<List<Integer>> group = candidates.get(key);
+			if (group == null) {
+				group = new ArrayList<List<Integer>>();
+				candidates.put(key, group);
+			}
+			List<Integer> joined = null;
+			for (List<Integer> c : group) {
+				if (swappableMeetings(c.get(0), v, rules)) {
+					joined = c;
+					break;
+				}
+			}
+			if (joined == null) {
+				joined = new ArrayList<Integer>();
+				group.add(joined);
+				classes.add(joined);
+			}
+			joined.add(v);
+		}
+		meetingClass = new int[n];
+		meetingClasses = classes(classes, meetingClass);
+	}
+
+	/**
+	 *
+	 * @param numbers
+	 *            sorted numbers
+	 * @return the position of each number
+	 */
+	private static Map<Integer, Integer> number(TreeSet<Integer> numbers) {
+		Map<Integer, Integer> result = new HashMap<Integer, Integer>();
+		for (int x : numbers)
+			result.put(x, result.size());
+		return result;
+	}
+
+	/**
+	 * keeps the classes with two or more members
+	 *
+	 * @param classes
+	 *            the classes, each in increasing order
+	 * @param classOf
+	 *            set to the class of each member, -1 for the others
+	 * @return the classes kept
+	 */
+	private static int[][] classes(List<List<Integer>> classes, int[] classOf) {
+		Arrays.fill(classOf, -1);
+		List<int[]> result = new ArrayList<int[]>();
+		for (List<Integer> c : classes) {
+			if (c.size() < 2)
+				continue;
+			int[] members = new int[c.size()];
+			for (int i = 0; i < members.length; i++) {
+				members[i] = c.get(i);
+				classOf[members[i]] = result.size();
+			}
+			result.add(members);
+		}
+		return result.toArray(new int[result.size()][]);
+	}
+
+	/**
+	 *
+	 * @param kind
+	 * @return the kind of the rule seen from its second meeting
+	 */
+	private static MeetingRule.Kind flip(MeetingRule.Kind kind) {
+		if (kind == MeetingRule.Kind.BEFORE)
+			return MeetingRule.Kind.AFTER;
+		if (kind == MeetingRule.Kind.AFTER)
+			return MeetingRule.Kind.BEFORE;
+		return kind;
+	}
+
+	/**
+	 * tests if swapping two rooms in all slots gives the same problem
+	 *
+	 * @param r1
+	 * @param r2
+	 * @return true if the rooms are interchangeable
+	 */
+	private boolean swappableRooms(int r1, int r2) {
+		int slots = room.length;
+		int[] image = new int[slots];
+		for (int s = 0; s < slots; s++)
+			image[s] = s;
+		MeetingDomain moved = new MeetingDomain();
+		for (int[] row : slotAt) {
+			if ((row[r1] < 0) != (row[r2] < 0))
+				return false; // a time only one of the rooms has
+			if (row[r1] >= 0) {
+				image[row[r1]] = row[r2];
+				image[row[r2]] = row[r1];
+				moved.set(row[r1]);
+				moved.set(row[r2]);
+			}
+		}
+		for (MeetingNode node : index.nodes) {
+			for (int s = moved.nextSlot(0); s >= 0; s = moved.nextSlot(s + 1)) {
+				if (node.domain.has(s) != node.domain.has(image[s]))
+					return false;
+			}
+		}
+		for (int c = 0; c < index.constraints.length; c++) {
+			if (!(index.constraints[c] instanceof MeetingRule) && !invariant(c, image, moved))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * tests a unary or binary constraint on the pairs of values where a value
+	 * is moved by a permutation of the slots
+	 *
+	 * @param c
+	 *            a constraint index
+	 * @param image
+	 *            the permutation
+	 * @param moved
+	 *            the slots the permutation moves
+	 * @return true if the constraint holds for the pairs exactly when it
+	 *         holds for their images
+	 */
+	private boolean invariant(int c, int[] image, MeetingDomain moved) {
+		MeetingConstraint mc = index.constraints[c];
+		int[] scope = index.scope[c];
+		MeetingDomain first = index.nodes[scope[0]].domain;
+		if (scope.length == 1) {
+			for (int a = moved.nextSlot(0); a >= 0; a = moved.nextSlot(a + 1)) {
+				if (first.has(a) && test(mc, scope, a, -1) != test(mc, scope, image[a], -1))
+					return false;
+			}
+			return true;
+		}
+		MeetingDomain second = index.nodes[scope[1]].domain;
+		for (int a = first.nextSlot(0); a >= 0; a = first.nextSlot(a + 1)) {
+			for (int b = second.nextSlot(0); b >= 0; b = second.nextSlot(b + 1)) {
+				if (!moved.has(a) && !moved.has(b))
+					continue;
+				if (test(mc, scope, a, b) != test(mc, scope, image[a], image[b]))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @param mc
+	 * @param scope
+	 * @param a
+	 *            the slot of the first meeting
+	 * @param b
+	 *            the slot of the second meeting, if any
+	 * @return true if the constraint holds
+	 */
+	private boolean test(MeetingConstraint mc, int[] scope, int a, int b) {
+		values[0] = calendar.getSlot(a);
+		if (scope.length > 1)
+			values[1] = calendar.getSlot(b);
+		return mc.constraint(values);
+	}
+
+	/**
+	 *
+	 * @param v
+	 *            a variable index
+	 * @param rules
+	 *            its rules
+	 * @return a text that is the same for interchangeable meetings
+	 */
+	private String signature(int v, List<int[]> rules) {
+		List<String> kinds = new ArrayList<String>();
+		for (int[] rule : rules)
+			kinds.add(rule[0] + ":" + rule[1] + ":" + rule[2]);
+		Collections.sort(kinds);
+		long[] words = Arrays.copyOf(index.nodes[v].domain.words, MeetingDomain.wordsFor(room.length));
+		return Arrays.toString(words) + kinds;
+	}
+
+	/**
+	 * tests if swapping two meetings gives the same problem
+	 *
+	 * @param v
+	 * @param w
+	 * @param rules
+	 *            the rules of each meeting
+	 * @return true if the meetings are interchangeable
+	 */
+	private boolean swappableMeetings(int v, int w, List<List<int[]>> rules) {
+		if (!index.nodes[v].domain.sameAs(index.nodes[w].domain))
+			return false;
+		return described(rules.get(v), w).equals(described(rules.get(w), v));
+	}
+
+	/**
+	 *
+	 * @param rules
+	 *            the rules of a meeting
+	 * @param partner
+	 *            the meeting it is swapped with
+	 * @return the rules in order, with the partner written as -2
+	 */
+	private static List<String> described(List<int[]> rules, int partner) {
+		List<String> result = new ArrayList<String>();
+		for (int[] rule : rules)
+			result.add(rule[0] + ":" + rule[1] + ":" + rule[2] + ":" + (rule[3] == partner ? -2 : rule[3]));
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 *
+	 * @return true if the problem has interchangeable rooms or meetings
+	 */
+	public boolean isEmpty() {
+		return meetingClasses.length == 0 && roomClasses.length == 0;
+	}
+
+	/**
+	 *
+	 * @return the number of permutations of rooms and meetings that map the
+	 *         problem to itself
+	 */
+	public BigInteger groupSize() {
+		BigInteger result = BigInteger.ONE;
+		for (int[] c : meetingClasses)
+			result = result.multiply(factorial(c.length));
+		for (int[] c : roomClasses)
+			result = result.multiply(factorial(c.length));
+		return result;
+	}
+
+	/**
+	 *
+	 * @param k
+	 * @return k!
+	 */
+	private static BigInteger factorial(int k) {
+		BigInteger result = BigInteger.ONE;
+		for (int i = 2; i <= k; i++)
+			result = result.multiply(BigInteger.valueOf(i));
+		return result;
+	}
+
+	/**
+	 * the profiles of the rooms that have a class
+	 *
+	 * @param values
+	 *            a complete assignment, values[v] is the slot of variable v
+	 * @return the sorted (time, meeting class) pairs held in each room, null
+	 *         for the rooms without a class
+	 */
+	private long[][] profiles(MeetingSlot[] values) {
+		int[] count = new int[roomClass.length];
+		for (MeetingSlot value : values) {
+			int r = room[value.index];
+			if (roomClass[r] >= 0)
+				count[r]++;
+		}
+		long[][] result = new long[count.length][];
+		for (int r = 0; r < count.length; r++) {
+			if (roomClass[r] >= 0)
+				result[r] = new long[count[r]];
+			count[r] = 0;
+		}
+		for (int v = 0; v < values.length; v++) {
+			int s = values[v].index;
+			int r = room[s];
+			if (roomClass[r] < 0)
+				continue;
+			int meetings = meetingClass[v] >= 0 ? meetingClass[v] : meetingClasses.length + v;
+			result[r][count[r]++] = (long) time[s] << 32 | meetings;
+		}
+		for (long[] profile : result) {
+			if (profile != null)
+				Arrays.sort(profile);
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @param a
+	 * @param b
+	 * @return the lexicographic order of two profiles
+	 */
+	private static int compare(long[] a, long[] b) {
+		for (int i = 0; i < a.length && i < b.length; i++) {
+			if (a[i] != b[i])
+				return a[i] < b[i] ? -1 : 1;
+		}
+		return Integer.compare(a.length, b.length);
+	}
+
+	/**
+	 *
+	 * @param values
+	 *            a complete assignment, values[v] is the slot of variable v
+	 * @return true if the assignment is the canonical solution of its orbit
+	 */
+	public boolean isCanonical(MeetingSlot[] values) {
+		for (int[] c : meetingClasses) {
+			for (int i = 1; i < c.length; i++) {
+				if (values[c[i - 1]].index >= values[c[i]].index)
+					return false;
+			}
+		}
+		if (roomClasses.length == 0)
+			return true;
+		long[][] profiles = profiles(values);
+		for (int[] c : roomClasses) {
+			for (int i = 1; i < c.length; i++) {
+				if (compare(profiles[c[i - 1]], profiles[c[i]]) > 0)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 *
+	 * @param values
+	 *            a complete assignment, values[v] is the slot of variable v
+	 * @return the slot indexes of the canonical solution of its orbit
+	 */
+	public int[] canonical(MeetingSlot[] values) {
+		// give the rooms of each class new numbers in order of their
+		// profiles
+		int[] rename = new int[roomClass.length];
+		for (int r = 0; r < rename.length; r++)
+			rename[r] = r;
+		if (roomClasses.length > 0) {
+			final long[][] profiles = profiles(values);
+			for (int[] c : roomClasses) {
+				Integer[] sorted = new Integer[c.length];
+				for (int i = 0; i < c.length; i++)
+					sorted[i] = c[i];
+				Arrays.sort(sorted, new Comparator<Integer>() {
+					public int compare(Integer a, Integer b) {
+						return MeetingSymmetry.compare(profiles[a], profiles[b]);
+					}
+				});
+				for (int i = 0; i < c.length; i++)
+					rename[sorted[i]] = c[i];
+			}
+		}
+		int[] result = new int[values.length];
+		for (int v = 0; v < values.length; v++) {
+			int s = values[v].index;
+			result[v] = slotAt[time[s]][rename[room[s]]];
+		}
+
+		// then give the meetings of each class their slots in order
+		for (int[] c : meetingClasses) {
+			int[] slots = new int[c.length];
+			for (int i = 0; i < c.length; i++)
+				slots[i] = result[c[i]];
+			Arrays.sort(slots);
+			for (int i = 0; i < c.length; i++)
+				result[c[i]] = slots[i];
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @param solution
+	 *            a solution of the problem
+	 * @return the number of solutions in its orbit
+	 */
+	public BigInteger orbitSize(MeetingAssignment solution) {
+		MeetingSlot[] values = new MeetingSlot[index.nodes.length];
+		for (int i = 0; i < solution.variables.size(); i++)
+			values[index.indexOf(solution.variables.get(i))] = solution.assignments.get(i);
+		return orbitSize(values);
+	}
+
+	/**
+	 * the orbit is the group divided by the permutations that fix the
+	 * solution. A permutation of rooms fixes it, together with a permutation
+	 * of meetings, when each room is swapped with rooms of the same profile
+	 *
+	 * @param values
+	 *            a complete assignment, values[v] is the slot of variable v
+	 * @return the number of solutions in its orbit
+	 */
+	public BigInteger orbitSize(MeetingSlot[] values) {
+		BigInteger fixing = BigInteger.ONE;
+		if (roomClasses.length > 0) {
+			long[][] profiles = profiles(values);
+			for (int[] c : roomClasses) {
+				long[][] sorted = new long[c.length][];
+				for (int i = 0; i < c.length; i++)
+					sorted[i] = profiles[c[i]];
+				Arrays.sort(sorted, new Comparator<long[]>() {
+					public int compare(long[] a, long[] b) {
+						return MeetingSymmetry.compare(a, b);
+					}
+				});
+				int same = 1;
+				for (int i = 1; i <= c.length; i++) {
+					if (i < c.length && compare(sorted[i - 1], sorted[i]) == 0)
+						same++;
+					else {
+						fixing = fixing.multiply(factorial(same));
+						same = 1;
+					}
+				}
+			}
+		}
+		return groupSize().divide(fixing);
+	}
+
+	/**
+	 * a summary of the classes
+	 */
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		for (int[] c : meetingClasses) {
+			List<MeetingNode> members = new ArrayList<MeetingNode>();
+			for (int v : c)
+				members.add(index.nodes[v]);
+			result.append("interchangeable meetings " + members + "\n");
+		}
+		for (int[] c : roomClasses) {
+			List<String> members = new ArrayList<String>();
+			for (int r : c) {
+				for (int[] row : slotAt) {
+					if (row[r] >= 0) {
+						members.add(calendar.getSlot(row[r]).getRoomName());
+						break;
+					}
+				}
+			}
+			result.append("interchangeable rooms " + members + "\n");
+		}
+		result.append(groupSize() + " permutations of rooms and meetings");
+		return result.toString();
+	}
+
+}
@@ -0,0 +1,138 @@
+
+/**
+ * The undo trail of a backtracking search. Each entry records something that
+ * was changed when going down in the search tree, so that it can be undone
+ * when the search backtracks. An entry is either the assignment of a variable
+ * or the old content of a domain that propagation has reduced. The arrays
+ * grow when needed but are never shrunk, and the saved domain words are
+ * reused, so a search that has reached its maximum depth does not allocate
+ * anything more
+ *
+ * @author Bjørnar Tessem
+ *
+ */
+public class MeetingTrail {
+
+	/**
+	 * the entries, a variable position v >= 0 for an assignment and -(v + 1)
+	 * for a saved domain of variable v
+	 */
+	private int[] entries = new int[16];
+
+	/**
+	 * saved[i] is the old domain words of entry i if it is a domain entry
+	 */
+	private long[][] saved = new long[16][];
+
+	/**
+	 * the number of entries on the trail
+	 */
+	private int size = 0;
+
+	/**
+	 * a number for the current level, i.e. the part of the trail after the
+	 * last assignment entry. It is never reused
+	 */
+	private int level = 0;
+
+	/**
+	 * the next level number to use
+	 */
+	private int nextLevel = 1;
+
+	/**
+	 * savedAt[v] is the level at which the domain of variable v was last saved
+	 */
+	private int[] savedAt = new int[16];
+
+	/**
+	 * records that a variable has been given a value, and starts a new level
+	 *
+	 * @param variable
+	 *            the position of the variable
+	 */
+	public void push(int variable) {
+		grow();
+		entries[size++] = variable;
+		level = nextLevel++;
+	}
+
+	/**
+	 * saves a domain before it is changed, unless it has already been saved
+	 * on the current level. Domains changed before the first assignment are
+	 * not saved, as they are never undone
+	 *
+	 * @param variable
+	 *            the position of the variable
+	 * @param domain
+	 *            the domain of the variable
+	 */
+	public void saveDomain(int variable, MeetingDomain domain) {
+		if (size == 0)
+			return;
+		if (variable >= savedAt.length) {
+			int[] larger = new int[Math.max(2 * savedAt.length, variable + 1)];
+			System.arraycopy(savedAt, 0, larger, 0, savedAt.length);
+			savedAt = larger;
+		}
+		if (savedAt[variable] == level)
+			return;
+		savedAt[variable] = level;
+		grow();
+		long[] words = saved[size];
+		if (words == null || words.length != domain.words.length)
+			words = saved[size] = new long[domain.words.length];
+		System.arraycopy(domain.words, 0, words, 0, words.length);
+		entries[size++] = -(variable + 1);
+	}
+
+	/**
+	 * makes room for one more entry
+	 */
+	private void grow() {
+		if (size == entries.length) {
+			int[] larger = new int[2 * size];
+			System.arraycopy(entries, 0, larger, 0, size);
+			entries = larger;
+			long[][] largerSaved = new long[2 * size][];
+			System.arraycopy(saved, 0, largerSaved, 0, size);
+			saved = largerSaved;
+		}
+	}
+
+	/**
+	 * removes the latest assignment and restores all domains saved after it
+	 *
+	 * @param domains
+	 *            the domains of the variables, by position
+	 * @return the position of the variable that was last assigned
+	 */
+	public int pop(MeetingDomain[] domains) {
+		while (true) {
+			int entry = entries[--size];
+			if (entry >= 0) {
+				level = nextLevel++; // a fresh level, nothing saved on it
+				return entry;
+			}
+			long[] words = saved[size];
+			System.arraycopy(words, 0, domains[-entry - 1].words, 0, words.length);
+		}
+	}
+
+	/**
+	 *
+	 * @return the number of entries on the trail
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 *
+	 * @return true if nothing is recorded on the trail
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+}
@@ -0,0 +1,28 @@
+
+/**
+ * Decides the order a MeetingSearch tries the values of a variable in. Some
+ * common orderings are found in ValueOrderings
+ * 
+ * @author Bjørnar Tessem
+ *
+ */
+public interface ValueOrdering {
+
+	/**
+	 * puts the slot indexes of the current domain of a variable into an array
+	 * in the order they are to be tried
+	 * 
+	 * @param search
+	 *            the search
+	 * @param v
+	 *            the index of the variable
+	 * @param values
+	 *            the array to put the slot indexes in, with room for the whole
+	 *            domain
+	 * @param start
+	 *            the position of the first value in the array
+	 * @return the number of values put in the array
+	 */
+	int order(MeetingSearch search, int v, int[] values, int start);
+
+}
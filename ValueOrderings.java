@@ -0,0 +1,92 @@
+
+import java.util.Random;
+
+/**
+ * The common value orderings. SLOT_ORDER tries the slots in the order of
+ * their index. LCV tries the least constraining value first, i.e. the slot
+ * that removes the fewest values from the domains of the unassigned
+ * variables, counting both the slot itself (no double booking) and the values
+ * not allowed by binary constraints with a single other unassigned variable.
+ * RANDOM tries the slots in a random order from the seed of the search, so a
+ * search that restarts does not try the same values again
+ * 
+ * @author Bjørnar Tessem
+ *
+ */
+public enum ValueOrderings implements ValueOrdering {
+
+	SLOT_ORDER {
+		public int order(MeetingSearch search, int v, int[] values, int start) {
+			MeetingDomain domain = search.getDomain(v);
+			int count = 0;
+			for (int a = domain.nextSlot(0); a >= 0; a = domain.nextSlot(a + 1))
+				values[start + count++] = a;
+			return count;
+		}
+	},
+
+	LCV {
+		public int order(MeetingSearch search, int v, int[] values, int start) {
+			int count = SLOT_ORDER.order(search, v, values, start);
+			MeetingDomain domain = search.getDomain(v);
+			MeetingIndex index = search.getIndex();
+			int[] scores = search.getScores();
+			for (int i = 0; i < count; i++)
+				scores[values[start + i]] = 0;
+
+			// the other meetings that could use the same slot
+			for (int w = 0; w < index.nodes.length; w++) {
+				if (w == v || search.isAssigned(w))
+					continue;
+				MeetingDomain other = search.getDomain(w);
+				for (int b = other.nextSlot(0); b >= 0; b = other.nextSlot(b + 1)) {
+					if (domain.has(b))
+						scores[b]++;
+				}
+			}
+
+			// the values binary constraints would remove
+			for (int c : index.incident[v]) {
+				int[] scope = index.scope[c];
+				if (scope.length != 2 || search.getRemaining(c) != 2)
+					continue;
+				int w = scope[0] == v ? scope[1] : scope[0];
+				MeetingDomain other = search.getDomain(w);
+				for (int i = 0; i < count; i++) {
+					int a = values[start + i];
+					for (int b = other.nextSlot(0); b >= 0; b = other.nextSlot(b + 1)) {
+						if (!search.allows(c, v, a, w, b))
+							scores[a]++;
+					}
+				}
+			}
+
+			// sort on the scores, keeping slot order for equal scores
+			for (int i = start + 1; i < start + count; i++) {
+				int a = values[i];
+				int j = i - 1;
+				while (j >= start && scores[values[j]] > scores[a]) {
+					values[j + 1] = values[j];
+					j--;
+				}
+				values[j + 1] = a;
+			}
+			return count;
+		}
+	},
+
+	RANDOM {
+		public int order(MeetingSearch search, int v, int[] values, int start) {
+			int count = SLOT_ORDER.order(search, v, values, start);
+			Random random = search.getRandom();
+			for (int i = count - 1; i > 0; i--) { // shuffle
+				int j = random.nextInt(i + 1);
+				int a = values[start + i];
+				values[start + i] = values[start + j];
+				values[start + j] = a;
+			}
+			return count;
+		}
+	};
+
+}
@@ -0,0 +1,20 @@
+
+/**
+ * Decides which variable a MeetingSearch assigns next. Some common orderings
+ * are found in VariableOrderings
+ * 
+ * @author Bjørnar Tessem
+ *
+ */
+public interface VariableOrdering {
+
+	/**
+	 * picks the next variable to assign
+	 * 
+	 * @param search
+	 *            the search, with at least one unassigned variable
+	 * @return the index of an unassigned variable
+	 */
+	int select(MeetingSearch search);
+
+}
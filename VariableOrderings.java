@@ -0,0 +1,130 @@
+
+/**
+ * The common variable orderings. INPUT takes the variables in the order of the
+ * problem's index, MRV takes the variable with the fewest values left
+ * (minimum remaining values), DEGREE the variable in most constraints with
+ * other unassigned variables, and DOM_WDEG the variable with the smallest
+ * domain size divided by the sum of the weights of its constraints with other
+ * unassigned variables. Ties are broken by the variable index, so all
+ * orderings are the same from run to run
+ * 
+ * @author Bjørnar Tessem
+ *
+ */
+public enum VariableOrderings implements VariableOrdering {
+
+	INPUT {
+		public int select(MeetingSearch search) {
+			int n = search.getIndex().nodes.length;
+			for (int v = 0; v < n; v++) {
+				if (!search.isAssigned(v))
+					return v;
+			}
+			return -1;
+		}
+	},
+
+	MRV {
+		public int select(MeetingSearch search) {
+			int best = -1;
+			int bestSize = 0;
+			int bestDegree = 0;
+			int n = search.getIndex().nodes.length;
+			for (int v = 0; v < n; v++) {
+				if (search.isAssigned(v))
+					continue;
+				int size = search.getDomain(v).size();
+				if (best >= 0 && size > bestSize)
+					continue;
+				int degree = futureDegree(search, v, false);
+				if (best < 0 || size < bestSize || degree > bestDegree) { // ties
+																			// by
+																			// degree
+					best = v;
+					bestSize = size;
+					bestDegree = degree;
+				}
+			}
+			return best;
+		}
+	},
+
+	DEGREE {
+		public int select(MeetingSearch search) {
+			int best = -1;
+			int bestSize = 0;
+			int bestDegree = 0;
+			int n = search.getIndex().nodes.length;
+			for (int v = 0; v < n; v++) {
+				if (search.isAssigned(v))
+					continue;
+				int degree = futureDegree(search, v, false);
+				if (best >= 0 && degree < bestDegree)
+					continue;
+				int size = search.getDomain(v).size();
+				if (best < 0 || degree > bestDegree || size < bestSize) { // ties
+																			// by
+																			// domain
+																			// size
+					best = v;
+					bestSize = size;
+					bestDegree = degree;
+				}
+			}
+			return best;
+		}
+	},
+
+	DOM_WDEG {
+		public int select(MeetingSearch search) {
+			int best = -1;
+			long bestSize = 0;
+			long bestWeight = 0;
+			int n = search.getIndex().nodes.length;
+			for (int v = 0; v < n; v++) {
+				if (search.isAssigned(v))
+					continue;
+				long size = search.getDomain(v).size();
+				long weight = futureDegree(search, v, true);
+				boolean better;
+				if (best < 0)
+					better = true;
+				else if (weight == 0 || bestWeight == 0) // no constraints left
+															// counts as an
+															// infinite ratio
+					better = weight > 0 ? true : bestWeight == 0 && size < bestSize;
+				else
+					better = size * bestWeight < bestSize * weight; // size /
+																	// weight is
+																	// smaller
+				if (better) {
+					best = v;
+					bestSize = size;
+					bestWeight = weight;
+				}
+			}
+			return best;
+		}
+	};
+
+	/**
+	 * 
+	 * @param search
+	 * @param v
+	 *            an unassigned variable
+	 * @param weighted
+	 *            true if constraints count with their weight, false if they
+	 *            count as 1
+	 * @return the number or weight of the constraints of v that also have
+	 *         other unassigned variables
+	 */
+	static int futureDegree(MeetingSearch search, int v, boolean weighted) {
+		int result = 0;
+		for (int c : search.getIndex().incident[v]) {
+			if (search.getRemaining(c) >= 2)
+				result += weighted ? search.getWeight(c) : 1;
+		}
+		return result;
+	}
+
+}